@@ -9,9 +9,17 @@
 package projetarm_v2.simulator.boilerplate;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
@@ -21,11 +29,26 @@ import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 
 import projetarm_v2.simulator.core.Assembler;
+import projetarm_v2.simulator.core.AssemblyCache;
+import projetarm_v2.simulator.core.Breakpoint;
 import projetarm_v2.simulator.core.Cpu;
+import projetarm_v2.simulator.core.CpuState;
+import projetarm_v2.simulator.core.CycleCostTable;
+import projetarm_v2.simulator.core.CycleCounter;
+import projetarm_v2.simulator.core.ExecutionHistory;
+import projetarm_v2.simulator.core.Expression;
+import projetarm_v2.simulator.core.IncrementalAssembler;
 import projetarm_v2.simulator.core.InvalidAssemblyException;
+import projetarm_v2.simulator.core.Listing;
+import projetarm_v2.simulator.core.MemoryMap;
+import projetarm_v2.simulator.core.MemoryPattern;
+import projetarm_v2.simulator.core.MemoryRegion;
 import projetarm_v2.simulator.core.Preprocessor;
+import projetarm_v2.simulator.core.Profiler;
 import projetarm_v2.simulator.core.Ram;
-import projetarm_v2.simulator.core.RamChunk;
+import projetarm_v2.simulator.core.RamSnapshot;
+import projetarm_v2.simulator.core.TraceRecorder;
+import projetarm_v2.simulator.core.Watchpoint;
 import projetarm_v2.simulator.core.io.IO8Segment;
 import projetarm_v2.simulator.core.io.IOButton;
 import projetarm_v2.simulator.core.io.IOComponent;
@@ -61,6 +84,10 @@ public class ArmSimulator {
      * The Assembler used to assemble assembly
      */
 	private final Assembler assembler;
+
+	private AssemblyCache assemblyCache;
+
+	private final IncrementalAssembler incrementalAssembler;
 	
 	/**
 	 * The CPU used to execute the content in RAM
@@ -72,6 +99,12 @@ public class ArmSimulator {
      */
 	private Ram ram;
 
+    /**
+     * The Ram just after the last program was loaded, reload rolls the Ram back to it instead of clearing it
+     */
+	private RamSnapshot loadedRam;
+	private boolean fileMapped; // Then reload clears the Ram to drop the mappings, as resetState does
+
     /**
      * The PORTManager responsible of creating, removing and managing I/O components such as LED, EightSegmentsDisplay...
      */
@@ -81,6 +114,16 @@ public class ArmSimulator {
      * Ram Address <=> Editor Line map correspondence
      */
 	private BiMap<Integer, Integer> asmToLine;
+	
+    /**
+     * Label => Ram Address of the instruction following it, in the order of the program
+     */
+	private Map<String, Integer> labelAddresses;
+	
+    /**
+     * Size in bytes of the program loaded in Ram
+     */
+	private int programSize;
 
     /**
      * The CPU starts executing binary in Ram at this address
@@ -91,6 +134,41 @@ public class ArmSimulator {
      * The Ram's size in bytes
      */
 	private int ramSize = Ram.DEFAULT_RAM_SIZE;
+	
+    /**
+     * The regions of the address space the program may access, kept when the processor state is reset
+     */
+	private MemoryMap memoryMap = MemoryMap.createDefault(ramSize);
+	
+    /**
+     * Run without the per instruction hook, applied when the processor state is reset
+     */
+	private boolean turboMode = false;
+	
+    /**
+     * Maximum number of instructions executed by a run, 0 for no limit
+     */
+	private long instructionBudget = 0;
+	
+    /**
+     * Records the execution, kept when the processor state is reset
+     */
+	private TraceRecorder traceRecorder;
+	
+    /**
+     * Lets the execution go backwards, recreated when the processor state is reset
+     */
+	private boolean historyEnabled = false;
+	
+    /**
+     * Count the executions of each instruction, the counts are reset with the processor state
+     */
+	private boolean profilingEnabled = false;
+	
+    /**
+     * The cost model of the cycle counter, null when the cycles aren't counted
+     */
+	private CycleCostTable cycleCostTable;
 
     /**
      * Save every data related to the current simulation (assembly, I/O components)
@@ -117,13 +195,21 @@ public class ArmSimulator {
 		this.ram = new Ram();
 		
 		this.assembler = Assembler.getInstance();
+		this.assemblyCache = AssemblyCache.getInstance();
+		this.incrementalAssembler = new IncrementalAssembler();
 		this.asmToLine = HashBiMap.create();
+		this.labelAddresses = new LinkedHashMap<>();
 		this.random = new Random();
 		
 		this.consoleBuffer = new ConcurrentLinkedQueue<>();
 		this.waitingForInput = new AtomicBoolean(false);
 		this.portManager = new PORTManager(this.ram);
 		
+		for (MemoryRegion region : PORTManager.getMemoryRegions()) {
+			this.memoryMap.addRegion(region);
+		}
+		this.memoryMap.addRegion(CycleCounter.getMemoryRegion());
+		
 		this.resetState();
 	}
 
@@ -183,11 +269,54 @@ public class ArmSimulator {
 	public void setProgram(String assembly) {
 		this.save.setProgram(assembly);
 		assembly = Preprocessor.pass1(assembly);
-		try {
-			fillRamWithAssembly(assembly);
-		} catch (InvalidAssemblyException e) {/* This is going to get caught by fillAddressLineMap */}
 
-		fillAddressLineMap(assembly);
+		Listing listing = this.assemblyCache != null ? this.assemblyCache.get(assembly, startingAddress) : null;
+		if (listing == null) {
+			// The incremental assembler fails when the in-process backend does, the Assembler would try it again for nothing
+			listing = this.incrementalAssembler.assemble(assembly, startingAddress);
+			if (listing == null) {
+				this.asmToLine.clear();
+				listing = assembleLineByLine(assembly);
+			}
+			if (this.assemblyCache != null && listing.getBinary() != null) {
+				this.assemblyCache.put(assembly, startingAddress, listing);
+			}
+		}
+
+		if (listing.getBinary() != null) {
+			loadBinary(listing.getBinary());
+		}
+		fillAddressLineMap(assembly, listing);
+
+		this.loadedRam = this.ram.isAttached() ? null : this.ram.snapshot();
+	}
+
+	/**
+	 * Same as resetState then setProgram, but the Ram is rolled back to how it was just after the previous program was
+	 * loaded instead of being cleared, so that only the statements which changed are written to it again
+	 */
+	public void reload(String assembly) {
+		RamSnapshot loaded = this.loadedRam;
+
+		if (loaded == null || this.fileMapped || this.ram.isAttached()) {
+			this.resetState();
+		} else {
+			this.ram.restore(loaded);
+			this.resetProcessor();
+		}
+		this.setProgram(assembly);
+	}
+
+	/**
+	 * Set the cache of the assembled programs, setProgram doesn't assemble a program found in it
+	 * @param assemblyCache The cache, or null to always assemble
+	 */
+	public void setAssemblyCache(AssemblyCache assemblyCache) {
+		this.assemblyCache = assemblyCache;
+	}
+
+	public AssemblyCache getAssemblyCache() {
+		return this.assemblyCache;
 	}
 
 	/**
@@ -206,29 +335,83 @@ public class ArmSimulator {
 	}
 	
 	/**
-	 * Assemble and load the given Assembly into Ram
-	 * @param assembly The assembly to load into Ram
+	 * Write the program in Ram, only where it differs from what the Ram contains. When the previous
+	 * program was longer, the rest of it is replaced by the pattern as if the Ram had been cleared.
 	 */
-	private void fillRamWithAssembly(String assembly) {
-		this.asmToLine.clear();
+	private void loadBinary(byte[] binary) {
+		int length = binary.length;
+		if (this.programSize > length) {
+			byte[] padded = Arrays.copyOf(binary, this.programSize);
+			this.ram.getPattern().fill((long)startingAddress + length, padded, length, this.programSize - length);
+			binary = padded;
+		}
 
-		byte[] binary = (this.assembler.assemble(assembly, startingAddress));
+		byte[] current = this.ram.read((long)startingAddress, binary.length);
 
-		for (int i = 0; i < binary.length; i++) {
-			this.ram.setByte((long)startingAddress + i, binary[i]);
+		int index = 0;
+		while (index < binary.length) {
+			if (current[index] == binary[index]) {
+				index++;
+				continue;
+			}
+			int end = index + 1;
+			while (end < binary.length && current[end] != binary[end]) {
+				end++;
+			}
+			this.ram.write((long)startingAddress + index, binary, index, end - index);
+			index = end;
+		}
+
+		this.programSize = length;
+		if (this.profilingEnabled && !this.turboMode) {
+			this.cpu.setProfiler(new Profiler(startingAddress, this.programSize));
 		}
 		
-		this.cpu.setEndAddress((long)startingAddress + binary.length);
+		this.cpu.setEndAddress((long)startingAddress + length);
 	}
 
 	/**
-	 * Create the Ram Address <=> Editor Line map
+	 * Update the Ram Address <=> Editor Line map from the listing of the program, only the entries which changed are touched
 	 * @param assembly The exact same assembly that was previously loaded in Ram
 	 */
-	private void fillAddressLineMap(String assembly) {
-		
-		int currentLine = 0;
-		int currentAddress = (int)this.cpu.getStartingAddress();
+	private void fillAddressLineMap(String assembly, Listing listing) {
+		String[] lines = assembly.split(";", -1);
+		Map<Integer, Integer> addressToLine = new HashMap<>();
+		this.labelAddresses.clear();
+
+		for (int currentLine = 1; currentLine <= lines.length && currentLine <= listing.getLineCount(); currentLine++) {
+			String line = lines[currentLine - 1];
+			int currentAddress = (int) listing.getAddress(currentLine);
+
+			Matcher matcher = Preprocessor.labelPattern.matcher(line);
+			if (matcher.find()) {
+				this.labelAddresses.put(matcher.group(1), currentAddress);
+			}
+
+			if (listing.getLength(currentLine) > 0 && !line.replaceAll(Preprocessor.LABEL_PATTERN, "").trim().equals(".word 0")) {
+				addressToLine.put(currentAddress, currentLine);
+			}
+		}
+
+		this.asmToLine.entrySet().removeIf(entry -> !entry.getValue().equals(addressToLine.get(entry.getKey())));
+		for (Map.Entry<Integer, Integer> entry : addressToLine.entrySet()) {
+			if (!entry.getValue().equals(this.asmToLine.get(entry.getKey()))) {
+				this.asmToLine.forcePut(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Assemble the whole program, then each line to know where it goes.
+	 * The lines are submitted together, at the address they would have if they all took 4 bytes, the aligned ones are
+	 * assembled again when their address was wrong.
+	 * @param assembly The assembly, the lines separated by ';'
+	 * @return The listing, without binary if only the whole program couldn't be assembled
+	 */
+	private Listing assembleLineByLine(String assembly) {
+		String[] lines = assembly.split(";");
+		long[] addresses = new long[lines.length];
+		int[] lengths = new int[lines.length];
 
 		Matcher matcher = Preprocessor.labelPattern.matcher(assembly.replaceAll(";", "\n"));
 
@@ -238,55 +421,89 @@ public class ArmSimulator {
 		}
 		String labels = labelsBuilder.toString();
 
-		for (String line : assembly.split(";")) {
-			currentLine++;
-
-			matcher = Preprocessor.emptyLabelPattern.matcher(line);
-			if (matcher.find()) {
+		List<String> assemblies = new ArrayList<>();
+		List<Integer> assembledLines = new ArrayList<>();
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i];
+			if (Preprocessor.emptyLabelPattern.matcher(line).find()) {
 				continue;
 			}
 			line = line.replaceAll(Preprocessor.LABEL_PATTERN, "");
 			if (!line.trim().isEmpty()) {
-				byte[] lineBytes;
-				try {
-					lineBytes = (this.assembler.assemble(labels + line, currentAddress));
-				} catch (InvalidAssemblyException e) {
-					throw new InvalidInstructionException("[ERROR] Line " + currentLine + " \"" + line.trim() + "\": " + e.getMessage(), currentLine);
-				}
-				if (lineBytes.length == 1 && lineBytes[0] == 0 || line.trim().equals(".word 0")) {
-					continue;
+				lines[i] = line;
+				assemblies.add(labels + line);
+				assembledLines.add(i);
+			}
+		}
+		assemblies.add(assembly);
+
+		long[] guessedAddresses = new long[assemblies.size()];
+		for (int i = 0; i < guessedAddresses.length; i++) {
+			guessedAddresses[i] = this.cpu.getStartingAddress() + 4L * i;
+		}
+		guessedAddresses[guessedAddresses.length - 1] = startingAddress;
+
+		List<CompletableFuture<byte[]>> results = this.assembler.submitAll(assemblies, guessedAddresses);
+
+		byte[] binary = null;
+		try {
+			binary = results.get(results.size() - 1).join();
+		} catch (CompletionException e) {/* This is going to get caught by the assembly of its line */}
+
+		int currentAddress = (int)this.cpu.getStartingAddress();
+		int next = 0;
+		for (int i = 0; i < lines.length; i++) {
+			addresses[i] = currentAddress;
+			if (next >= assembledLines.size() || assembledLines.get(next) != i) {
+				continue;
+			}
+
+			String line = lines[i];
+			byte[] lineBytes;
+			try {
+				if (currentAddress != guessedAddresses[next] && line.contains("align")) {
+					lineBytes = this.assembler.assemble(labels + line, currentAddress);
+				} else {
+					lineBytes = results.get(next).join();
 				}
-				asmToLine.put(currentAddress, currentLine);
-				currentAddress += lineBytes.length - (line.contains("=") ? 1 : 0) * 4;
+			} catch (CompletionException | InvalidAssemblyException e) {
+				String message = e instanceof CompletionException ? e.getCause().getMessage() : e.getMessage();
+				throw new InvalidInstructionException("[ERROR] Line " + (i + 1) + " \"" + line.trim() + "\": " + message, i + 1);
 			}
+			next++;
+
+			if (lineBytes.length == 1 && lineBytes[0] == 0 || line.trim().equals(".word 0")) {
+				continue;
+			}
+			lengths[i] = lineBytes.length - (line.contains("=") ? 1 : 0) * 4;
+			currentAddress += lengths[i];
 		}
+		return new Listing(binary, addresses, lengths);
 	}
 
 	/**
 	 * Set the byte pattern shown in the Ram when the Ram is not initialized
 	 * @param value The byte pattern
 	 */
-	public void setRandomPattern(byte value) { /*this.ram.setRandomPattern(value); */}
+	public void setRandomPattern(byte value) {
+		this.ram.setPattern(MemoryPattern.constant(value));
+		this.loadedRam = null;
+	}
 	
 	/**
 	 * Set the byte pattern shown in the Ram when the Ram is not initialized to something random
 	 */
 	public void setRandomPattern() {
-		RamChunk ramChunk = new RamChunk(0, Ram.CHUNK_SIZE);
-		
-		for (int i = 0; i < Ram.CHUNK_SIZE; i++) {
-			ramChunk.setByte(i, (byte)random.nextInt());
-		}
-		this.ram.setRandomPattern(ramChunk);
+		this.ram.setPattern(MemoryPattern.random(random.nextLong()));
+		this.loadedRam = null;
 	}
 	
 	/**
 	 * Set the byte pattern shown in the Ram when the Ram is not initialized to 0
 	 */
 	public void removeRandomPattern() {
-		RamChunk ramChunk = new RamChunk(0, Ram.CHUNK_SIZE);
-		
-		this.ram.setRandomPattern(ramChunk);
+		this.ram.setPattern(MemoryPattern.zero());
+		this.loadedRam = null;
 	}
 	
 	
@@ -294,8 +511,8 @@ public class ArmSimulator {
 	 * Get the byte pattern shown in the Ram when the Ram is not initialized
 	 * @return The byte pattern
 	 */
-	public RamChunk getRandomPattern() {
-		return this.ram.getRandomPattern();
+	public MemoryPattern getRandomPattern() {
+		return this.ram.getPattern();
 	}
 	
 	
@@ -316,6 +533,13 @@ public class ArmSimulator {
 		this.cpu.getRegister(registerNumber).setValue(myValue);
 	}
 
+	/**
+	 * @return Every register of the processor as of a single instruction, see Cpu.snapshot
+	 */
+	public CpuState getCpuState() {
+		return this.cpu.snapshot();
+	}
+
 	/**
 	 * @return The Simulator's Ram
 	 */
@@ -372,6 +596,33 @@ public class ArmSimulator {
 		this.ram.setValue(address, value);
 	}
 
+	/**
+	 * Capture the content of the Ram, to run the loaded program again without reloading it
+	 */
+	public RamSnapshot snapshotRam() {
+		return this.ram.snapshot();
+	}
+
+	/**
+	 * Roll the Ram back to a snapshot taken with snapshotRam
+	 */
+	public void restoreRam(RamSnapshot snapshot) {
+		this.ram.restore(snapshot);
+	}
+
+	/**
+	 * Map a file into the Ram, see Ram.mapFile
+	 * @param address The address of the beginning of a page
+	 * @param path Relative or absolute path of the file
+	 * @param persistent If true the changes made by the program are written back to the file
+	 * @return The size of the file in bytes
+	 * @throws IOException
+	 */
+	public long mapFileInRam(long address, String path, boolean persistent) throws IOException {
+		this.fileMapped = true;
+		return this.ram.mapFile(address, Path.of(path), persistent);
+	}
+
 	/**
 	 * Execute instructions in the Ram at the currentAddress until the Cpu hits an empty word, a breakpoint, a stop or that an exception occurs.
 	 */
@@ -395,6 +646,304 @@ public class ArmSimulator {
 		
 	}
 
+	/**
+	 * Set or remove the breakpoint on an address, it can be done while the program is running
+	 * @param address The address of the instruction, see getAddressFromLine
+	 * @return true if there is now a breakpoint on this address
+	 */
+	public boolean toggleBreakpoint(long address) {
+		if (this.cpu.getBreakpointManager().contains(address)) {
+			this.cpu.getBreakpointManager().remove(address);
+			return false;
+		}
+		this.cpu.getBreakpointManager().add(address);
+		return true;
+	}
+
+	/**
+	 * Set a breakpoint which only stops the program once its condition was true hitTarget times
+	 * @param condition Such as "r0 == 0x10 && Z" or "mem32[sp+4] > 100", see Expression.parse
+	 * @throws InvalidExpressionException
+	 */
+	public void setBreakpoint(long address, String condition, long hitTarget) {
+		this.cpu.getBreakpointManager().add(new Breakpoint(address, condition, hitTarget));
+	}
+
+	/**
+	 * @return The breakpoint at this address or null, to get its hit count
+	 */
+	public Breakpoint getBreakpoint(long address) {
+		return this.cpu.getBreakpointManager().get(address);
+	}
+
+	/**
+	 * Pause the program when it accesses a range of memory, it can be done while the program is running
+	 * @param kind Whether the reads, the writes or both are watched
+	 * @return The watchpoint, to remove it or get its hit count
+	 */
+	public Watchpoint addWatchpoint(long address, long size, Watchpoint.Kind kind) {
+		Watchpoint watchpoint = new Watchpoint(address, size, kind);
+		this.cpu.getWatchpointManager().add(watchpoint);
+		return watchpoint;
+	}
+
+	public void removeWatchpoint(Watchpoint watchpoint) {
+		this.cpu.getWatchpointManager().remove(watchpoint);
+	}
+
+	public List<Watchpoint> getWatchpoints() {
+		return this.cpu.getWatchpointManager().getWatchpoints();
+	}
+
+	public void clearWatchpoints() {
+		this.cpu.getWatchpointManager().clear();
+	}
+
+	/**
+	 * Evaluate a watch expression on the current state of the processor, see Expression.parse
+	 * @throws InvalidExpressionException
+	 */
+	public int evaluate(String expression) {
+		return Expression.parse(expression).evaluate(this.cpu);
+	}
+
+	/**
+	 * @return true if the program stops before executing the instruction at this address
+	 */
+	public boolean hasBreakpoint(long address) {
+		return this.cpu.getBreakpointManager().contains(address);
+	}
+
+	public void clearBreakpoints() {
+		this.cpu.getBreakpointManager().clear();
+	}
+
+	/**
+	 * Record the execution in a ring buffer, see TraceRecorder
+	 * @param capacity Number of entries kept in memory
+	 * @param path If not null, every entry is also written to this file
+	 * @return The recorder, to read the trace
+	 * @throws IOException
+	 * @throws IllegalStateException In turbo mode
+	 */
+	public TraceRecorder startTrace(int capacity, String path) throws IOException {
+		this.stopTrace();
+		// Both use the trace recorder of the Cpu
+		this.setHistoryEnabled(false);
+
+		TraceRecorder recorder = new TraceRecorder(capacity, false);
+		this.cpu.setTraceRecorder(recorder);
+		if (path != null) {
+			recorder.streamTo(Path.of(path));
+		}
+		this.traceRecorder = recorder;
+		return recorder;
+	}
+
+	/**
+	 * Stop recording the execution and close the trace file
+	 * @throws IOException
+	 */
+	public void stopTrace() throws IOException {
+		if (this.traceRecorder != null) {
+			this.cpu.setTraceRecorder(null);
+			this.traceRecorder.close();
+			this.traceRecorder = null;
+		}
+	}
+
+	public TraceRecorder getTraceRecorder() {
+		return this.traceRecorder;
+	}
+
+	/**
+	 * Record the undo deltas of the execution so that stepBack and reverseContinue can be used, it stops the trace
+	 * @throws IOException If the trace file couldn't be closed
+	 * @throws IllegalStateException In turbo mode
+	 */
+	public void setHistoryEnabled(boolean historyEnabled) throws IOException {
+		if (historyEnabled && this.cpu.getExecutionHistory() == null) {
+			this.stopTrace();
+			new ExecutionHistory(this.cpu);
+		} else if (!historyEnabled && this.cpu.getExecutionHistory() != null) {
+			this.cpu.getExecutionHistory().detach();
+		}
+		this.historyEnabled = historyEnabled;
+	}
+
+	public boolean isHistoryEnabled() {
+		return this.historyEnabled;
+	}
+
+	/**
+	 * Undo the last executed instruction
+	 * @return false if there is no history or if its beginning was reached
+	 */
+	public boolean stepBack() {
+		ExecutionHistory history = this.cpu.getExecutionHistory();
+
+		if (history == null) {
+			System.out.println("[ERROR] The execution history isn't enabled");
+			return false;
+		}
+		try {
+			return history.stepBack();
+		} catch (UnicornException e) {
+			this.handleException(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Go back to the last breakpoint the program went through, see ExecutionHistory.reverseContinue
+	 * @return false if there is no history or if no breakpoint was found
+	 */
+	public boolean reverseContinue() {
+		ExecutionHistory history = this.cpu.getExecutionHistory();
+
+		if (history == null) {
+			System.out.println("[ERROR] The execution history isn't enabled");
+			return false;
+		}
+		try {
+			return history.reverseContinue();
+		} catch (UnicornException e) {
+			this.handleException(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Count the executions of each instruction of the program, see getLineCounts and getLabelCounts
+	 * @throws IllegalStateException In turbo mode
+	 */
+	public void setProfilingEnabled(boolean profilingEnabled) {
+		this.cpu.setProfiler(profilingEnabled ? new Profiler(this.startingAddress, this.programSize) : null);
+		this.profilingEnabled = profilingEnabled;
+	}
+
+	public boolean isProfilingEnabled() {
+		return this.profilingEnabled;
+	}
+
+	/**
+	 * @return Line of the assembly => number of times its instruction was executed, empty when not profiling
+	 */
+	public Map<Integer, Integer> getLineCounts() {
+		Map<Integer, Integer> lineCounts = new HashMap<>();
+		Profiler profiler = this.cpu.getProfiler();
+
+		if (profiler != null) {
+			for (Map.Entry<Integer, Integer> entry : this.asmToLine.entrySet()) {
+				lineCounts.merge(entry.getValue(), profiler.getCount(entry.getKey()), Integer::sum);
+			}
+		}
+		return lineCounts;
+	}
+
+	/**
+	 * @return Label => number of instructions executed between it and the next label, in the order of the program
+	 */
+	public Map<String, Long> getLabelCounts() {
+		Map<String, Long> labelCounts = new LinkedHashMap<>();
+		Profiler profiler = this.cpu.getProfiler();
+
+		if (profiler == null) {
+			return labelCounts;
+		}
+
+		List<Map.Entry<String, Integer>> labels = new ArrayList<>(this.labelAddresses.entrySet());
+		for (int i = 0; i < labels.size(); i++) {
+			long end = i + 1 < labels.size() ? labels.get(i + 1).getValue() : profiler.getEnd();
+			long total = 0;
+			for (long address = labels.get(i).getValue(); address < end; address += 4) {
+				total += profiler.getCount(address);
+			}
+			labelCounts.put(labels.get(i).getKey(), total);
+		}
+		return labelCounts;
+	}
+
+	/**
+	 * Write the profile as CSV: a "line" row per instruction executed, followed by a "label" row per label
+	 * @param path Relative or absolute path of the CSV file
+	 * @throws IOException
+	 */
+	public void exportProfile(String path) throws IOException {
+		Profiler profiler = this.cpu.getProfiler();
+
+		if (profiler == null) {
+			throw new IllegalStateException("The execution isn't profiled");
+		}
+
+		try (PrintWriter out = new PrintWriter(path, "UTF-8")) {
+			out.println("kind,name,line,address,count");
+
+			Map<Integer, String> labelAt = new HashMap<>();
+			this.labelAddresses.forEach((name, address) -> labelAt.put(address, name));
+
+			String label = "";
+			for (long address = profiler.getStart(); address < profiler.getEnd(); address += 4) {
+				label = labelAt.getOrDefault((int) address, label);
+				Integer line = this.asmToLine.get((int) address);
+				if (line != null && profiler.getCount(address) > 0) {
+					out.format("line,%s,%d,0x%x,%d%n", label, line, address, profiler.getCount(address));
+				}
+			}
+
+			for (Map.Entry<String, Long> entry : this.getLabelCounts().entrySet()) {
+				out.format("label,%s,,0x%x,%d%n", entry.getKey(), this.labelAddresses.get(entry.getKey()), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Count the cycles of the executed instructions, the program reads them at CycleCounter.REGISTER_ADDRESS
+	 * @param costTable The cost model such as CycleCostTable.arm7tdmi(), null to stop counting
+	 * @throws IllegalStateException In turbo mode
+	 */
+	public void setCycleCostTable(CycleCostTable costTable) {
+		this.cpu.setCycleCounter(costTable == null ? null : new CycleCounter(costTable));
+		this.cycleCostTable = costTable;
+	}
+
+	public CycleCostTable getCycleCostTable() {
+		return this.cycleCostTable;
+	}
+
+	/**
+	 * @return The cycles used since the processor state was reset, 0 when they aren't counted
+	 */
+	public long getCycles() {
+		CycleCounter counter = this.cpu.getCycleCounter();
+		return counter == null ? 0 : counter.getCycles();
+	}
+
+	/**
+	 * Pause the running program within a slice of instructions, see Cpu.pause
+	 */
+	public void pause() {
+		this.cpu.pause();
+	}
+
+	/**
+	 * Continue the paused program from the exact instruction it was paused on
+	 */
+	public void resume() {
+		try {
+			this.cpu.resume();
+		} catch (UnicornException e) {
+			this.handleException(e);
+		}
+	}
+
+	/**
+	 * @return true if the program was paused and can be resumed
+	 */
+	public boolean isPaused() {
+		return this.cpu.isPaused();
+	}
+
 	/**
 	 * Execute a single instruction at the currentAddress
 	 */
@@ -430,7 +979,38 @@ public class ArmSimulator {
 	 */
 	public void resetState() {
 		this.ram.clear();
-		this.cpu = new Cpu(ram, this.startingAddress, this.ramSize);
+		this.loadedRam = null;
+		this.fileMapped = false;
+		this.resetProcessor();
+	}
+
+	private void resetProcessor() {
+		// The breakpoints are kept when the processor state is reset
+		List<Breakpoint> breakpoints = new ArrayList<>();
+		if (this.cpu != null) {
+			for (long address : this.cpu.getBreakpointManager().getBreakpoints()) {
+				breakpoints.add(this.cpu.getBreakpointManager().get(address));
+			}
+		}
+		List<Watchpoint> watchpoints = this.cpu == null ? List.of() : this.cpu.getWatchpointManager().getWatchpoints();
+		this.cpu = new Cpu(ram, this.startingAddress, this.memoryMap, this.turboMode);
+		for (Breakpoint breakpoint : breakpoints) {
+			breakpoint.resetHitCount();
+			this.cpu.getBreakpointManager().add(breakpoint);
+		}
+		watchpoints.forEach(this.cpu.getWatchpointManager()::add);
+		if (this.historyEnabled && !this.turboMode) {
+			new ExecutionHistory(this.cpu);
+		} else if (this.traceRecorder != null && !this.turboMode) {
+			this.cpu.setTraceRecorder(this.traceRecorder);
+		}
+		if (this.profilingEnabled && !this.turboMode) {
+			this.cpu.setProfiler(new Profiler(this.startingAddress, this.programSize));
+		}
+		if (this.cycleCostTable != null && !this.turboMode) {
+			this.cpu.setCycleCounter(new CycleCounter(this.cycleCostTable));
+		}
+		this.cpu.setInstructionBudget(this.instructionBudget);
 		this.setRegisterValue(13, 0x1F0000);
 		this.cpu.registerCpuRoutine(new CpuConsoleGetString(cpu, consoleBuffer, waitingForInput));
 		this.cpu.registerCpuRoutine(new CpuConsoleGetChar(cpu, consoleBuffer, waitingForInput));
@@ -452,6 +1032,7 @@ public class ArmSimulator {
 	public void setStartingAddress(int startingAddress) {
 		this.cpu.setStartingAddress(startingAddress);
 		this.startingAddress = startingAddress;
+		this.loadedRam = null; // The previous program stays where it was loaded
 	}
 	
 	/**
@@ -461,6 +1042,33 @@ public class ArmSimulator {
 		return this.ramSize;
 	}
 	
+	/**
+	 * @return The memory map of the processor, the program can access the regions added to it right away
+	 */
+	public MemoryMap getMemoryMap() {
+		return this.memoryMap;
+	}
+	
+	/**
+	 * Run the programs at Unicorn's native speed, see Cpu(Ram, long, MemoryMap, boolean)
+	 * The mode is applied the next time the processor state is reset
+	 */
+	public void setTurboMode(boolean turboMode) {
+		this.turboMode = turboMode;
+	}
+	
+	public boolean isTurboMode() {
+		return this.turboMode;
+	}
+	
+	/**
+	 * @param instructionBudget Maximum number of instructions executed by a run, 0 for no limit
+	 */
+	public void setInstructionBudget(long instructionBudget) {
+		this.instructionBudget = instructionBudget;
+		this.cpu.setInstructionBudget(instructionBudget);
+	}
+	
 	/**
 	 * @return the Negative Flag status
 	 */
@@ -0,0 +1,1273 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Assembles ARM programs in process, without starting kstool.
+ *
+ * It encodes the instructions and directives the simulated programs use, exactly as Keystone does: the literal pool
+ * of the "ldr rX, =value" is placed after the program and the immediate targets of the branches are absolute
+ * addresses. When the assembly uses anything else, or anything Keystone could encode another way (an immediate
+ * needing MVN or MOVW, a NOP, an alignment padding...), the whole assembly is left to the next backend, which also
+ * reports the errors.
+ */
+public class ArmAssemblerBackend implements AssemblerBackend {
+	private static final Pattern labelPattern = Pattern.compile("([A-Za-z_.$][A-Za-z0-9_.$]*)\\s*:");
+	private static final Pattern identifierPattern = Pattern.compile("[A-Za-z_.$][A-Za-z0-9_.$]*");
+
+	private static final Map<String, Integer> conditions = new HashMap<>();
+	private static final Map<String, Integer> dataProcessingOpcodes = new HashMap<>();
+	private static final Map<String, Integer> shiftTypes = new HashMap<>();
+	private static final Map<String, Integer> registers = new HashMap<>();
+
+	// The same exceptions as LLVM when it splits the condition and the S from a mnemonic
+	private static final Set<String> unsplittableMnemonics = Set.of("teq", "svc", "mls", "smlal", "umlal", "umaal", "hlt", "hvc", "smmls");
+	private static final Set<String> carrySettingBeforeCondition = Set.of("adcs", "bics", "movs", "muls", "smlals", "smulls", "umlals", "umulls", "lsls", "sbcs", "rscs");
+	private static final Set<String> endingWithS = Set.of("cps", "mls", "mrs", "smmls", "srs");
+
+	private String version; // Computed the first time it is needed
+
+	static {
+		String[] conditionNames = { "eq", "ne", "cs", "cc", "mi", "pl", "vs", "vc", "hi", "ls", "ge", "lt", "gt", "le", "al" };
+		for (int i = 0; i < conditionNames.length; i++) {
+			conditions.put(conditionNames[i], i);
+		}
+		conditions.put("hs", 2);
+		conditions.put("lo", 3);
+
+		String[] opcodeNames = { "and", "eor", "sub", "rsb", "add", "adc", "sbc", "rsc", "tst", "teq", "cmp", "cmn", "orr", "mov", "bic", "mvn" };
+		for (int i = 0; i < opcodeNames.length; i++) {
+			dataProcessingOpcodes.put(opcodeNames[i], i);
+		}
+
+		shiftTypes.put("lsl", 0);
+		shiftTypes.put("asl", 0);
+		shiftTypes.put("lsr", 1);
+		shiftTypes.put("asr", 2);
+		shiftTypes.put("ror", 3);
+		shiftTypes.put("rrx", 3);
+
+		for (int i = 0; i < 16; i++) {
+			registers.put("r" + i, i);
+		}
+		for (int i = 0; i < 4; i++) {
+			registers.put("a" + (i + 1), i);
+		}
+		for (int i = 0; i < 8; i++) {
+			registers.put("v" + (i + 1), i + 4);
+		}
+		registers.put("sb", 9);
+		registers.put("sl", 10);
+		registers.put("fp", 11);
+		registers.put("ip", 12);
+		registers.put("sp", 13);
+		registers.put("lr", 14);
+		registers.put("pc", 15);
+	}
+
+	@Override
+	public byte[] assemble(String assembly, long startingAddress) {
+		try {
+			return new Program(assembly, startingAddress).assemble();
+		} catch (UnsupportedException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return "arm-" and the SHA-256 of the class files of this backend, which change with any change to an encoding
+	 */
+	@Override
+	public synchronized String getVersion() {
+		if (this.version == null) {
+			try {
+				List<byte[]> classFiles = new ArrayList<>();
+				List<Class<?>> classes = new ArrayList<>(List.of(ArmAssemblerBackend.class.getDeclaredClasses()));
+				classes.add(0, ArmAssemblerBackend.class);
+
+				for (Class<?> c : classes) {
+					try (InputStream input = ArmAssemblerBackend.class.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class")) {
+						if (input == null) {
+							throw new IOException("Missing class file of " + c.getName());
+						}
+						classFiles.add(input.readAllBytes());
+					}
+				}
+				this.version = "arm-" + AssemblyCache.sha256(classFiles.toArray(new byte[0][]));
+			} catch (IOException e) {
+				System.out.println("[ERROR] Can't read the version of the ARM assembler: " + e);
+				return "arm";
+			}
+		}
+		return this.version;
+	}
+
+	@Override
+	public Listing assembleListing(String assembly, long startingAddress) {
+		try {
+			return new Program(assembly, startingAddress).assembleListing();
+		} catch (UnsupportedException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Thrown when the assembly must be left to the next backend
+	 */
+	static class UnsupportedException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedException() {
+			super(null, null, false, false);
+		}
+	}
+
+	private static class Statement {
+		private final long address;
+		private final String text;
+		private final String mnemonic;
+		private final List<String> operands;
+		private int literal = -1; // Index in the literal pool
+		private byte[] bytes;
+		private final Map<String, Long> dependencies = new HashMap<>(); // Values of the labels used by the encoding
+
+		Statement(long address, String text) {
+			this.address = address;
+			this.text = text;
+
+			int space = 0;
+			while (space < text.length() && !Character.isWhitespace(text.charAt(space))) {
+				space++;
+			}
+			this.mnemonic = text.substring(0, space).toLowerCase();
+			this.operands = splitOperands(text.substring(space).trim());
+		}
+	}
+
+	/**
+	 * An assembled program, whose statements can be reused by the assembly of the next version of the program
+	 */
+	static class Program {
+		private static final String POOL_DEPENDENCY = "=";
+
+		private final long start;
+		private final long end;
+		private final List<Statement> statements = new ArrayList<>();
+		private final Map<String, Long> labels = new HashMap<>();
+		private final List<String> literals = new ArrayList<>();
+		private final List<Long> lineStarts = new ArrayList<>();
+		private final List<Integer> lineLengths = new ArrayList<>();
+		private Statement current; // The statement being encoded
+		private int reusedCount;
+
+		Program(String assembly, long start) throws UnsupportedException {
+			this.start = start;
+			long address = start;
+
+			for (String line : assembly.split(";", -1)) {
+				long lineStart = address;
+
+				for (String text : line.split("[\\r\\n]")) {
+					text = stripComment(text).trim();
+
+					Matcher matcher = labelPattern.matcher(text);
+					while (matcher.lookingAt()) {
+						if (this.labels.put(matcher.group(1), address) != null) {
+							throw new UnsupportedException();
+						}
+						text = text.substring(matcher.end()).trim();
+						matcher = labelPattern.matcher(text);
+					}
+
+					if (text.isEmpty()) {
+						continue;
+					}
+
+					Statement statement = new Statement(address, text);
+					address += this.sizeOf(statement);
+					this.statements.add(statement);
+				}
+				this.lineStarts.add(lineStart);
+				this.lineLengths.add((int) (address - lineStart));
+			}
+			this.end = address;
+		}
+
+		private long sizeOf(Statement statement) throws UnsupportedException {
+			List<String> operands = statement.operands;
+
+			switch (statement.mnemonic) {
+				case ".word":
+				case ".long":
+				case ".4byte":
+					return 4L * operands.size();
+				case ".hword":
+				case ".short":
+				case ".2byte":
+					return 2L * operands.size();
+				case ".byte":
+					return operands.size();
+				case ".ascii":
+				case ".asciz":
+				case ".string":
+					long size = 0;
+					for (String operand : operands) {
+						size += parseString(operand).length + (statement.mnemonic.equals(".ascii") ? 0 : 1);
+					}
+					return size;
+				case ".space":
+				case ".skip":
+					if (operands.isEmpty() || operands.size() > 2) {
+						throw new UnsupportedException();
+					}
+					long length = this.evaluate(operands.get(0));
+					if (length < 0) {
+						throw new UnsupportedException();
+					}
+					return length;
+				case ".align":
+				case ".p2align":
+				case ".balign":
+					// Only when nothing has to be padded
+					if (operands.size() != 1) {
+						throw new UnsupportedException();
+					}
+					long alignment = this.evaluate(operands.get(0));
+					if (!statement.mnemonic.equals(".balign")) {
+						alignment = alignment >= 0 && alignment < 31 ? 1L << alignment : -1;
+					}
+					if (alignment <= 0 || (statement.address - this.start) % alignment != 0) {
+						throw new UnsupportedException();
+					}
+					return 0;
+				case ".global":
+				case ".globl":
+				case ".arm":
+				case ".text":
+					return 0;
+				default:
+					if (statement.mnemonic.startsWith(".") || statement.address % 4 != 0) {
+						throw new UnsupportedException();
+					}
+					if (operands.size() == 2 && operands.get(1).startsWith("=")) {
+						statement.literal = this.literals.size();
+						this.literals.add(operands.get(1).substring(1).trim());
+					}
+					return 4;
+			}
+		}
+
+		Listing assembleListing() throws UnsupportedException {
+			return this.assembleListing(null);
+		}
+
+		/**
+		 * @param previous A previous program, the statements with the same text at the same address are only encoded
+		 *                 again if a label they use moved
+		 */
+		Listing assembleListing(Program previous) throws UnsupportedException {
+			byte[] binary = this.assemble(previous);
+			long[] addresses = new long[this.lineStarts.size()];
+			int[] lengths = new int[addresses.length];
+
+			for (int i = 0; i < addresses.length; i++) {
+				addresses[i] = this.lineStarts.get(i);
+				lengths[i] = this.lineLengths.get(i);
+			}
+			return new Listing(binary, addresses, lengths);
+		}
+
+		byte[] assemble() throws UnsupportedException {
+			return this.assemble(null);
+		}
+
+		private byte[] assemble(Program previous) throws UnsupportedException {
+			if (!this.literals.isEmpty() && this.end % 4 != 0) {
+				throw new UnsupportedException();
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) (this.end - this.start) + 4 * this.literals.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			Map<String, Statement> previousStatements = new HashMap<>();
+			if (previous != null) {
+				for (Statement statement : previous.statements) {
+					previousStatements.put(statement.address + ":" + statement.text, statement);
+				}
+			}
+
+			for (Statement statement : this.statements) {
+				Statement old = previousStatements.get(statement.address + ":" + statement.text);
+				if (old != null && this.stillHolds(old.dependencies, statement)) {
+					statement.bytes = old.bytes;
+					statement.dependencies.putAll(old.dependencies);
+					this.reusedCount++;
+				} else {
+					int position = buffer.position();
+					this.current = statement;
+					this.encode(statement, buffer);
+					this.current = null;
+					statement.bytes = new byte[buffer.position() - position];
+					buffer.position(position);
+					buffer.get(statement.bytes);
+					continue;
+				}
+				buffer.put(statement.bytes);
+			}
+			for (String literal : this.literals) {
+				buffer.putInt(this.evaluateInt(literal));
+			}
+			return buffer.array();
+		}
+
+		/**
+		 * @return The number of statements of this program whose encoding came from the previous one
+		 */
+		int getReusedCount() {
+			return this.reusedCount;
+		}
+
+		int getStatementCount() {
+			return this.statements.size();
+		}
+
+		private boolean stillHolds(Map<String, Long> dependencies, Statement statement) {
+			for (Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+				Long value = dependency.getKey().equals(POOL_DEPENDENCY) ? (Long) this.poolAddress(statement) : this.labels.get(dependency.getKey());
+				if (!dependency.getValue().equals(value)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private long poolAddress(Statement statement) {
+			return this.end + 4L * statement.literal;
+		}
+
+		/**
+		 * @return The address of the label, recorded as a dependency of the statement being encoded
+		 */
+		private Long lookup(String label) {
+			Long address = this.labels.get(label);
+			if (address != null && this.current != null) {
+				this.current.dependencies.put(label, address);
+			}
+			return address;
+		}
+
+		private void encode(Statement statement, ByteBuffer buffer) throws UnsupportedException {
+			List<String> operands = statement.operands;
+
+			switch (statement.mnemonic) {
+				case ".word":
+				case ".long":
+				case ".4byte":
+					for (String operand : operands) {
+						buffer.putInt(this.evaluateInt(operand));
+					}
+					break;
+				case ".hword":
+				case ".short":
+				case ".2byte":
+					for (String operand : operands) {
+						buffer.putShort((short) this.evaluateRange(operand, -0x8000, 0xFFFF));
+					}
+					break;
+				case ".byte":
+					for (String operand : operands) {
+						buffer.put((byte) this.evaluateRange(operand, -0x80, 0xFF));
+					}
+					break;
+				case ".ascii":
+				case ".asciz":
+				case ".string":
+					for (String operand : operands) {
+						buffer.put(parseString(operand));
+						if (!statement.mnemonic.equals(".ascii")) {
+							buffer.put((byte) 0);
+						}
+					}
+					break;
+				case ".space":
+				case ".skip":
+					byte fill = operands.size() == 2 ? (byte) this.evaluateRange(operands.get(1), -0x80, 0xFF) : 0;
+					for (long i = this.evaluate(operands.get(0)); i > 0; i--) {
+						buffer.put(fill);
+					}
+					break;
+				default:
+					if (!statement.mnemonic.startsWith(".")) {
+						buffer.putInt(this.encodeInstruction(statement));
+					}
+					break;
+			}
+		}
+
+		private int encodeInstruction(Statement statement) throws UnsupportedException {
+			String mnemonic = statement.mnemonic;
+			int condition = 14;
+			boolean setFlags = false;
+
+			if (!unsplittableMnemonics.contains(mnemonic)) {
+				if (!carrySettingBeforeCondition.contains(mnemonic) && mnemonic.length() > 2) {
+					Integer code = conditions.get(mnemonic.substring(mnemonic.length() - 2));
+					if (code != null) {
+						condition = code;
+						mnemonic = mnemonic.substring(0, mnemonic.length() - 2);
+					}
+				}
+				if (mnemonic.endsWith("s") && !endingWithS.contains(mnemonic)) {
+					setFlags = true;
+					mnemonic = mnemonic.substring(0, mnemonic.length() - 1);
+				}
+			}
+
+			int instruction = this.encodeUnconditional(statement, mnemonic, setFlags, condition);
+			return (condition << 28) | instruction;
+		}
+
+		/**
+		 * @return The instruction without its condition
+		 */
+		private int encodeUnconditional(Statement statement, String mnemonic, boolean setFlags, int condition) throws UnsupportedException {
+			List<String> operands = statement.operands;
+
+			Integer opcode = dataProcessingOpcodes.get(mnemonic);
+			if (opcode != null) {
+				return this.encodeDataProcessing(opcode, setFlags, operands);
+			}
+
+			switch (mnemonic) {
+				case "lsl":
+				case "lsr":
+				case "asr":
+				case "ror":
+					if (operands.size() != 3) {
+						throw new UnsupportedException();
+					}
+					return this.encodeDataProcessing(13, setFlags, List.of(operands.get(0), operands.get(1), mnemonic + " " + operands.get(2)));
+				case "rrx":
+					if (operands.size() != 2) {
+						throw new UnsupportedException();
+					}
+					return this.encodeDataProcessing(13, setFlags, List.of(operands.get(0), operands.get(1), "rrx"));
+				case "mul":
+					requireOperands(operands, 3);
+					return (setFlags ? 1 << 20 : 0) | register(operands.get(0)) << 16 | register(operands.get(2)) << 8 | 0x90
+							| register(operands.get(1));
+				case "mla":
+					requireOperands(operands, 4);
+					return 1 << 21 | (setFlags ? 1 << 20 : 0) | register(operands.get(0)) << 16 | register(operands.get(3)) << 12
+							| register(operands.get(2)) << 8 | 0x90 | register(operands.get(1));
+				case "umull":
+				case "umlal":
+				case "smull":
+				case "smlal":
+					requireOperands(operands, 4);
+					return 0x00800090 | (mnemonic.startsWith("s") ? 1 << 22 : 0) | (mnemonic.endsWith("lal") ? 1 << 21 : 0)
+							| (setFlags ? 1 << 20 : 0) | register(operands.get(1)) << 16 | register(operands.get(0)) << 12
+							| register(operands.get(3)) << 8 | register(operands.get(2));
+				default:
+					break;
+			}
+
+			if (setFlags) {
+				throw new UnsupportedException();
+			}
+
+			switch (mnemonic) {
+				case "b":
+				case "bl":
+					if (operands.size() != 1) {
+						throw new UnsupportedException();
+					}
+					return (mnemonic.equals("b") ? 0x0A000000 : 0x0B000000) | this.branchOffset(statement, operands.get(0), 4) >> 2 & 0xFFFFFF;
+				case "bx":
+				case "blx":
+					if (operands.size() != 1) {
+						throw new UnsupportedException();
+					}
+					int target = parseRegister(operands.get(0));
+					if (target >= 0) {
+						return (mnemonic.equals("bx") ? 0x012FFF10 : 0x012FFF30) | target;
+					}
+					if (mnemonic.equals("bx") || condition != 14) {
+						throw new UnsupportedException();
+					}
+					// The condition field of an immediate BLX is 0b1111, ORed with the default one
+					int offset = this.branchOffset(statement, operands.get(0), 2);
+					return 0xFA000000 | (offset >> 1 & 1) << 24 | offset >> 2 & 0xFFFFFF;
+				case "svc":
+				case "swi":
+					requireOperands(operands, 1);
+					String value = operands.get(0);
+					return 0x0F000000 | (int) this.evaluateRange(value.startsWith("#") ? value.substring(1) : value, 0, 0xFFFFFF);
+				case "movw":
+				case "movt":
+					requireOperands(operands, 2);
+					int immediate = (int) this.evaluateRange(immediate(operands.get(1)), 0, 0xFFFF);
+					return (mnemonic.equals("movw") ? 0x03000000 : 0x03400000) | (immediate >> 12) << 16 | register(operands.get(0)) << 12
+							| immediate & 0xFFF;
+				case "ldr":
+				case "str":
+				case "ldrb":
+				case "strb":
+					return this.encodeSingleTransfer(statement, mnemonic.startsWith("ldr"), mnemonic.endsWith("b"));
+				case "ldrh":
+				case "strh":
+				case "ldrsh":
+				case "ldrsb":
+					return this.encodeHalfwordTransfer(statement, mnemonic);
+				case "push":
+				case "pop":
+					requireOperands(operands, 1);
+					int list = parseRegisterList(operands.get(0));
+					if (Integer.bitCount(list) == 1) {
+						// A single register is pushed with STR and popped with LDR, as the ARM ARM says
+						int rt = Integer.numberOfTrailingZeros(list) << 12;
+						return (mnemonic.equals("push") ? 0x052D0004 : 0x049D0004) | rt;
+					}
+					return (mnemonic.equals("push") ? 0x092D0000 : 0x08BD0000) | list;
+				default:
+					if (mnemonic.startsWith("ldm") || mnemonic.startsWith("stm")) {
+						return this.encodeBlockTransfer(statement, mnemonic);
+					}
+					throw new UnsupportedException();
+			}
+		}
+
+		private int encodeDataProcessing(int opcode, boolean setFlags, List<String> operands) throws UnsupportedException {
+			boolean compare = opcode >= 8 && opcode <= 11;
+			boolean move = opcode == 13 || opcode == 15;
+			if (operands.size() < 2) {
+				throw new UnsupportedException();
+			}
+			int rd = 0;
+			int rn = 0;
+			int first;
+
+			if (compare) {
+				if (setFlags) {
+					throw new UnsupportedException();
+				}
+				rn = register(operands.get(0));
+				first = 1;
+			} else if (move) {
+				rd = register(operands.get(0));
+				first = 1;
+			} else if (operands.size() >= 3 && parseRegister(operands.get(1)) >= 0 && !isShift(operands.get(2))) {
+				rd = register(operands.get(0));
+				rn = register(operands.get(1));
+				first = 2;
+			} else {
+				// Two operands form, the destination is also the first source
+				rd = register(operands.get(0));
+				rn = rd;
+				first = 1;
+			}
+
+			int shifter = this.encodeShifterOperand(operands.subList(first, operands.size()));
+			return opcode << 21 | (setFlags || compare ? 1 << 20 : 0) | rn << 16 | rd << 12 | shifter;
+		}
+
+		/**
+		 * @return The bits 0 to 11 and the immediate bit of a data processing operand
+		 */
+		private int encodeShifterOperand(List<String> operands) throws UnsupportedException {
+			if (operands.isEmpty() || operands.size() > 2) {
+				throw new UnsupportedException();
+			}
+
+			String operand = operands.get(0);
+			if (operand.startsWith("#")) {
+				if (operands.size() != 1) {
+					throw new UnsupportedException();
+				}
+				int encoded = encodeModifiedImmediate(this.evaluateInt(operand.substring(1)));
+				if (encoded < 0) {
+					throw new UnsupportedException();
+				}
+				return 1 << 25 | encoded;
+			}
+
+			int rm = register(operand);
+			if (operands.size() == 1) {
+				return rm;
+			}
+
+			String shift = operands.get(1).trim();
+			int space = shift.indexOf(' ');
+			String amount = space < 0 ? "" : shift.substring(space + 1).trim();
+			int rs = parseRegister(amount);
+			if (rs >= 0) {
+				Integer type = shiftTypes.get(shift.substring(0, space).toLowerCase());
+				if (type == null || shift.toLowerCase().startsWith("rrx")) {
+					throw new UnsupportedException();
+				}
+				return rs << 8 | type << 5 | 1 << 4 | rm;
+			}
+			return this.encodeImmediateShift(shift) | rm;
+		}
+
+		/**
+		 * @return The bits 4 to 11 of a register shifted by an immediate
+		 */
+		private int encodeImmediateShift(String shift) throws UnsupportedException {
+			String lowerCase = shift.trim().toLowerCase();
+			if (lowerCase.equals("rrx")) {
+				return 3 << 5;
+			}
+
+			int space = lowerCase.indexOf(' ');
+			if (space < 0) {
+				throw new UnsupportedException();
+			}
+			Integer type = shiftTypes.get(lowerCase.substring(0, space));
+			String amountText = shift.trim().substring(space + 1).trim();
+			if (type == null || lowerCase.startsWith("rrx") || !amountText.startsWith("#")) {
+				throw new UnsupportedException();
+			}
+
+			long amount = this.evaluate(amountText.substring(1));
+			switch (type) {
+				case 0:
+					if (amount < 0 || amount > 31) {
+						throw new UnsupportedException();
+					}
+					break;
+				case 1:
+				case 2:
+					if (amount < 1 || amount > 32) {
+						throw new UnsupportedException();
+					}
+					break;
+				default:
+					if (amount < 1 || amount > 31) {
+						throw new UnsupportedException();
+					}
+					break;
+			}
+			return (int) (amount & 31) << 7 | type << 5;
+		}
+
+		private int encodeSingleTransfer(Statement statement, boolean load, boolean byteTransfer) throws UnsupportedException {
+			List<String> operands = statement.operands;
+			if (operands.size() < 2) {
+				throw new UnsupportedException();
+			}
+
+			int base = 0x04000000 | (byteTransfer ? 1 << 22 : 0) | (load ? 1 << 20 : 0) | register(operands.get(0)) << 12;
+			String address = operands.get(1);
+
+			if (address.startsWith("=")) {
+				if (!load || byteTransfer || statement.literal < 0) {
+					throw new UnsupportedException();
+				}
+				long pool = this.poolAddress(statement);
+				statement.dependencies.put(POOL_DEPENDENCY, pool);
+				long offset = pool - (statement.address + 8);
+				return base | this.encodePcRelative(offset);
+			}
+
+			if (!address.startsWith("[")) {
+				requireOperands(operands, 2);
+				Long target = identifierPattern.matcher(address).matches() ? this.lookup(address) : null;
+				if (target == null) {
+					throw new UnsupportedException();
+				}
+				return base | this.encodePcRelative(target - (statement.address + 8));
+			}
+
+			Indexing indexing = this.parseIndexing(operands);
+			base |= indexing.rn << 16 | (indexing.preIndexed ? 1 << 24 : 0) | (indexing.writeBack ? 1 << 21 : 0);
+
+			List<String> offset = indexing.offset;
+			if (offset.isEmpty()) {
+				return base | 1 << 23;
+			}
+
+			String first = offset.get(0);
+			if (first.startsWith("#")) {
+				if (offset.size() != 1) {
+					throw new UnsupportedException();
+				}
+				SignedValue value = this.parseSignedImmediate(first, 4095);
+				return base | (value.up ? 1 << 23 : 0) | value.magnitude;
+			}
+
+			boolean up = !first.startsWith("-");
+			int rm = register(first.startsWith("-") || first.startsWith("+") ? first.substring(1).trim() : first);
+			int shift = 0;
+			if (offset.size() == 2) {
+				shift = this.encodeImmediateShift(offset.get(1));
+			} else if (offset.size() > 2) {
+				throw new UnsupportedException();
+			}
+			return base | 1 << 25 | (up ? 1 << 23 : 0) | shift | rm;
+		}
+
+		private int encodeHalfwordTransfer(Statement statement, String mnemonic) throws UnsupportedException {
+			List<String> operands = statement.operands;
+			if (operands.size() < 2 || !operands.get(1).startsWith("[")) {
+				throw new UnsupportedException();
+			}
+
+			boolean load = mnemonic.startsWith("ldr");
+			int kind;
+			switch (mnemonic) {
+				case "ldrsb":
+					kind = 0xD0;
+					break;
+				case "ldrsh":
+					kind = 0xF0;
+					break;
+				default:
+					kind = 0xB0;
+					break;
+			}
+
+			Indexing indexing = this.parseIndexing(operands);
+			int base = (indexing.preIndexed ? 1 << 24 : 0) | (indexing.writeBack ? 1 << 21 : 0) | (load ? 1 << 20 : 0)
+					| indexing.rn << 16 | register(operands.get(0)) << 12 | kind;
+
+			List<String> offset = indexing.offset;
+			if (offset.isEmpty()) {
+				return base | 1 << 23 | 1 << 22;
+			}
+			if (offset.size() != 1) {
+				throw new UnsupportedException();
+			}
+
+			String first = offset.get(0);
+			if (first.startsWith("#")) {
+				SignedValue value = this.parseSignedImmediate(first, 255);
+				return base | (value.up ? 1 << 23 : 0) | 1 << 22 | (value.magnitude >> 4) << 8 | value.magnitude & 0xF;
+			}
+
+			boolean up = !first.startsWith("-");
+			return base | (up ? 1 << 23 : 0) | register(first.startsWith("-") || first.startsWith("+") ? first.substring(1).trim() : first);
+		}
+
+		private int encodeBlockTransfer(Statement statement, String mnemonic) throws UnsupportedException {
+			List<String> operands = statement.operands;
+			requireOperands(operands, 2);
+
+			boolean load = mnemonic.startsWith("ldm");
+			String mode = mnemonic.substring(3);
+			int bits; // P and U
+			switch (mode) {
+				case "":
+				case "ia":
+					bits = 0b01;
+					break;
+				case "ib":
+					bits = 0b11;
+					break;
+				case "da":
+					bits = 0b00;
+					break;
+				case "db":
+					bits = 0b10;
+					break;
+				case "fd":
+					bits = load ? 0b01 : 0b10;
+					break;
+				case "ed":
+					bits = load ? 0b11 : 0b00;
+					break;
+				case "fa":
+					bits = load ? 0b00 : 0b11;
+					break;
+				case "ea":
+					bits = load ? 0b10 : 0b01;
+					break;
+				default:
+					throw new UnsupportedException();
+			}
+
+			String rn = operands.get(0);
+			boolean writeBack = rn.endsWith("!");
+			if (writeBack) {
+				rn = rn.substring(0, rn.length() - 1).trim();
+			}
+
+			String list = operands.get(1);
+			boolean userMode = list.endsWith("^");
+			if (userMode) {
+				list = list.substring(0, list.length() - 1).trim();
+			}
+
+			return 0x08000000 | bits << 23 | (userMode ? 1 << 22 : 0) | (writeBack ? 1 << 21 : 0) | (load ? 1 << 20 : 0)
+					| register(rn) << 16 | parseRegisterList(list);
+		}
+
+		private int encodePcRelative(long offset) throws UnsupportedException {
+			if (offset < -4095 || offset > 4095) {
+				throw new UnsupportedException();
+			}
+			return 15 << 16 | 1 << 24 | (offset >= 0 ? 1 << 23 : 0) | (int) Math.abs(offset);
+		}
+
+		/**
+		 * @return The offset from the PC, a label or an immediate being the absolute address of the target
+		 */
+		private int branchOffset(Statement statement, String target, int alignment) throws UnsupportedException {
+			long address = this.evaluate(target.startsWith("#") ? target.substring(1) : target);
+			long offset = address - (statement.address + 8);
+
+			if (offset % alignment != 0 || offset < -(1L << 25) || offset >= 1L << 25) {
+				throw new UnsupportedException();
+			}
+			return (int) offset;
+		}
+
+		private Indexing parseIndexing(List<String> operands) throws UnsupportedException {
+			String address = operands.get(1);
+			int close = address.indexOf(']');
+			if (close < 0) {
+				throw new UnsupportedException();
+			}
+
+			String after = address.substring(close + 1).trim();
+			List<String> inside = splitOperands(address.substring(1, close).trim());
+			if (inside.isEmpty()) {
+				throw new UnsupportedException();
+			}
+
+			Indexing indexing = new Indexing();
+			indexing.rn = register(inside.get(0));
+
+			if (operands.size() > 2) {
+				if (inside.size() != 1 || !after.isEmpty()) {
+					throw new UnsupportedException();
+				}
+				indexing.preIndexed = false;
+				indexing.offset = operands.subList(2, operands.size());
+			} else {
+				if (!after.isEmpty() && !(after.equals("!") && inside.size() > 1)) {
+					throw new UnsupportedException();
+				}
+				indexing.preIndexed = true;
+				indexing.writeBack = !after.isEmpty();
+				indexing.offset = inside.subList(1, inside.size());
+			}
+			return indexing;
+		}
+
+		private SignedValue parseSignedImmediate(String operand, int maximum) throws UnsupportedException {
+			String text = operand.substring(1).trim();
+			long value = this.evaluate(text);
+			SignedValue signed = new SignedValue();
+
+			signed.up = value > 0 || (value == 0 && !text.startsWith("-"));
+			if (Math.abs(value) > maximum) {
+				throw new UnsupportedException();
+			}
+			signed.magnitude = (int) Math.abs(value);
+			return signed;
+		}
+
+		private int evaluateInt(String expression) throws UnsupportedException {
+			return (int) this.evaluateRange(expression, Integer.MIN_VALUE, 0xFFFFFFFFL);
+		}
+
+		private long evaluateRange(String expression, long minimum, long maximum) throws UnsupportedException {
+			long value = this.evaluate(expression);
+			if (value < minimum || value > maximum) {
+				throw new UnsupportedException();
+			}
+			return value;
+		}
+
+		private long evaluate(String expression) throws UnsupportedException {
+			Expression parser = new Expression(expression.trim(), this);
+			long value = parser.parseSum();
+			if (parser.position != parser.text.length()) {
+				throw new UnsupportedException();
+			}
+			return value;
+		}
+	}
+
+	private static class Indexing {
+		private int rn;
+		private boolean preIndexed;
+		private boolean writeBack;
+		private List<String> offset;
+	}
+
+	private static class SignedValue {
+		private boolean up;
+		private int magnitude;
+	}
+
+	/**
+	 * Numbers, characters and labels, added, subtracted, negated or complemented
+	 */
+	private static class Expression {
+		private final String text;
+		private final Program program;
+		private int position;
+
+		Expression(String text, Program program) {
+			this.text = text;
+			this.program = program;
+		}
+
+		long parseSum() throws UnsupportedException {
+			long value = this.parseUnary();
+
+			while (true) {
+				this.skipSpaces();
+				if (this.position >= this.text.length()) {
+					return value;
+				}
+
+				char operator = this.text.charAt(this.position);
+				if (operator != '+' && operator != '-') {
+					return value;
+				}
+				this.position++;
+				long operand = this.parseUnary();
+				value = operator == '+' ? value + operand : value - operand;
+				checkRange(value);
+			}
+		}
+
+		private long parseUnary() throws UnsupportedException {
+			this.skipSpaces();
+			if (this.position >= this.text.length()) {
+				throw new UnsupportedException();
+			}
+
+			char c = this.text.charAt(this.position);
+			switch (c) {
+				case '-':
+					this.position++;
+					return -this.parseUnary();
+				case '+':
+					this.position++;
+					return this.parseUnary();
+				case '~':
+					this.position++;
+					return ~this.parseUnary();
+				case '(':
+					this.position++;
+					long value = this.parseSum();
+					this.skipSpaces();
+					if (this.position >= this.text.length() || this.text.charAt(this.position) != ')') {
+						throw new UnsupportedException();
+					}
+					this.position++;
+					return value;
+				case '\'':
+					return this.parseCharacter();
+				default:
+					break;
+			}
+
+			if (Character.isDigit(c)) {
+				return this.parseNumber();
+			}
+
+			Matcher matcher = identifierPattern.matcher(this.text);
+			if (!matcher.find(this.position) || matcher.start() != this.position) {
+				throw new UnsupportedException();
+			}
+			this.position = matcher.end();
+
+			Long address = this.program.lookup(matcher.group());
+			if (address == null) {
+				throw new UnsupportedException();
+			}
+			return address;
+		}
+
+		private long parseNumber() throws UnsupportedException {
+			int start = this.position;
+			while (this.position < this.text.length() && Character.isLetterOrDigit(this.text.charAt(this.position))) {
+				this.position++;
+			}
+
+			String number = this.text.substring(start, this.position).toLowerCase();
+			try {
+				long value;
+				if (number.startsWith("0x")) {
+					value = Long.parseLong(number.substring(2), 16);
+				} else if (number.startsWith("0b")) {
+					value = Long.parseLong(number.substring(2), 2);
+				} else if (number.length() > 1 && number.startsWith("0")) {
+					value = Long.parseLong(number.substring(1), 8);
+				} else {
+					value = Long.parseLong(number);
+				}
+				checkRange(value);
+				return value;
+			} catch (NumberFormatException e) {
+				throw new UnsupportedException();
+			}
+		}
+
+		private long parseCharacter() throws UnsupportedException {
+			int close = this.text.indexOf('\'', this.position + 1);
+			if (close < 0) {
+				throw new UnsupportedException();
+			}
+
+			byte[] bytes = unescape(this.text.substring(this.position + 1, close));
+			if (bytes.length != 1) {
+				throw new UnsupportedException();
+			}
+			this.position = close + 1;
+			return bytes[0] & 0xFF;
+		}
+
+		private void skipSpaces() {
+			while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+				this.position++;
+			}
+		}
+
+		private static void checkRange(long value) throws UnsupportedException {
+			if (value < -(1L << 32) || value > 0xFFFFFFFFL) {
+				throw new UnsupportedException();
+			}
+		}
+	}
+
+	/**
+	 * Encodes an 8 bits value rotated by an even amount, choosing the same rotation as LLVM
+	 * @return The 12 bits of the operand, or -1 if the value can't be encoded this way
+	 */
+	static int encodeModifiedImmediate(int value) {
+		int rotation;
+
+		if ((value & ~0xFF) == 0) {
+			rotation = 0;
+		} else {
+			int shift = Integer.numberOfTrailingZeros(value) & ~1;
+			rotation = (32 - shift) & 31;
+
+			if ((Integer.rotateRight(value, shift) & ~0xFF) != 0 && (value & 63) != 0) {
+				int secondShift = Integer.numberOfTrailingZeros(value & ~63) & ~1;
+				if ((Integer.rotateRight(value, secondShift) & ~0xFF) == 0) {
+					rotation = (32 - secondShift) & 31;
+				}
+			}
+		}
+
+		int rotated = Integer.rotateLeft(value, rotation);
+		if ((rotated & ~0xFF) != 0) {
+			return -1;
+		}
+		return rotated | (rotation >> 1) << 8;
+	}
+
+	/**
+	 * @return The expression of an immediate, without its '#'
+	 */
+	private static String immediate(String operand) throws UnsupportedException {
+		if (!operand.startsWith("#")) {
+			throw new UnsupportedException();
+		}
+		return operand.substring(1);
+	}
+
+	private static int register(String name) throws UnsupportedException {
+		int register = parseRegister(name);
+		if (register < 0) {
+			throw new UnsupportedException();
+		}
+		return register;
+	}
+
+	private static int parseRegister(String name) {
+		Integer register = registers.get(name.trim().toLowerCase());
+		return register == null ? -1 : register;
+	}
+
+	private static boolean isShift(String operand) {
+		String lowerCase = operand.trim().toLowerCase();
+		return lowerCase.length() >= 3 && shiftTypes.containsKey(lowerCase.substring(0, 3))
+				&& (lowerCase.length() == 3 || Character.isWhitespace(lowerCase.charAt(3)));
+	}
+
+	private static int parseRegisterList(String list) throws UnsupportedException {
+		if (!list.startsWith("{") || !list.endsWith("}")) {
+			throw new UnsupportedException();
+		}
+
+		int mask = 0;
+		for (String item : list.substring(1, list.length() - 1).split(",")) {
+			int dash = item.indexOf('-');
+			if (dash < 0) {
+				mask |= 1 << register(item);
+			} else {
+				int first = register(item.substring(0, dash));
+				int last = register(item.substring(dash + 1));
+				if (last < first) {
+					throw new UnsupportedException();
+				}
+				for (int i = first; i <= last; i++) {
+					mask |= 1 << i;
+				}
+			}
+		}
+		return mask;
+	}
+
+	private static void requireOperands(List<String> operands, int count) throws UnsupportedException {
+		if (operands.size() != count) {
+			throw new UnsupportedException();
+		}
+	}
+
+	/**
+	 * Splits on the commas which aren't in brackets, braces or quotes
+	 */
+	private static List<String> splitOperands(String operands) {
+		List<String> result = new ArrayList<>();
+		if (operands.isEmpty()) {
+			return result;
+		}
+
+		int depth = 0;
+		char quote = 0;
+		int start = 0;
+		for (int i = 0; i < operands.length(); i++) {
+			char c = operands.charAt(i);
+
+			if (quote != 0) {
+				if (c == '\\') {
+					i++;
+				} else if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '[' || c == '{') {
+				depth++;
+			} else if (c == ']' || c == '}') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				result.add(operands.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		result.add(operands.substring(start).trim());
+		return result;
+	}
+
+	/**
+	 * Removes what follows an '@' or a "//" which isn't in quotes
+	 */
+	private static String stripComment(String text) {
+		char quote = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (quote != 0) {
+				if (c == '\\') {
+					i++;
+				} else if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '@' || text.startsWith("//", i)) {
+				return text.substring(0, i);
+			}
+		}
+		return text;
+	}
+
+	private static byte[] parseString(String operand) throws UnsupportedException {
+		if (operand.length() < 2 || !operand.startsWith("\"") || !operand.endsWith("\"")) {
+			throw new UnsupportedException();
+		}
+		return unescape(operand.substring(1, operand.length() - 1));
+	}
+
+	private static byte[] unescape(String text) throws UnsupportedException {
+		ByteBuffer buffer = ByteBuffer.allocate(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c > 0x7F || c == '"') {
+				throw new UnsupportedException();
+			}
+			if (c != '\\') {
+				buffer.put((byte) c);
+				continue;
+			}
+
+			if (++i >= text.length()) {
+				throw new UnsupportedException();
+			}
+			c = text.charAt(i);
+			switch (c) {
+				case 'n':
+					buffer.put((byte) '\n');
+					break;
+				case 't':
+					buffer.put((byte) '\t');
+					break;
+				case 'r':
+					buffer.put((byte) '\r');
+					break;
+				case 'b':
+					buffer.put((byte) '\b');
+					break;
+				case 'f':
+					buffer.put((byte) '\f');
+					break;
+				case '\\':
+				case '"':
+				case '\'':
+					buffer.put((byte) c);
+					break;
+				default:
+					if (c < '0' || c > '7') {
+						throw new UnsupportedException();
+					}
+					int value = 0;
+					int digits = 0;
+					while (digits < 3 && i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '7') {
+						value = value * 8 + text.charAt(i) - '0';
+						i++;
+						digits++;
+					}
+					i--;
+					if (value > 0xFF) {
+						throw new UnsupportedException();
+					}
+					buffer.put((byte) value);
+					break;
+			}
+		}
+
+		byte[] bytes = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(bytes);
+		return bytes;
+	}
+}
@@ -8,73 +8,100 @@
 
 package projetarm_v2.simulator.core;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import projetarm_v2.simulator.utils.NativeJarGetter;
-import projetarm_v2.simulator.utils.OSValidator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Assembles with the in process backend, and with kstool when the assembly needs it
+ */
 public class Assembler {
-	/**
-	 * Temporary directory which will contain the library.
-	 */
-	private Pattern pattern = Pattern.compile("\\[ (.*) \\]");
-	private Pattern errorPattern = Pattern.compile("'(.*) \\(.*'");
 	private static Assembler assembler;
-	private File executable;
+	private final List<AssemblerBackend> backends;
 	
-	public static Assembler getInstance() {
+	public static synchronized Assembler getInstance() {
 		if (Assembler.assembler == null) {
-			try {
-				Assembler.assembler = new Assembler();
-			} catch (IOException e) {
-				e.printStackTrace();
-				System.exit(-1);
-			}
+			Assembler.assembler = new Assembler(List.of(new ArmAssemblerBackend(), new ProcessAssemblerBackend()));
 		}
 		return Assembler.assembler;
 	}
 
-	private Assembler() throws IOException {
-		this.executable = NativeJarGetter.getInstance().getNativeExecutable("kstool");
+	/**
+	 * @param backends Tried in order, the last one must handle any assembly
+	 */
+	public Assembler(List<AssemblerBackend> backends) {
+		this.backends = List.copyOf(backends);
+	}
+
+	/**
+	 * @return The versions of the backends
+	 */
+	public String getVersion() {
+		StringBuilder version = new StringBuilder();
+		for (AssemblerBackend backend : this.backends) {
+			version.append(backend.getVersion()).append(';');
+		}
+		return version.toString();
 	}
 
 	public byte[] assemble(String assembly, long startingAddress) {
-		try {
-			if (OSValidator.isWindows()) {
-				assembly = assembly.replaceAll("\"", "\\\\\"");
+		for (AssemblerBackend backend : this.backends) {
+			byte[] bytes = backend.assemble(assembly, startingAddress);
+			if (bytes != null) {
+				return bytes;
 			}
-			
-			Process p = new ProcessBuilder(executable.getAbsolutePath(), "arm", assembly, Long.toHexString(startingAddress))
-					.start();
+		}
+		throw new InvalidAssemblyException("No assembler backend can assemble this program");
+	}
 
-			String result = new String(p.getInputStream().readAllBytes(), "ASCII");
+	/**
+	 * Assemble asynchronously, the backends which start a process start it from one of their threads
+	 * @return The machine code, or an InvalidAssemblyException
+	 */
+	public CompletableFuture<byte[]> submit(String assembly, long startingAddress) {
+		return this.submit(0, assembly, startingAddress);
+	}
 
-			Matcher matcher = pattern.matcher(result);
+	private CompletableFuture<byte[]> submit(int backendIndex, String assembly, long startingAddress) {
+		if (backendIndex >= this.backends.size()) {
+			return CompletableFuture.failedFuture(new InvalidAssemblyException("No assembler backend can assemble this program"));
+		}
+		return this.backends.get(backendIndex).submit(assembly, startingAddress).thenCompose(bytes -> bytes != null
+				? CompletableFuture.completedFuture(bytes)
+				: this.submit(backendIndex + 1, assembly, startingAddress));
+	}
 
-			if (!matcher.find()) {
-				Matcher errorMatcher = errorPattern.matcher(result);
-				if (!errorMatcher.find()) {
-					return new byte[0];
-				}
-				throw new InvalidAssemblyException (errorMatcher.group(1));
-			}
+	/**
+	 * Submit a batch of assemblies at once so that several kstool processes run at the same time, the identical ones are only assembled once
+	 * @param assemblies The assemblies
+	 * @param startingAddresses The starting address of each assembly
+	 * @return The result of each assembly, in the same order
+	 */
+	public List<CompletableFuture<byte[]>> submitAll(List<String> assemblies, long[] startingAddresses) {
+		Map<String, CompletableFuture<byte[]>> submitted = new HashMap<>();
+		List<CompletableFuture<byte[]>> results = new ArrayList<>();
 
-			String[] output = matcher.group(1).split(" ");
-			
-			byte[] bytes = new byte[output.length];
+		for (int i = 0; i < assemblies.size(); i++) {
+			String assembly = assemblies.get(i);
+			long startingAddress = startingAddresses[i];
+			results.add(submitted.computeIfAbsent(startingAddress + ":" + assembly, key -> this.submit(assembly, startingAddress)));
+		}
+		return results;
+	}
 
-			for (int i = 0; i < output.length; i++) {
-				bytes[i] = (byte) Integer.parseInt(output[i], 16);
+	/**
+	 * @param assembly Lines separated by ';'
+	 * @return The listing of the first backend able to make one, or null if none can and the lines must be assembled one by one
+	 */
+	public Listing assembleListing(String assembly, long startingAddress) {
+		for (AssemblerBackend backend : this.backends) {
+			Listing listing = backend.assembleListing(assembly, startingAddress);
+			if (listing != null) {
+				return listing;
 			}
-
-			return bytes;
-		} catch (IOException e) {
-			throw new InvalidAssemblyException(e.toString());
 		}
+		return null;
 	}
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A way of turning ARM assembly into machine code, the Assembler tries its backends in order
+ */
+public interface AssemblerBackend {
+
+	/**
+	 * @param assembly Statements separated by ';' or new lines
+	 * @param startingAddress The address of the first statement
+	 * @return The machine code, or null if this backend doesn't handle some of the assembly and the next one must be used
+	 * @throws InvalidAssemblyException If the assembly is invalid
+	 */
+	byte[] assemble(String assembly, long startingAddress);
+
+	/**
+	 * Assemble asynchronously, by default in the calling thread
+	 * @return The result of assemble, or an InvalidAssemblyException
+	 */
+	default CompletableFuture<byte[]> submit(String assembly, long startingAddress) {
+		try {
+			return CompletableFuture.completedFuture(this.assemble(assembly, startingAddress));
+		} catch (InvalidAssemblyException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * @return Changes whenever this backend may assemble something differently, the cached programs depend on it
+	 */
+	String getVersion();
+
+	/**
+	 * Assembles and tells where each line went, in a single pass
+	 * @param assembly Lines separated by ';'
+	 * @return The listing, or null if this backend can't make one for this assembly
+	 * @throws InvalidAssemblyException If the assembly is invalid
+	 */
+	default Listing assembleListing(String assembly, long startingAddress) {
+		return null;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import projetarm_v2.simulator.utils.OSValidator;
+
+/**
+ * The listings of the assembled programs, keyed by the SHA-256 of the preprocessed assembly, the starting address and
+ * the version of the assembler.
+ *
+ * The most recently used listings are kept in memory, and all of them in a directory once one is set.
+ */
+public class AssemblyCache {
+	public static final int DEFAULT_CAPACITY = 64;
+	private static final int FORMAT_VERSION = 1;
+
+	private static AssemblyCache instance;
+
+	private final String assemblerVersion;
+	private volatile Path directory;
+	private final Map<String, Listing> listings;
+
+	/**
+	 * @param assemblerVersion See Assembler.getVersion
+	 * @param capacity The number of listings kept in memory
+	 * @param directory Where the listings are stored on disk, or null to only keep them in memory
+	 */
+	public AssemblyCache(String assemblerVersion, int capacity, Path directory) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be positive");
+		}
+		this.assemblerVersion = assemblerVersion;
+		this.directory = directory;
+		this.listings = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return The cache of the Assembler instance, only kept in memory until a directory is set
+	 */
+	public static synchronized AssemblyCache getInstance() {
+		if (AssemblyCache.instance == null) {
+			AssemblyCache.instance = new AssemblyCache(Assembler.getInstance().getVersion(), DEFAULT_CAPACITY, null);
+		}
+		return AssemblyCache.instance;
+	}
+
+	/**
+	 * @return The assembly-cache directory in the configuration directory of the user
+	 */
+	public static Path getDefaultDirectory() {
+		String home = System.getProperty("user.home");
+
+		if (OSValidator.isWindows() && System.getenv("APPDATA") != null) {
+			return Paths.get(System.getenv("APPDATA"), "ARMStrong", "assembly-cache");
+		}
+		if (OSValidator.isMac()) {
+			return Paths.get(home, "Library", "Application Support", "ARMStrong", "assembly-cache");
+		}
+		String configHome = System.getenv("XDG_CONFIG_HOME");
+		if (configHome == null || configHome.isEmpty()) {
+			return Paths.get(home, ".config", "armstrong", "assembly-cache");
+		}
+		return Paths.get(configHome, "armstrong", "assembly-cache");
+	}
+
+	/**
+	 * @param assembly The preprocessed assembly
+	 * @return The listing, or null if this assembly isn't in the cache
+	 */
+	public Listing get(String assembly, long startingAddress) {
+		String key = this.key(assembly, startingAddress);
+
+		synchronized (this.listings) {
+			Listing listing = this.listings.get(key);
+			if (listing != null) {
+				return listing;
+			}
+		}
+
+		Listing listing = this.read(key);
+		if (listing != null) {
+			synchronized (this.listings) {
+				this.listings.put(key, listing);
+			}
+		}
+		return listing;
+	}
+
+	/**
+	 * @param assembly The preprocessed assembly
+	 */
+	public void put(String assembly, long startingAddress, Listing listing) {
+		String key = this.key(assembly, startingAddress);
+
+		synchronized (this.listings) {
+			this.listings.put(key, listing);
+		}
+		this.write(key, listing);
+	}
+
+	/**
+	 * Forgets the listings kept in memory, the ones on disk stay
+	 */
+	public void clear() {
+		synchronized (this.listings) {
+			this.listings.clear();
+		}
+	}
+
+	/**
+	 * @param directory Where the listings are stored on disk from now on, for example getDefaultDirectory(), or null to
+	 *                  only keep them in memory
+	 */
+	public void setDirectory(Path directory) {
+		this.directory = directory;
+	}
+
+	public Path getDirectory() {
+		return this.directory;
+	}
+
+	private String key(String assembly, long startingAddress) {
+		return sha256((FORMAT_VERSION + ";" + this.assemblerVersion + Long.toHexString(startingAddress) + ";").getBytes(StandardCharsets.UTF_8),
+				assembly.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return The SHA-256 of the concatenated parts, in hexadecimal
+	 */
+	static String sha256(byte[]... parts) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (byte[] part : parts) {
+				digest.update(part);
+			}
+
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private Listing read(String key) {
+		Path directory = this.directory;
+		if (directory == null) {
+			return null;
+		}
+
+		Path file = directory.resolve(key);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+
+		try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+			int lineCount = input.readInt();
+			long[] addresses = new long[lineCount];
+			int[] lengths = new int[lineCount];
+
+			for (int i = 0; i < lineCount; i++) {
+				addresses[i] = input.readLong();
+				lengths[i] = input.readInt();
+			}
+
+			byte[] binary = new byte[input.readInt()];
+			input.readFully(binary);
+
+			return new Listing(binary, addresses, lengths);
+		} catch (IOException | RuntimeException e) {
+			System.out.println("[ERROR] Ignoring the cached assembly " + file + ": " + e);
+			return null;
+		}
+	}
+
+	private void write(String key, Listing listing) {
+		Path directory = this.directory;
+		if (directory == null) {
+			return;
+		}
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(bytes);
+
+			output.writeInt(listing.getLineCount());
+			for (int line = 1; line <= listing.getLineCount(); line++) {
+				output.writeLong(listing.getAddress(line));
+				output.writeInt(listing.getLength(line));
+			}
+			output.writeInt(listing.getBinary().length);
+			output.write(listing.getBinary());
+			output.flush();
+
+			// Written next to it then moved, so that a concurrent reader never sees a partial file
+			Files.createDirectories(directory);
+			Path temporary = Files.createTempFile(directory, key, ".tmp");
+			Files.write(temporary, bytes.toByteArray());
+			Files.move(temporary, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.out.println("[ERROR] Can't store the assembly in the cache: " + e);
+		}
+	}
+}
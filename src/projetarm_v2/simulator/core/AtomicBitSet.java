@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size bit set which can be read and modified from several threads without locking
+ */
+public class AtomicBitSet {
+	private final AtomicLongArray words;
+	private final int size;
+	
+	public AtomicBitSet(int size) {
+		this.size = size;
+		this.words = new AtomicLongArray((size + Long.SIZE - 1) / Long.SIZE);
+	}
+	
+	public boolean get(int index) {
+		return (this.words.get(index / Long.SIZE) & (1L << index)) != 0;
+	}
+	
+	public void set(int index) {
+		long bit = 1L << index;
+		int word = index / Long.SIZE;
+		long value = this.words.get(word);
+		
+		while ((value & bit) == 0 && !this.words.compareAndSet(word, value, value | bit)) {
+			value = this.words.get(word);
+		}
+	}
+	
+	/**
+	 * Clear the bit
+	 * @return true if the bit was set
+	 */
+	public boolean getAndClear(int index) {
+		long bit = 1L << index;
+		int word = index / Long.SIZE;
+		long value = this.words.get(word);
+		
+		while ((value & bit) != 0) {
+			if (this.words.compareAndSet(word, value, value & ~bit)) {
+				return true;
+			}
+			value = this.words.get(word);
+		}
+		
+		return false;
+	}
+	
+	public void clear(int index) {
+		this.getAndClear(index);
+	}
+	
+	public void clear() {
+		for (int i = 0; i < this.words.length(); i++) {
+			this.words.set(i, 0);
+		}
+	}
+	
+	/**
+	 * @return The index of the first set bit at or after fromIndex, or -1 if there isn't any
+	 */
+	public int nextSetBit(int fromIndex) {
+		if (fromIndex >= this.size) {
+			return -1;
+		}
+		
+		int word = fromIndex / Long.SIZE;
+		long value = this.words.get(word) & (-1L << fromIndex);
+		
+		while (value == 0) {
+			if (++word == this.words.length()) {
+				return -1;
+			}
+			value = this.words.get(word);
+		}
+		
+		return word * Long.SIZE + Long.numberOfTrailingZeros(value);
+	}
+	
+	/**
+	 * @return The index of the first clear bit at or after fromIndex, or size if there isn't any
+	 */
+	public int nextClearBit(int fromIndex) {
+		if (fromIndex >= this.size) {
+			return this.size;
+		}
+		
+		int word = fromIndex / Long.SIZE;
+		long value = ~this.words.get(word) & (-1L << fromIndex);
+		
+		while (value == 0) {
+			if (++word == this.words.length()) {
+				return this.size;
+			}
+			value = ~this.words.get(word);
+		}
+		
+		return Math.min(this.size, word * Long.SIZE + Long.numberOfTrailingZeros(value));
+	}
+	
+	public int cardinality() {
+		int count = 0;
+		
+		for (int i = 0; i < this.words.length(); i++) {
+			count += Long.bitCount(this.words.get(i));
+		}
+		
+		return count;
+	}
+	
+	public boolean isEmpty() {
+		return this.nextSetBit(0) < 0;
+	}
+	
+	public int size() {
+		return this.size;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A breakpoint of the BreakpointManager, it stops the program once its condition was true hitTarget times
+ */
+public class Breakpoint {
+	private final long address;
+	private final String conditionText;
+	private final Expression condition; // null if the breakpoint always stops
+	private final long hitTarget;
+	private final AtomicLong hitCount;
+
+	public Breakpoint(long address) {
+		this(address, null, 1);
+	}
+
+	/**
+	 * @param condition An Expression, null or empty for no condition
+	 * @param hitTarget The program stops from the hitTarget-th time the condition is true
+	 * @throws InvalidExpressionException
+	 */
+	public Breakpoint(long address, String condition, long hitTarget) {
+		this.address = address & 0xFFFFFFFFL;
+		this.conditionText = condition == null || condition.isBlank() ? null : condition.trim();
+		this.condition = this.conditionText == null ? null : Expression.parse(this.conditionText);
+		this.hitTarget = Math.max(hitTarget, 1);
+		this.hitCount = new AtomicLong(0);
+	}
+
+	/**
+	 * Called each time the program reaches the breakpoint
+	 * @return true if the program must stop
+	 */
+	boolean hit(Cpu cpu) {
+		if (this.condition != null && !this.condition.test(cpu)) {
+			return false;
+		}
+		return this.hitCount.incrementAndGet() >= this.hitTarget;
+	}
+
+	/**
+	 * @return true if the condition is true, without counting a hit
+	 */
+	boolean conditionHolds(Cpu cpu) {
+		return this.condition == null || this.condition.test(cpu);
+	}
+
+	public long getAddress() {
+		return this.address;
+	}
+
+	/**
+	 * @return The text of the condition or null if there is none
+	 */
+	public String getCondition() {
+		return this.conditionText;
+	}
+
+	public long getHitTarget() {
+		return this.hitTarget;
+	}
+
+	/**
+	 * @return How many times the condition was true
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	public void resetHitCount() {
+		this.hitCount.set(0);
+	}
+}
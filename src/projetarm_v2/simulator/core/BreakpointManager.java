@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import unicorn.Unicorn;
+
+/**
+ * Breakpoints on instruction addresses, set without editing the program.
+ * While the Cpu runs, the instruction at a breakpoint is replaced by a BKPT in Unicorn's memory only,
+ * the other instructions don't pay anything for the breakpoints and the Ram keeps the program unchanged.
+ * When a breakpoint doesn't stop the program, because of its condition or its hit target, the Cpu executes
+ * the instruction on its own and goes on.
+ */
+public class BreakpointManager {
+	public static final int BKPT_INTERRUPT = 7; // Unicorn's exception number for BKPT
+	private static final byte[] BKPT_INSTRUCTION = {0x70, 0x00, 0x20, (byte) 0xE1}; // bkpt #0
+
+	private final Cpu cpu;
+	private final Unicorn u;
+	private final AtomicBitSet mappedPages;
+	private final ConcurrentNavigableMap<Long, Breakpoint> breakpoints; // Can be changed from any thread, even while the Cpu is running
+	private final Map<Long, byte[]> installed; // The patched addresses and their instruction, only used by the thread running the Cpu
+	private volatile boolean active; // The breakpoints are installed in Unicorn
+	private final AtomicBoolean skipped; // The last BKPT was a breakpoint which doesn't stop the program
+
+	BreakpointManager(Cpu cpu, Unicorn u, AtomicBitSet mappedPages) {
+		this.cpu = cpu;
+		this.u = u;
+		this.mappedPages = mappedPages;
+		this.breakpoints = new ConcurrentSkipListMap<>();
+		this.installed = new HashMap<>();
+		this.active = false;
+		this.skipped = new AtomicBoolean(false);
+	}
+
+	/**
+	 * Break before the instruction at this address is executed, a running program picks it up after its current slice
+	 */
+	public void add(long address) {
+		this.add(new Breakpoint(address));
+	}
+
+	/**
+	 * Replace the breakpoint at the same address if there was one
+	 */
+	public void add(Breakpoint breakpoint) {
+		this.breakpoints.put(breakpoint.getAddress(), breakpoint);
+	}
+
+	/**
+	 * @return The breakpoint at this address or null
+	 */
+	public Breakpoint get(long address) {
+		return this.breakpoints.get(address & 0xFFFFFFFFL);
+	}
+
+	public void remove(long address) {
+		this.breakpoints.remove(address & 0xFFFFFFFFL);
+	}
+
+	public boolean contains(long address) {
+		return this.breakpoints.containsKey(address & 0xFFFFFFFFL);
+	}
+
+	public void clear() {
+		this.breakpoints.clear();
+	}
+
+	/**
+	 * @return The addresses of the breakpoints, in ascending order
+	 */
+	public NavigableSet<Long> getBreakpoints() {
+		return this.breakpoints.navigableKeySet();
+	}
+
+	/**
+	 * Patch the breakpoints in Unicorn and remove the ones which were deleted, called before each slice
+	 */
+	void update() {
+		this.active = true;
+
+		Iterator<Map.Entry<Long, byte[]>> iterator = this.installed.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Long, byte[]> entry = iterator.next();
+			if (!this.breakpoints.containsKey(entry.getKey())) {
+				this.restoreInstruction(entry.getKey(), entry.getValue());
+				iterator.remove();
+			}
+		}
+
+		for (long address : this.breakpoints.keySet()) {
+			if (!this.installed.containsKey(address) && this.mappedPages.get((int) (address >>> Ram.PAGE_SHIFT))) {
+				this.patch(address);
+			}
+		}
+	}
+
+	/**
+	 * Give back the original instructions to Unicorn, before the Ram copies the pages written by the program
+	 */
+	void uninstall() {
+		this.active = false;
+
+		for (Map.Entry<Long, byte[]> entry : this.installed.entrySet()) {
+			this.restoreInstruction(entry.getKey(), entry.getValue());
+		}
+		this.installed.clear();
+	}
+
+	/**
+	 * Patch the breakpoints of a page which just got mapped in Unicorn
+	 */
+	void pageMapped(long pageAddress) {
+		if (!this.active) {
+			return;
+		}
+
+		for (long address : this.breakpoints.subMap(pageAddress, pageAddress + Ram.CHUNK_SIZE).keySet()) {
+			this.patch(address);
+		}
+	}
+
+	/**
+	 * Replace the instruction at this address by a BKPT
+	 */
+	void patch(long address) {
+		synchronized (this.u) {
+			byte[] instruction = this.u.mem_read(address, BKPT_INSTRUCTION.length);
+			this.u.mem_write(address, BKPT_INSTRUCTION);
+			this.installed.put(address, instruction);
+		}
+	}
+
+	/**
+	 * Put the original instruction back, so that it can be executed when resuming from this breakpoint
+	 * @return true if there was a breakpoint installed at this address
+	 */
+	boolean unpatch(long address) {
+		byte[] instruction = this.installed.remove(address);
+
+		if (instruction == null) {
+			return false;
+		}
+
+		this.restoreInstruction(address, instruction);
+		return true;
+	}
+
+	/**
+	 * @return true if a BKPT replaces the instruction at this address in Unicorn
+	 */
+	boolean isPatched(long address) {
+		return this.installed.containsKey(address);
+	}
+
+	private void restoreInstruction(long address, byte[] instruction) {
+		synchronized (this.u) {
+			// The program may have overwritten the breakpoint, it is then left as is
+			byte[] current = this.u.mem_read(address, BKPT_INSTRUCTION.length);
+			if (Arrays.equals(current, BKPT_INSTRUCTION)) {
+				this.u.mem_write(address, instruction);
+			}
+		}
+	}
+
+	/**
+	 * Called when Unicorn executes a BKPT, the PC is then on the BKPT
+	 * @return false if the BKPT isn't one of our breakpoints
+	 */
+	public boolean hit() {
+		long address = this.cpu.readProgramCounter();
+		Breakpoint breakpoint = this.breakpoints.get(address);
+
+		if (!this.installed.containsKey(address)) {
+			return false;
+		}
+
+		// Unicorn would execute the BKPT again, the slice is stopped so that the Cpu steps over it
+		if (breakpoint == null || !breakpoint.hit(this.cpu)) {
+			this.skipped.set(true);
+			this.cpu.stopEmulation();
+			return true;
+		}
+
+		System.out.format("[INFO] Breakpoint @ 0x%x%n", address);
+		this.cpu.pause();
+		return true;
+	}
+
+	/**
+	 * @return true if the last slice was stopped by a breakpoint which doesn't stop the program
+	 */
+	boolean takeSkipped() {
+		return this.skipped.getAndSet(false);
+	}
+}
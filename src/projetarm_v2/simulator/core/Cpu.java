@@ -21,6 +21,7 @@ import unicorn.*;
 
 public class Cpu {
 	public static final int DEFAULT_STARTING_ADDRESS = 0x1000;
+	public static final long DEFAULT_SLICE_SIZE = 100_000; // A few milliseconds of execution
 
 	private final Ram ram;
 	private final Unicorn u;
@@ -34,16 +35,62 @@ public class Cpu {
 	private long endAddress;
 	private AtomicLong stepByStepRunning;
 	private SVCHandler svcHandler;
+	private final MemoryMap memoryMap;
+	private final AtomicBitSet mappedPages; // The pages mapped in Unicorn
+	private final BreakpointManager breakpointManager;
+	private final WatchpointManager watchpointManager;
+	private volatile TraceRecorder traceRecorder; // null when the execution isn't traced
+	private boolean traceHookAdded;
+	private volatile ExecutionHistory executionHistory; // null when the execution can't be reversed
+	private volatile Profiler profiler; // null when the execution isn't profiled
+	private volatile CycleCounter cycleCounter; // null when the cycles aren't counted
+	private boolean cycleHookAdded;
+	private long sliceCount; // The instruction count given to Unicorn for the current slice, 0 for no limit
+	private long sliceExecuted; // Number of instructions the hook saw during the current slice
+	private final boolean turboMode; // Run without the instruction hook, see Cpu(Ram, long, MemoryMap, boolean)
+	private long instructionBudget; // Maximum number of instructions executed by a run, 0 for no limit
+	private long sliceSize; // Number of instructions executed between two checks for a pause
+	private AtomicBoolean stopped; // Set when the current slice was stopped before using all of its instructions
+	private AtomicBoolean pauseRequested;
+	private AtomicBoolean paused;
+	private volatile CpuState publishedState; // Captured by the thread running the Cpu between two slices
 	
 	
-	private static final byte[] jumpBackInstruction = Assembler.getInstance().assemble("bx lr", 0L);
+	private static final int[] stateRegisters = {
+			ArmConst.UC_ARM_REG_R0, ArmConst.UC_ARM_REG_R1, ArmConst.UC_ARM_REG_R2, ArmConst.UC_ARM_REG_R3,
+			ArmConst.UC_ARM_REG_R4, ArmConst.UC_ARM_REG_R5, ArmConst.UC_ARM_REG_R6, ArmConst.UC_ARM_REG_R7,
+			ArmConst.UC_ARM_REG_R8, ArmConst.UC_ARM_REG_R9, ArmConst.UC_ARM_REG_R10, ArmConst.UC_ARM_REG_R11,
+			ArmConst.UC_ARM_REG_R12, ArmConst.UC_ARM_REG_SP, ArmConst.UC_ARM_REG_LR, ArmConst.UC_ARM_REG_CPSR};
+	
+	private static final byte[] jumpBackInstruction = {0x1e, (byte) 0xff, 0x2f, (byte) 0xe1}; // bx lr
 
 	public Cpu() {
 		this(new Ram(), Cpu.DEFAULT_STARTING_ADDRESS, 2 * 1024 * 1024);
 	}
 
 	public Cpu(Ram ram, long startingAddress, int ramSize) {
+		this(ram, startingAddress, MemoryMap.createDefault(ramSize));
+	}
+
+	public Cpu(Ram ram, long startingAddress, MemoryMap memoryMap) {
+		this(ram, startingAddress, memoryMap, false);
+	}
+
+	/**
+	 * @param turboMode If true, no hook is called for every instruction: the program runs at Unicorn's native speed
+	 * until it reaches the end address, a stop, a breakpoint, the instruction budget or a pause, and the PC is read back from
+	 * Unicorn afterwards. Empty words don't stop the program and stepping relies on the instruction count.
+	 */
+	public Cpu(Ram ram, long startingAddress, MemoryMap memoryMap, boolean turboMode) {
 		this.ram = ram;
+		this.memoryMap = memoryMap;
+		this.turboMode = turboMode;
+		this.instructionBudget = 0;
+		this.sliceSize = DEFAULT_SLICE_SIZE;
+		this.stopped = new AtomicBoolean(false);
+		this.pauseRequested = new AtomicBoolean(false);
+		this.paused = new AtomicBoolean(false);
+		this.mappedPages = new AtomicBitSet(1 << (Integer.SIZE - Ram.PAGE_SHIFT));
 		this.startingAddress = startingAddress;
 		this.endAddress = 0;
 		this.stepByStepRunning = new AtomicLong(0);
@@ -52,6 +99,8 @@ public class Cpu {
 		this.svcHandler = new SVCHandler(this);
 		
 		u = new Unicorn(Unicorn.UC_ARCH_ARM, Unicorn.UC_MODE_ARM);
+		this.breakpointManager = new BreakpointManager(this, u, this.mappedPages);
+		this.watchpointManager = new WatchpointManager(this, u, this.mappedPages);
 
 		this.registers = new Register[16];
 
@@ -72,21 +121,25 @@ public class Cpu {
 
 		this.currentAddress = new SimpleRegister((int)startingAddress); // I use a SimpleRegister instead of a simple field because SimpleRegister is Thread-Safe thanks to the AtomicInteger inside it
 
-		u.mem_map(0, 2*1024*1024L, Unicorn.UC_PROT_ALL);
+		// Nothing is mapped up front, the pages of the memory map are mapped the first time the guest touches them
+		u.hook_add(new LazyMappingHook(this), Unicorn.UC_HOOK_MEM_UNMAPPED, null);
 
 		this.cpsr = new Cpsr(u);
 
-		u.hook_add(ram.getNewReadHook(), 1, 0, null);
+		// The guest accesses the Unicorn memory directly, the Ram only needs to know which pages it wrote to
+		u.hook_add(ram.getNewWriteProtectHook(), Unicorn.UC_HOOK_MEM_WRITE_PROT, null);
 
-		u.hook_add(ram.getNewWriteHook(), 1, 0, null);
+		// Only the pages holding a watched range are protected, the other accesses don't go through these hooks
+		u.hook_add(this.watchpointManager.getReadHook(), Unicorn.UC_HOOK_MEM_READ_PROT, null);
+		u.hook_add(this.watchpointManager.getWriteHook(), Unicorn.UC_HOOK_MEM_WRITE_PROT, null);
 
-		u.hook_add(new CPUInstructionHook(this), 1, 0, null);
+		if (!turboMode) {
+			u.hook_add(new CPUInstructionHook(this), 1, 0, null);
+		}
 		
 		u.hook_add(svcHandler.getSVCCallHandler(), null);
 		
 		this.registerCpuRoutines();
-
-		this.synchronizeUnicornRam();
 		
 		this.cpsr.setZ(false); // Unicorn set Z to true when creating the virtual CPU, we purposely set it back to false for educational purposes
 	}
@@ -106,19 +159,162 @@ public class Cpu {
 		}
 	}
 
+	/**
+	 * Make a call to a routine or to a system call implemented in Java. While the ExecutionHistory replays the
+	 * program, the call isn't made again: the registers and the memory it wrote are restored instead.
+	 */
+	public void runHostCall(Runnable call) {
+		ExecutionHistory history = this.executionHistory;
+
+		if (history == null) {
+			call.run();
+		} else {
+			history.hostCall(call);
+		}
+	}
+
 	public void registerCpuRoutine(CpuRoutine routine) {
 		Long address = routine.getRoutineAddress();
 		
-		u.hook_add(routine.getNewHook(), address, address, null);
+		if (this.turboMode) {
+			// The binding gives every code hook the range of the first one, which must cover all the routines
+			u.hook_add(routine.getNewHook(), MemoryMap.SYSTEM_START, MemoryMap.SYSTEM_START + Ram.CHUNK_SIZE - 1, null);
+		} else {
+			u.hook_add(routine.getNewHook(), address, address, null);
+		}
 
 		for (int i = 0; i < Cpu.jumpBackInstruction.length; i++) {
 			this.ram.setByte(address + i, Cpu.jumpBackInstruction[i]);
 		}
 	}
 
+	/**
+	 * Push the dirty pages of the Ram to Unicorn, the pages which aren't mapped yet will be pushed when they get mapped
+	 */
 	private void synchronizeUnicornRam() {
-		for (RamChunk chunk : this.ram.getRamChunks()) {
-			u.mem_write(chunk.startingAddress, chunk.getChunk());
+		for (long pageAddress : this.ram.takeDirtyPages()) {
+			if (this.mappedPages.get((int) (pageAddress >>> Ram.PAGE_SHIFT))) {
+				u.mem_write(pageAddress, this.ram.read(pageAddress, Ram.CHUNK_SIZE));
+			}
+		}
+	}
+
+	/**
+	 * Map the page holding this address in Unicorn, with the content of the Ram
+	 */
+	private void mapPage(long address) {
+		long pageAddress = address & ~(long) (Ram.CHUNK_SIZE - 1) & 0xFFFFFFFFL;
+		// While the Ram is attached, the first write to a page must be caught
+		int protection = this.ram.isAttached() ? Unicorn.UC_PROT_READ | Unicorn.UC_PROT_EXEC : Unicorn.UC_PROT_ALL;
+
+		byte[] content = this.ram.read(pageAddress, Ram.CHUNK_SIZE);
+
+		synchronized (u) {
+			u.mem_map(pageAddress, Ram.CHUNK_SIZE, protection);
+			u.mem_write(pageAddress, content);
+		}
+
+		this.mappedPages.set((int) (pageAddress >>> Ram.PAGE_SHIFT));
+		this.breakpointManager.pageMapped(pageAddress);
+		this.watchpointManager.pageMapped(pageAddress);
+	}
+
+	public MemoryMap getMemoryMap() {
+		return this.memoryMap;
+	}
+
+	public BreakpointManager getBreakpointManager() {
+		return this.breakpointManager;
+	}
+
+	public WatchpointManager getWatchpointManager() {
+		return this.watchpointManager;
+	}
+
+	/**
+	 * Record every instruction executed from now on, must be called while the Cpu isn't running
+	 * @param traceRecorder null to stop recording
+	 * @throws IllegalStateException In turbo mode, as the trace needs the instruction hook
+	 */
+	public void setTraceRecorder(TraceRecorder traceRecorder) {
+		if (traceRecorder != null && this.turboMode) {
+			throw new IllegalStateException("The execution can't be traced in turbo mode");
+		}
+
+		// The hook stays once added, it doesn't do anything without a recorder
+		if (traceRecorder != null && !this.traceHookAdded) {
+			u.hook_add(new TraceWriteHook(this), 1, 0, null);
+			this.traceHookAdded = true;
+		}
+
+		this.traceRecorder = traceRecorder;
+		this.ram.setTraceRecorder(traceRecorder);
+	}
+
+	public TraceRecorder getTraceRecorder() {
+		return this.traceRecorder;
+	}
+
+	/**
+	 * Record the execution so that it can be reversed, the history takes the place of the trace recorder
+	 * @param executionHistory null to stop recording
+	 * @throws IllegalStateException In turbo mode
+	 */
+	void setExecutionHistory(ExecutionHistory executionHistory) {
+		this.setTraceRecorder(executionHistory == null ? null : executionHistory.getTraceRecorder());
+		this.executionHistory = executionHistory;
+	}
+
+	public ExecutionHistory getExecutionHistory() {
+		return this.executionHistory;
+	}
+
+	/**
+	 * Count the executions of each instruction from now on, see Profiler
+	 * @param profiler null to stop profiling
+	 * @throws IllegalStateException In turbo mode, as the profiler needs the instruction hook
+	 */
+	public void setProfiler(Profiler profiler) {
+		if (profiler != null && this.turboMode) {
+			throw new IllegalStateException("The execution can't be profiled in turbo mode");
+		}
+		this.profiler = profiler;
+	}
+
+	public Profiler getProfiler() {
+		return this.profiler;
+	}
+
+	/**
+	 * Count the cycles of the instructions executed from now on, see CycleCounter
+	 * @param cycleCounter null to stop counting
+	 * @throws IllegalStateException In turbo mode, as the counter needs the instruction hook
+	 */
+	public void setCycleCounter(CycleCounter cycleCounter) {
+		if (cycleCounter != null && this.turboMode) {
+			throw new IllegalStateException("The cycles can't be counted in turbo mode");
+		}
+
+		// Only the reads of the register's page go through the hook
+		if (cycleCounter != null && !this.cycleHookAdded) {
+			u.hook_add(new CycleCounter.RegisterHook(this), CycleCounter.REGISTER_ADDRESS, CycleCounter.REGISTER_ADDRESS + Ram.CHUNK_SIZE - 1, null);
+			this.cycleHookAdded = true;
+		}
+
+		this.cycleCounter = cycleCounter;
+	}
+
+	public CycleCounter getCycleCounter() {
+		return this.cycleCounter;
+	}
+
+	/**
+	 * Account for the last instruction of a run and show the count in the Ram, called once the Ram is detached
+	 */
+	private void finishCycleCount(CycleCounter counter) {
+		if (counter != null) {
+			counter.finish(this.readProgramCounter());
+			this.ram.write(CycleCounter.REGISTER_ADDRESS, counter.getRegisterBytes());
 		}
 	}
 
@@ -126,24 +322,222 @@ public class Cpu {
 		return this.running.get();
 	}
 
+	/**
+	 * Capture every register and the state of the Cpu at once. While the Cpu runs, the state published at the end of
+	 * the last slice is returned, so that the registers all come from the same instruction.
+	 */
+	public CpuState snapshot() {
+		CpuState state = this.publishedState;
+
+		if (this.running.get() && state != null) {
+			return state;
+		}
+		return this.captureState();
+	}
+
+	private CpuState captureState() {
+		Object[] values;
+		synchronized (u) {
+			values = u.reg_read_batch(stateRegisters);
+		}
+
+		int[] registerValues = new int[16];
+		for (int i = 0; i < 15; i++) {
+			registerValues[i] = ((Long) values[i]).intValue();
+		}
+		registerValues[15] = this.pc.getValue();
+
+		return new CpuState(registerValues, ((Long) values[15]).intValue(), this.currentAddress.getValue() & 0xFFFFFFFFL,
+				this.running.get(), this.hasFinished.get(), this.paused.get());
+	}
+
+	/**
+	 * Read some of r0 to r14 and the CPSR into values, used by the TraceRecorder from the hooks
+	 * @param mask Bit i for ri, bit TraceRecorder.CPSR for the CPSR
+	 * @param values Indexed like the mask
+	 */
+	void readRegisters(int mask, int[] values) {
+		if (mask == TraceRecorder.ALL_REGISTERS) {
+			Object[] read = u.reg_read_batch(stateRegisters);
+			for (int i = 0; i < 15; i++) {
+				values[i] = ((Long) read[i]).intValue();
+			}
+			values[TraceRecorder.CPSR] = ((Long) read[15]).intValue();
+			return;
+		}
+
+		for (int bits = mask; bits != 0; bits &= bits - 1) {
+			int i = Integer.numberOfTrailingZeros(bits);
+			values[i] = ((Long) u.reg_read(stateRegisters[i == TraceRecorder.CPSR ? 15 : i])).intValue();
+		}
+	}
+
 	// Ou tout d'un coup!
+	/**
+	 * Run the program in slices of sliceSize instructions until it stops, reaches the end address, uses its
+	 * instruction budget or is paused. The current address is published between two slices.
+	 */
 	public void runAllAtOnce() {
 		this.synchronizeUnicornRam();
 
 		running.set(true);
 		hasFinished.set(false);
+		this.paused.set(false);
+		this.pauseRequested.set(false);
 		this.stepByStepRunning.set(0);
 		
-		u.emu_start(this.currentAddress.getValue(), this.endAddress+4, 0, 0);
+		long address = this.currentAddress.getValue() & 0xFFFFFFFFL;
+		long until = this.endAddress + 4;
+		long remaining = this.instructionBudget;
+		boolean sliceUsed = false; // The last slice executed all of its instructions, the PC is the exact resume point
+		
+		ExecutionHistory history = this.executionHistory;
+		if (history != null && history.isCheckpointDue()) {
+			history.checkpoint(address);
+		}
+		
+		TraceRecorder trace = this.traceRecorder;
+		if (trace != null) {
+			trace.start(this);
+		}
+		CycleCounter counter = this.cycleCounter;
+		
+		this.publishedState = this.captureState();
+		
+		this.ram.attach(u, this.mappedPages, this.memoryMap, this.watchpointManager);
+		try {
+			this.watchpointManager.install();
+			this.breakpointManager.update();
+			// When resuming from a breakpoint, its instruction is executed alone before the breakpoint is put back
+			boolean stepOver = this.breakpointManager.unpatch(address);
+			
+			do {
+				long count = this.instructionBudget == 0 ? this.sliceSize : Math.min(this.sliceSize, remaining);
+				if (stepOver) {
+					count = 1;
+				}
+				
+				this.stopped.set(false);
+				this.sliceCount = count;
+				this.sliceExecuted = 0;
+				u.emu_start(address, until, 0, count);
+				
+				if (stepOver) {
+					stepOver = false;
+					this.breakpointManager.patch(address);
+				}
+				this.breakpointManager.update();
+				this.watchpointManager.update();
+				
+				address = this.readProgramCounter();
+				sliceUsed = !this.stopped.get() && address != until;
+				
+				if (sliceUsed && history != null && history.isCheckpointDue()) {
+					this.checkpoint(history, address);
+				}
+				
+				// A breakpoint which doesn't stop the program stopped the slice, its instruction is executed alone
+				boolean skipped = this.breakpointManager.takeSkipped();
+				
+				if (sliceUsed) {
+					remaining -= count;
+				}
+				if (skipped) {
+					stepOver = this.breakpointManager.unpatch(address);
+					sliceUsed = true;
+				}
+				if (sliceUsed) {
+					this.currentAddress.setValue((int) address);
+					this.pc.setValue((int) address + 4);
+					this.publishedState = this.captureState();
+					Thread.yield();
+				}
+			} while (sliceUsed && !this.pauseRequested.get() && (this.instructionBudget == 0 || remaining > 0));
+		} finally {
+			if (trace != null) {
+				trace.finish(this);
+			}
+			this.breakpointManager.uninstall();
+			this.watchpointManager.uninstall();
+			this.ram.detach();
+			this.finishCycleCount(counter);
+			if (this.turboMode) {
+				this.recoverProgramCounter();
+			}
+			running.set(false);
+		}
 
-		if (!hasFinished.get()) {
+		if (sliceUsed || this.pauseRequested.get()) {
+			this.recoverProgramCounter();
+		} else if (!this.turboMode && !hasFinished.get()) {
 			this.currentAddress.setValue(this.currentAddress.getValue() + 4);
 		}
 		
-		running.set(false);
+		if (this.pauseRequested.getAndSet(false)) {
+			this.paused.set(true);
+			return;
+		}
+		
 		hasFinished.set(true);
 	}
 
+	/**
+	 * Let the history capture the state between two slices, the Ram can only be captured while it is detached
+	 */
+	private void checkpoint(ExecutionHistory history, long address) {
+		this.breakpointManager.uninstall();
+		this.ram.detach();
+		try {
+			history.checkpoint(address);
+		} finally {
+			this.ram.attach(u, this.mappedPages, this.memoryMap, this.watchpointManager);
+			this.watchpointManager.install();
+			this.breakpointManager.update();
+		}
+	}
+
+	/**
+	 * Ask the running program to stop as soon as possible, resume() then continues from the exact PC
+	 */
+	public void pause() {
+		if (this.running.get()) {
+			this.pauseRequested.set(true);
+			this.stopEmulation();
+		}
+	}
+
+	/**
+	 * Continue a paused program, returns when it stops again
+	 */
+	public void resume() {
+		if (this.paused.get()) {
+			this.runAllAtOnce();
+		}
+	}
+
+	public boolean isPaused() {
+		return this.paused.get();
+	}
+
+	public long getSliceSize() {
+		return this.sliceSize;
+	}
+
+	/**
+	 * @param sliceSize Number of instructions executed between two checks for a pause
+	 */
+	public void setSliceSize(long sliceSize) {
+		this.sliceSize = sliceSize;
+	}
+
+	/**
+	 * Stop Unicorn, the current slice is then considered over
+	 */
+	void stopEmulation() {
+		this.stopped.set(true);
+		this.u.emu_stop();
+	}
+
 	public Register getRegister(int registerNumber) {
 		return this.registers[registerNumber];
 	}
@@ -160,6 +554,16 @@ public class Cpu {
 		return this.hasFinished.get();
 	}
 
+	/**
+	 * Move the execution back to the instruction at this address, used by the ExecutionHistory
+	 */
+	void rewindTo(long address) {
+		this.currentAddress.setValue((int) address);
+		this.pc.setValue((int) address + 4);
+		this.hasFinished.set(false);
+		this.paused.set(false);
+	}
+
 	public long getStartingAddress() {
 		return this.startingAddress;
 	}
@@ -173,19 +577,86 @@ public class Cpu {
 
 		running.set(true);
 		hasFinished.set(false);
+		this.paused.set(false);
 		this.stepByStepRunning.set(1);
 		
 		int startAddress = this.currentAddress.getValue();
 		
-		u.emu_start(startAddress, (long)startAddress+4, 0, 0);
+		ExecutionHistory history = this.executionHistory;
+		if (history != null && history.isCheckpointDue()) {
+			history.checkpoint(startAddress & 0xFFFFFFFFL);
+		}
+		
+		TraceRecorder trace = this.traceRecorder;
+		if (trace != null) {
+			trace.start(this);
+		}
+		CycleCounter counter = this.cycleCounter;
+		
+		this.ram.attach(u, this.mappedPages, this.memoryMap, this.watchpointManager);
+		try {
+			this.watchpointManager.install();
+			this.stopped.set(false);
+			this.sliceCount = this.turboMode ? 1 : 0;
+			this.sliceExecuted = 0;
+			u.emu_start(startAddress, (long)startAddress+4, 0, this.turboMode ? 1 : 0);
+		} finally {
+			if (trace != null) {
+				trace.finish(this);
+			}
+			this.watchpointManager.uninstall();
+			this.ram.detach();
+			this.finishCycleCount(counter);
+			if (this.turboMode) {
+				this.recoverProgramCounter();
+			}
+			running.set(false);
+		}
 		
-		if (startAddress == this.currentAddress.getValue() && !hasFinished.get()) {
+		if (!this.turboMode && startAddress == this.currentAddress.getValue() && !hasFinished.get()) {
 			this.currentAddress.setValue(this.currentAddress.getValue() + 4);
 		}
-
-		running.set(false);
 	}
 	
+	/**
+	 * Without the instruction hook, the current address is read back from Unicorn once the run is over
+	 */
+	private void recoverProgramCounter() {
+		long address = this.readProgramCounter();
+		
+		// A run stopped inside a routine resumes where the routine returns to
+		if (address >= MemoryMap.SYSTEM_START && address < MemoryMap.SYSTEM_START + Ram.CHUNK_SIZE) {
+			address = this.registers[14].getValue() & 0xFFFFFFFFL;
+		}
+		
+		if (!this.hasFinished.get()) { // Otherwise the current address is already on the stop
+			this.currentAddress.setValue((int) address);
+		}
+		this.pc.setValue(this.currentAddress.getValue() + 4);
+	}
+
+	/**
+	 * Read the PC from Unicorn, which is only reliable outside of the code hooks
+	 */
+	public long readProgramCounter() {
+		return (Long) u.reg_read(ArmConst.UC_ARM_REG_PC) & 0xFFFFFFFFL;
+	}
+
+	public boolean isTurboMode() {
+		return this.turboMode;
+	}
+
+	public long getInstructionBudget() {
+		return this.instructionBudget;
+	}
+
+	/**
+	 * @param instructionBudget Maximum number of instructions executed by a run, 0 for no limit
+	 */
+	public void setInstructionBudget(long instructionBudget) {
+		this.instructionBudget = instructionBudget;
+	}
+
 	private class CPUInstructionHook implements CodeHook {
 		private final Cpu cpu;
 
@@ -202,26 +673,89 @@ public class Cpu {
 			if (this.cpu.stepByStepRunning.get() == 1) {
 				this.cpu.stepByStepRunning.set(2);
 			} else if (this.cpu.stepByStepRunning.get() == 2) {
-				u.emu_stop();
+				this.cpu.stopEmulation();
 				running.set(false);
 			}
 			
-			if (this.cpu.ram.getValue(address) == 0) {
+			int instruction = this.cpu.ram.getValue(address);
+			if (instruction == 0) {
 				System.out.format(">>> Instruction @ 0x%x skipped%n", this.cpu.currentAddress.getValue());
-				u.emu_stop();
+				this.cpu.stopEmulation();
 				this.cpu.hasFinished.set(true);
 				running.set(false);
 			}
+			
+			// The instruction won't be executed if the Cpu was stopped, if it is a breakpoint or if Unicorn calls the hook
+			// once more before stopping at the end of the instruction count
+			boolean counted = ++this.cpu.sliceExecuted <= this.cpu.sliceCount || this.cpu.sliceCount == 0;
+			boolean executed = counted && !this.cpu.stopped.get() && !this.cpu.breakpointManager.isPatched(address);
+
+			TraceRecorder trace = this.cpu.traceRecorder;
+			if (trace != null && executed) {
+				trace.instruction(this.cpu, address, instruction);
+			}
+			
+			Profiler profiler = this.cpu.profiler;
+			if (profiler != null && executed) {
+				profiler.count(address);
+			}
+			
+			CycleCounter counter = this.cpu.cycleCounter;
+			if (counter != null && executed) {
+				counter.instruction(address, instruction);
+			}
+		}
+
+	}
+
+	private class TraceWriteHook implements WriteHook {
+		private final Cpu cpu;
+
+		public TraceWriteHook(Cpu cpu) {
+			this.cpu = cpu;
+		}
+
+		public void hook(Unicorn u, long address, int size, long value, Object user_data) {
+			TraceRecorder trace = this.cpu.traceRecorder;
+			if (trace != null) {
+				trace.memoryWrite(this.cpu.ram, address, size, value);
+			}
+		}
+	}
+
+	private class LazyMappingHook implements EventMemHook {
+		private final Cpu cpu;
+
+		public LazyMappingHook(Cpu cpu) {
+			this.cpu = cpu;
 		}
 
+		public boolean hook(Unicorn u, long address, int size, long value, Object user_data) {
+			if (!this.cpu.memoryMap.contains(address)) {
+				System.out.format("[ERROR] The address 0x%x is outside of the memory map%n", address);
+				return false;
+			}
+
+			this.cpu.mapPage(address);
+			return true;
+		}
 	}
 
 	public void interruptMe() {
-		this.u.emu_stop();
+		this.stopEmulation();
 		running.set(false);
 		hasFinished.set(false);
 	}
 
+	/**
+	 * Stop the execution at the current address as if the end of the program was reached
+	 */
+	public void finish() {
+		this.stopEmulation();
+		running.set(false);
+		hasFinished.set(true);
+	}
+
 	public Cpsr getCPSR() {
 		return this.cpsr;
 	}
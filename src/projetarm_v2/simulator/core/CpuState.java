@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+/**
+ * The registers and the state of the Cpu at a single point of the execution, see Cpu.snapshot
+ */
+public final class CpuState {
+	private final int[] registers;
+	private final int cpsr;
+	private final long currentAddress;
+	private final boolean running;
+	private final boolean finished;
+	private final boolean paused;
+
+	CpuState(int[] registers, int cpsr, long currentAddress, boolean running, boolean finished, boolean paused) {
+		this.registers = registers;
+		this.cpsr = cpsr;
+		this.currentAddress = currentAddress;
+		this.running = running;
+		this.finished = finished;
+		this.paused = paused;
+	}
+
+	/**
+	 * @param registerNumber 0 to 15
+	 */
+	public int getRegister(int registerNumber) {
+		return this.registers[registerNumber];
+	}
+
+	public int getCpsr() {
+		return this.cpsr;
+	}
+
+	public boolean n() {
+		return (this.cpsr >>> 31 & 1) == 1;
+	}
+
+	public boolean z() {
+		return (this.cpsr >>> 30 & 1) == 1;
+	}
+
+	public boolean c() {
+		return (this.cpsr >>> 29 & 1) == 1;
+	}
+
+	public boolean v() {
+		return (this.cpsr >>> 28 & 1) == 1;
+	}
+
+	public boolean q() {
+		return (this.cpsr >>> 27 & 1) == 1;
+	}
+
+	/**
+	 * @return The flags as shown by Cpsr.toString, such as "nZcv"
+	 */
+	public String getFlags() {
+		return (this.n() ? "N" : "n") + (this.z() ? "Z" : "z") + (this.c() ? "C" : "c") + (this.v() ? "V" : "v");
+	}
+
+	public long getCurrentAddress() {
+		return this.currentAddress;
+	}
+
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	public boolean hasFinished() {
+		return this.finished;
+	}
+
+	public boolean isPaused() {
+		return this.paused;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The number of cycles each class of ARM instruction takes, used by the CycleCounter
+ */
+public class CycleCostTable {
+
+	public enum InstructionClass {
+		ALU,
+		/** Data processing with an operand shifted by a register */
+		ALU_REGISTER_SHIFT,
+		MULTIPLY,
+		MULTIPLY_LONG,
+		LOAD,
+		STORE,
+		/** LDM, plus the cost per register */
+		LOAD_MULTIPLE,
+		/** STM, plus the cost per register */
+		STORE_MULTIPLE,
+		/** B, BL and BX when taken, the other instructions writing the PC pay the difference with a branch not taken */
+		BRANCH,
+		SOFTWARE_INTERRUPT
+	}
+
+	private final int[] costs;
+	private final int branchNotTakenCost;
+	private final int registerCost;
+
+	/**
+	 * @param costs The cost of every class of instruction
+	 * @param branchNotTakenCost The cost of a branch whose condition is false
+	 * @param registerCost The cost of each register transferred by LDM and STM
+	 */
+	public CycleCostTable(Map<InstructionClass, Integer> costs, int branchNotTakenCost, int registerCost) {
+		this.costs = new int[InstructionClass.values().length];
+
+		for (InstructionClass instructionClass : InstructionClass.values()) {
+			Integer cost = costs.get(instructionClass);
+			if (cost == null) {
+				throw new IllegalArgumentException("No cost for the class " + instructionClass);
+			}
+			this.costs[instructionClass.ordinal()] = cost;
+		}
+		this.branchNotTakenCost = branchNotTakenCost;
+		this.registerCost = registerCost;
+	}
+
+	/**
+	 * @return An ARM7TDMI without wait states, a sequential, non sequential or internal cycle each take one cycle
+	 */
+	public static CycleCostTable arm7tdmi() {
+		Map<InstructionClass, Integer> costs = new EnumMap<>(InstructionClass.class);
+
+		costs.put(InstructionClass.ALU, 1); // 1S
+		costs.put(InstructionClass.ALU_REGISTER_SHIFT, 2); // 1S + 1I
+		costs.put(InstructionClass.MULTIPLY, 3); // 1S + mI, m being 2 for most operands
+		costs.put(InstructionClass.MULTIPLY_LONG, 4); // 1S + (m + 1)I
+		costs.put(InstructionClass.LOAD, 3); // 1S + 1N + 1I
+		costs.put(InstructionClass.STORE, 2); // 2N
+		costs.put(InstructionClass.LOAD_MULTIPLE, 2); // nS + 1N + 1I
+		costs.put(InstructionClass.STORE_MULTIPLE, 1); // (n - 1)S + 2N
+		costs.put(InstructionClass.BRANCH, 3); // 2S + 1N
+		costs.put(InstructionClass.SOFTWARE_INTERRUPT, 3); // 2S + 1N
+
+		return new CycleCostTable(costs, 1, 1);
+	}
+
+	public int getCost(InstructionClass instructionClass) {
+		return this.costs[instructionClass.ordinal()];
+	}
+
+	public int getBranchNotTakenCost() {
+		return this.branchNotTakenCost;
+	}
+
+	public int getRegisterCost() {
+		return this.registerCost;
+	}
+
+	/**
+	 * @return The class of an ARM instruction, the coprocessor and undefined instructions are ALU ones
+	 */
+	public static InstructionClass classify(int instruction) {
+		boolean load = (instruction & 0x00100000) != 0;
+
+		if ((instruction & 0x0FFFFFF0) == 0x012FFF10) { // BX
+			return InstructionClass.BRANCH;
+		}
+
+		switch ((instruction >>> 25) & 0x7) {
+			case 0b000:
+				if ((instruction & 0x0FC000F0) == 0x00000090) {
+					return InstructionClass.MULTIPLY;
+				}
+				if ((instruction & 0x0F8000F0) == 0x00800090) {
+					return InstructionClass.MULTIPLY_LONG;
+				}
+				if ((instruction & 0x0FB00FF0) == 0x01000090) { // SWP
+					return InstructionClass.LOAD;
+				}
+				if ((instruction & 0x00000090) == 0x00000090) { // Halfword and signed transfers
+					return load ? InstructionClass.LOAD : InstructionClass.STORE;
+				}
+				if ((instruction & 0x00000010) != 0) {
+					return InstructionClass.ALU_REGISTER_SHIFT;
+				}
+				return InstructionClass.ALU;
+			case 0b010:
+			case 0b011:
+				return load ? InstructionClass.LOAD : InstructionClass.STORE;
+			case 0b100:
+				return load ? InstructionClass.LOAD_MULTIPLE : InstructionClass.STORE_MULTIPLE;
+			case 0b101:
+				return InstructionClass.BRANCH;
+			case 0b111:
+				return (instruction & 0x01000000) != 0 ? InstructionClass.SOFTWARE_INTERRUPT : InstructionClass.ALU;
+			default:
+				return InstructionClass.ALU;
+		}
+	}
+
+	/**
+	 * @return true if an instruction which isn't a branch may write the PC
+	 */
+	static boolean writesProgramCounter(int instruction, InstructionClass instructionClass) {
+		switch (instructionClass) {
+			case ALU:
+			case ALU_REGISTER_SHIFT:
+				int opcode = (instruction >>> 21) & 0xF;
+				// TST, TEQ, CMP and CMN don't have a destination
+				return (instruction & 0x0C000000) == 0 && (instruction >>> 12 & 0xF) == 15 && (opcode < 8 || opcode > 11);
+			case LOAD:
+				return (instruction >>> 12 & 0xF) == 15;
+			case LOAD_MULTIPLE:
+				return (instruction & 0x8000) != 0;
+			default:
+				return false;
+		}
+	}
+}
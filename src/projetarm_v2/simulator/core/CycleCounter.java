@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import unicorn.ReadHook;
+import unicorn.Unicorn;
+
+/**
+ * Counts the cycles the executed instructions would take on a real processor, according to a CycleCostTable.
+ *
+ * Whether a branch was taken is known at the next instruction, from its address. The instructions whose condition is
+ * false are counted as if they were executed, except the branches. The guest reads the counter as a 64 bits little
+ * endian register at REGISTER_ADDRESS, in a read-only page.
+ */
+public class CycleCounter {
+	public static final long REGISTER_ADDRESS = MemoryMap.SYSTEM_START + MemoryMap.SYSTEM_SIZE;
+
+	private final CycleCostTable costTable;
+	private volatile long cycles; // Only written by the thread running the Cpu
+	private long pendingBranch; // Address of the last instruction if it may have branched, -1 otherwise
+	private int takenCost;
+	private int notTakenCost;
+
+	public CycleCounter(CycleCostTable costTable) {
+		this.costTable = costTable;
+		this.pendingBranch = -1;
+	}
+
+	/**
+	 * @return The read-only region of the register, to add to the memory map
+	 */
+	public static MemoryRegion getMemoryRegion() {
+		return new MemoryRegion("Cycle counter", REGISTER_ADDRESS, Ram.CHUNK_SIZE, MemoryRegion.Kind.ROM);
+	}
+
+	/**
+	 * Called before the instruction at this address is executed
+	 */
+	void instruction(long address, int instruction) {
+		this.resolveBranch(address);
+
+		CycleCostTable.InstructionClass instructionClass = CycleCostTable.classify(instruction);
+		long cost = this.costTable.getCost(instructionClass);
+
+		switch (instructionClass) {
+			case BRANCH:
+				this.pendingBranch = address;
+				this.takenCost = (int) cost;
+				this.notTakenCost = this.costTable.getBranchNotTakenCost();
+				return;
+			case LOAD_MULTIPLE:
+			case STORE_MULTIPLE:
+				cost += (long) this.costTable.getRegisterCost() * Integer.bitCount(instruction & 0xFFFF);
+				break;
+			default:
+				break;
+		}
+
+		if (CycleCostTable.writesProgramCounter(instruction, instructionClass)) {
+			this.pendingBranch = address;
+			this.takenCost = this.costTable.getCost(CycleCostTable.InstructionClass.BRANCH) - this.costTable.getBranchNotTakenCost();
+			this.notTakenCost = 0;
+		}
+		this.cycles += cost;
+	}
+
+	/**
+	 * Account for the last instruction of a run
+	 * @param address The address of the next instruction
+	 */
+	void finish(long address) {
+		this.resolveBranch(address);
+	}
+
+	private void resolveBranch(long address) {
+		if (this.pendingBranch >= 0) {
+			this.cycles += address != this.pendingBranch + 4 ? this.takenCost : this.notTakenCost;
+			this.pendingBranch = -1;
+		}
+	}
+
+	public long getCycles() {
+		return this.cycles;
+	}
+
+	public void reset() {
+		this.cycles = 0;
+		this.pendingBranch = -1;
+	}
+
+	public CycleCostTable getCostTable() {
+		return this.costTable;
+	}
+
+	byte[] getRegisterBytes() {
+		byte[] bytes = new byte[Long.BYTES];
+		long value = this.cycles;
+
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (value >>> (8 * i));
+		}
+		return bytes;
+	}
+
+	/**
+	 * Puts the current count in the register right before the guest reads it
+	 */
+	static class RegisterHook implements ReadHook {
+		private final Cpu cpu;
+
+		public RegisterHook(Cpu cpu) {
+			this.cpu = cpu;
+		}
+
+		public void hook(Unicorn u, long address, int size, Object user_data) {
+			CycleCounter counter = this.cpu.getCycleCounter();
+			if (counter != null) {
+				u.mem_write(REGISTER_ADDRESS, counter.getRegisterBytes());
+			}
+		}
+	}
+}
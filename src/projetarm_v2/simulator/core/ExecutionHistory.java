@@ -0,0 +1,431 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Lets the execution go backwards in bounded memory.
+ *
+ * Every instruction leaves its undo deltas, the old values of the registers and of the memory it wrote, in a
+ * TraceRecorder: the last instructions are undone one by one from the ring. Every checkpointInterval instructions the
+ * registers and a copy on write snapshot of the Ram are captured, only the last maxCheckpoints are kept. An instruction
+ * the ring doesn't hold anymore is reached by restoring the nearest checkpoint before it and replaying from there.
+ * The routines and the system calls aren't made again by a replay: the registers and the memory each call wrote are
+ * kept aside during the run and put back instead, so the console isn't written or read again. A call which wrote more
+ * memory than the ring holds can't be replayed. The I/O components aren't replayed.
+ */
+public class ExecutionHistory {
+	public static final int DEFAULT_CAPACITY = 1 << 20; // Entries, 16 MiB
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = Cpu.DEFAULT_SLICE_SIZE;
+	public static final int DEFAULT_MAX_CHECKPOINTS = 32;
+
+	private final Cpu cpu;
+	private final TraceRecorder trace;
+	private final long checkpointInterval;
+	private final int maxCheckpoints;
+	private final Deque<Checkpoint> checkpoints; // From the oldest to the newest
+	private final Undoer undoer;
+	private final NavigableMap<Long, HostCall> hostCalls; // By position of the instruction which made the call
+	private boolean replaying;
+
+	/**
+	 * Start recording the execution of the Cpu, which must not be running
+	 * @param capacity Number of undo entries kept in memory, an instruction takes one entry plus one per effect
+	 * @throws IllegalStateException In turbo mode
+	 */
+	public ExecutionHistory(Cpu cpu, int capacity, long checkpointInterval, int maxCheckpoints) {
+		if (checkpointInterval < 1 || maxCheckpoints < 1) {
+			throw new IllegalArgumentException("The history needs at least a checkpoint");
+		}
+
+		this.cpu = cpu;
+		this.trace = new TraceRecorder(capacity, true);
+		this.checkpointInterval = checkpointInterval;
+		this.maxCheckpoints = maxCheckpoints;
+		this.checkpoints = new ArrayDeque<>();
+		this.undoer = new Undoer();
+		this.hostCalls = new TreeMap<>();
+
+		cpu.setExecutionHistory(this);
+	}
+
+	public ExecutionHistory(Cpu cpu) {
+		this(cpu, DEFAULT_CAPACITY, DEFAULT_CHECKPOINT_INTERVAL, DEFAULT_MAX_CHECKPOINTS);
+	}
+
+	/**
+	 * Stop recording, the Cpu runs at full speed again
+	 */
+	public void detach() {
+		if (this.cpu.getExecutionHistory() == this) {
+			this.cpu.setExecutionHistory(null);
+		}
+	}
+
+	TraceRecorder getTraceRecorder() {
+		return this.trace;
+	}
+
+	/**
+	 * @return Number of instructions executed since the beginning of the history
+	 */
+	public long getPosition() {
+		return this.trace.getInstructionCount();
+	}
+
+	/**
+	 * @return The oldest position which can still be reached
+	 */
+	public synchronized long getOldestPosition() {
+		return this.checkpoints.isEmpty() ? this.getPosition() : this.checkpoints.getFirst().position;
+	}
+
+	synchronized boolean isCheckpointDue() {
+		// The checkpoints after an undone instruction belong to a future which may not happen again
+		while (!this.checkpoints.isEmpty() && this.checkpoints.getLast().position > this.getPosition()) {
+			this.checkpoints.removeLast();
+		}
+		if (!this.replaying) {
+			this.hostCalls.tailMap(this.getPosition(), true).clear();
+		}
+		return this.checkpoints.isEmpty() || this.getPosition() - this.checkpoints.getLast().position >= this.checkpointInterval;
+	}
+
+	/**
+	 * Capture the state of the Cpu, the Ram must be detached
+	 * @param address The address of the next instruction
+	 */
+	synchronized void checkpoint(long address) {
+		int[] registers = new int[TraceRecorder.CPSR + 1];
+		for (int i = 0; i < 15; i++) {
+			registers[i] = this.cpu.getRegister(i).getValue();
+		}
+		registers[TraceRecorder.CPSR] = this.cpu.getCPSR().getValue();
+
+		Checkpoint checkpoint = new Checkpoint(this.getPosition(), address, registers, this.cpu.getRam().snapshot());
+
+		if (!this.checkpoints.isEmpty() && this.checkpoints.getLast().position == checkpoint.position) {
+			this.checkpoints.removeLast();
+		}
+		this.checkpoints.addLast(checkpoint);
+		if (this.checkpoints.size() > this.maxCheckpoints) {
+			this.checkpoints.removeFirst();
+			this.hostCalls.headMap(this.checkpoints.getFirst().position).clear();
+		}
+	}
+
+	/**
+	 * Undo the last instruction, the Cpu must not be running
+	 * @return false if the beginning of the history was reached
+	 */
+	public boolean stepBack() {
+		if (this.trace.undoLast(this.undoer)) {
+			return true;
+		}
+		return this.getPosition() > 0 && this.goTo(this.getPosition() - 1);
+	}
+
+	/**
+	 * Go back to the last instruction with a breakpoint whose condition is true, the hit counts aren't changed. Once
+	 * the ring is exhausted, the instructions before it are brought back into it by replaying from the previous
+	 * checkpoint, and searched the same way.
+	 * @return false if the oldest checkpoint was reached without finding one, the Cpu is then there
+	 */
+	public boolean reverseContinue() {
+		BreakpointManager breakpoints = this.cpu.getBreakpointManager();
+		long replayed = -1; // The position the last replay went to
+
+		while (true) {
+			while (this.trace.undoLast(this.undoer)) {
+				Breakpoint breakpoint = breakpoints.get(this.cpu.getCurrentAddress() & 0xFFFFFFFFL);
+
+				if (breakpoint != null && breakpoint.conditionHolds(this.cpu)) {
+					System.out.format("[INFO] Breakpoint @ 0x%x%n", breakpoint.getAddress());
+					return true;
+				}
+			}
+
+			long position = this.getPosition();
+			if (position == 0) {
+				break;
+			}
+			if (position == replayed) {
+				System.out.format("[ERROR] The instruction %d doesn't fit in the undo ring%n", position - 1);
+				return false;
+			}
+
+			Checkpoint checkpoint = this.findCheckpoint(position - 1);
+			if (checkpoint == null) {
+				break;
+			}
+			if (!this.canReplay(checkpoint.position, position)) {
+				return false;
+			}
+			this.restore(checkpoint);
+			this.replay(position - checkpoint.position);
+			if (this.getPosition() != position) {
+				System.out.format("[ERROR] The replay stopped before the instruction %d%n", position);
+				return false;
+			}
+			replayed = position;
+		}
+
+		System.out.println("[INFO] Reached the beginning of the execution history");
+		return false;
+	}
+
+	/**
+	 * Bring the Cpu and the Ram back to the state they had before the position-th instruction, by undoing the last
+	 * instructions or by replaying from the nearest checkpoint. The Cpu must not be running.
+	 * @return false if the position is in the future or older than the oldest checkpoint
+	 */
+	public boolean goTo(long position) {
+		long current = this.getPosition();
+
+		if (position > current) {
+			return false;
+		}
+
+		// Undoing is cheaper than replaying as long as the ring holds the instructions
+		while (current > position && this.trace.undoLast(this.undoer)) {
+			current = this.getPosition();
+		}
+		if (current == position) {
+			return true;
+		}
+
+		Checkpoint checkpoint = this.findCheckpoint(position);
+		if (checkpoint == null) {
+			System.out.format("[ERROR] The instruction %d is older than the execution history%n", position);
+			return false;
+		}
+		if (!this.canReplay(checkpoint.position, position)) {
+			return false;
+		}
+
+		this.restore(checkpoint);
+
+		this.replay(position - checkpoint.position);
+		return this.getPosition() == position;
+	}
+
+	/**
+	 * @return The newest checkpoint at or before this position, or null
+	 */
+	private synchronized Checkpoint findCheckpoint(long position) {
+		Iterator<Checkpoint> iterator = this.checkpoints.descendingIterator();
+
+		while (iterator.hasNext()) {
+			Checkpoint candidate = iterator.next();
+			if (candidate.position <= position) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return false if a call made between these positions can't be replayed
+	 */
+	private synchronized boolean canReplay(long from, long to) {
+		for (Map.Entry<Long, HostCall> entry : this.hostCalls.subMap(from, true, to, false).entrySet()) {
+			if (!entry.getValue().complete) {
+				System.out.format("[ERROR] The call made by the instruction %d wrote more memory than the history holds, it can't be replayed%n",
+						entry.getKey());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Restore a checkpoint, the newer ones are dropped as they will be captured again
+	 */
+	private synchronized void restore(Checkpoint checkpoint) {
+		while (this.checkpoints.getLast() != checkpoint) {
+			this.checkpoints.removeLast();
+		}
+
+		this.cpu.getRam().restore(checkpoint.ram);
+		for (int i = 0; i < 15; i++) {
+			this.cpu.getRegister(i).setValue(checkpoint.registers[i]);
+		}
+		this.cpu.getCPSR().setValue(checkpoint.registers[TraceRecorder.CPSR]);
+		this.cpu.rewindTo(checkpoint.address);
+		this.trace.restart(checkpoint.position);
+	}
+
+	/**
+	 * Execute count instructions without stopping on the breakpoints and watchpoints
+	 */
+	private void replay(long count) {
+		if (count == 0) {
+			return;
+		}
+
+		BreakpointManager breakpointManager = this.cpu.getBreakpointManager();
+		WatchpointManager watchpointManager = this.cpu.getWatchpointManager();
+		List<Breakpoint> breakpoints = new ArrayList<>();
+		for (long address : breakpointManager.getBreakpoints()) {
+			breakpoints.add(breakpointManager.get(address));
+		}
+		List<Watchpoint> watchpoints = watchpointManager.getWatchpoints();
+		long instructionBudget = this.cpu.getInstructionBudget();
+
+		breakpointManager.clear();
+		watchpointManager.clear();
+		this.replaying = true;
+		try {
+			this.cpu.setInstructionBudget(count);
+			this.cpu.runAllAtOnce();
+		} finally {
+			this.replaying = false;
+			this.cpu.setInstructionBudget(instructionBudget);
+			breakpoints.forEach(breakpointManager::add);
+			watchpoints.forEach(watchpointManager::add);
+		}
+
+		this.cpu.rewindTo(this.cpu.getCurrentAddress() & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Called by the Cpu for every call to a routine or to a system call, from the instruction being executed
+	 */
+	void hostCall(Runnable call) {
+		long position = this.getPosition() - 1;
+
+		if (this.replaying) {
+			HostCall hostCall;
+			synchronized (this) {
+				hostCall = this.hostCalls.get(position);
+			}
+			if (hostCall != null) {
+				hostCall.apply();
+				return;
+			}
+		}
+
+		long firstEntry = this.trace.getEntryCount();
+		call.run();
+
+		HostCall hostCall = new HostCall();
+		hostCall.complete = this.trace.readSince(firstEntry, hostCall);
+		for (int i = 0; i < 15; i++) {
+			hostCall.registers[i] = this.cpu.getRegister(i).getValue();
+		}
+		hostCall.registers[TraceRecorder.CPSR] = this.cpu.getCPSR().getValue();
+
+		synchronized (this) {
+			this.hostCalls.put(position, hostCall);
+		}
+	}
+
+	private static class Checkpoint {
+		private final long position;
+		private final long address;
+		private final int[] registers; // r0 to r14 and the CPSR
+		private final RamSnapshot ram;
+
+		private Checkpoint(long position, long address, int[] registers, RamSnapshot ram) {
+			this.position = position;
+			this.address = address;
+			this.registers = registers;
+			this.ram = ram;
+		}
+	}
+
+	/**
+	 * The registers as a routine or a system call left them and the memory it wrote, collected from the trace
+	 */
+	private class HostCall implements TraceReader.Visitor {
+		private final int[] registers = new int[TraceRecorder.CPSR + 1];
+		private int[] writes = new int[0]; // Address, size and value of each write
+		private int writeCount;
+		private boolean complete; // false if the ring lost some of the writes
+
+		@Override
+		public void instruction(long index, long address) {}
+
+		@Override
+		public void register(int register, int oldValue, int newValue) {}
+
+		@Override
+		public void memoryWrite(long address, int size, int oldValue, int newValue) {
+			if (this.writeCount * 3 == this.writes.length) {
+				this.writes = Arrays.copyOf(this.writes, Math.max(12, this.writes.length * 2));
+			}
+			this.writes[this.writeCount * 3] = (int) address;
+			this.writes[this.writeCount * 3 + 1] = size;
+			this.writes[this.writeCount * 3 + 2] = newValue;
+			this.writeCount++;
+		}
+
+		/**
+		 * Do what the call did, instead of making it again
+		 */
+		private void apply() {
+			Cpu cpu = ExecutionHistory.this.cpu;
+
+			for (int i = 0; i < this.writeCount; i++) {
+				write(cpu.getRam(), this.writes[i * 3] & 0xFFFFFFFFL, this.writes[i * 3 + 1], this.writes[i * 3 + 2]);
+			}
+			for (int i = 0; i < 15; i++) {
+				cpu.getRegister(i).setValue(this.registers[i]);
+			}
+			cpu.getCPSR().setValue(this.registers[TraceRecorder.CPSR]);
+		}
+	}
+
+	private static void write(Ram ram, long address, int size, int value) {
+		switch (size) {
+			case 1:
+				ram.setByte(address, (byte) value);
+				break;
+			case 2:
+				ram.setHWord(address, (short) value);
+				break;
+			default: // Only the first word of a wider write is recorded
+				ram.setValue(address, value);
+				break;
+		}
+	}
+
+	/**
+	 * Puts back the old values of the entries of an undone instruction
+	 */
+	private class Undoer implements TraceReader.Visitor {
+		@Override
+		public void instruction(long index, long address) {
+			ExecutionHistory.this.cpu.rewindTo(address);
+		}
+
+		@Override
+		public void register(int register, int oldValue, int newValue) {
+			if (register == TraceRecorder.CPSR) {
+				ExecutionHistory.this.cpu.getCPSR().setValue(oldValue);
+			} else {
+				ExecutionHistory.this.cpu.getRegister(register).setValue(oldValue);
+			}
+		}
+
+		@Override
+		public void memoryWrite(long address, int size, int oldValue, int newValue) {
+			write(ExecutionHistory.this.cpu.getRam(), address, size, oldValue);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+/**
+ * An expression on the state of the Cpu, such as "r0 == 0x10 && Z" or "mem32[sp+4] > 100", parsed once
+ * into a tree of Expressions. The values are 32 bits integers compared as unsigned, a condition is true when its value isn't 0,
+ * && and || only evaluate their right side when needed.
+ */
+@FunctionalInterface
+public interface Expression {
+
+	int evaluate(Cpu cpu);
+
+	default boolean test(Cpu cpu) {
+		return this.evaluate(cpu) != 0;
+	}
+
+	/**
+	 * Parse an expression made of numbers (decimal, 0x or 0b), registers (r0 to r15, sp, lr, pc), flags (N, Z, C, V, Q),
+	 * memory reads (mem8[...], mem16[...], mem32[...]) and the operators of C
+	 * @throws InvalidExpressionException
+	 */
+	static Expression parse(String text) {
+		return new ExpressionParser(text).parse();
+	}
+}
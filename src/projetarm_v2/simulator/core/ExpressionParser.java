@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Precedence climbing parser turning the text of an Expression into a tree of lambdas, constants are folded
+ */
+class ExpressionParser {
+	private static final Pattern tokenPattern = Pattern.compile("\\s*(#?0[xX][0-9a-fA-F]+|#?0[bB][01]+|#?[0-9]+|[a-zA-Z_][a-zA-Z0-9_]*|==|!=|<=|>=|<<|>>|&&|\\|\\||[-+*/%&|^~!<>()\\[\\]])");
+
+	private static final int[] REGISTERS_ALIASES = {13, 14, 15};
+	private static final String[] REGISTERS_NAMES = {"sp", "lr", "pc"};
+
+	private static final List<Map<String, IntBinaryOperator>> binaryOperators = List.of(
+			// Only used to fold constants, see logical
+			Map.of("||", (a, b) -> a != 0 || b != 0 ? 1 : 0),
+			Map.of("&&", (a, b) -> a != 0 && b != 0 ? 1 : 0),
+			Map.of("|", (a, b) -> a | b),
+			Map.of("^", (a, b) -> a ^ b),
+			Map.of("&", (a, b) -> a & b),
+			Map.of("==", (a, b) -> a == b ? 1 : 0, "!=", (a, b) -> a != b ? 1 : 0),
+			// Like the numbers, which go up to 0xFFFFFFFF, the values are compared as unsigned
+			Map.of("<", (a, b) -> Integer.compareUnsigned(a, b) < 0 ? 1 : 0, "<=", (a, b) -> Integer.compareUnsigned(a, b) <= 0 ? 1 : 0,
+					">", (a, b) -> Integer.compareUnsigned(a, b) > 0 ? 1 : 0, ">=", (a, b) -> Integer.compareUnsigned(a, b) >= 0 ? 1 : 0),
+			Map.of("<<", (a, b) -> a << b, ">>", (a, b) -> a >> b),
+			Map.of("+", (a, b) -> a + b, "-", (a, b) -> a - b),
+			// Like the ARM's sdiv, a division by 0 gives 0
+			Map.of("*", (a, b) -> a * b, "/", (a, b) -> b == 0 ? 0 : a / b, "%", (a, b) -> b == 0 ? 0 : a % b));
+
+	private final String text;
+	private final List<String> tokens;
+	private int position;
+
+	ExpressionParser(String text) {
+		this.text = text;
+		this.tokens = new ArrayList<>();
+		this.position = 0;
+
+		Matcher matcher = tokenPattern.matcher(text);
+		int end = 0;
+		while (matcher.find() && matcher.start() == end) {
+			this.tokens.add(matcher.group(1));
+			end = matcher.end();
+		}
+
+		if (!text.substring(end).isBlank()) {
+			throw new InvalidExpressionException("Unexpected \"" + text.substring(end).trim() + "\" in \"" + text + "\"");
+		}
+	}
+
+	Expression parse() {
+		Expression expression = this.parseBinary(0);
+
+		if (this.position != this.tokens.size()) {
+			throw new InvalidExpressionException("Unexpected \"" + this.peek() + "\" in \"" + this.text + "\"");
+		}
+		return expression;
+	}
+
+	private String peek() {
+		return this.position < this.tokens.size() ? this.tokens.get(this.position) : null;
+	}
+
+	private String next() {
+		String token = this.peek();
+		if (token == null) {
+			throw new InvalidExpressionException("Unexpected end of \"" + this.text + "\"");
+		}
+		this.position++;
+		return token;
+	}
+
+	private void expect(String token) {
+		if (!token.equals(this.next())) {
+			throw new InvalidExpressionException("Missing \"" + token + "\" in \"" + this.text + "\"");
+		}
+	}
+
+	private Expression parseBinary(int precedence) {
+		if (precedence == binaryOperators.size()) {
+			return this.parseUnary();
+		}
+
+		Expression left = this.parseBinary(precedence + 1);
+		IntBinaryOperator operator;
+
+		while (this.peek() != null && (operator = binaryOperators.get(precedence).get(this.peek())) != null) {
+			String token = this.next();
+			Expression right = this.parseBinary(precedence + 1);
+
+			switch (token) {
+				case "&&": left = logical(left, right, true, operator); break;
+				case "||": left = logical(left, right, false, operator); break;
+				default: left = combine(left, right, operator); break;
+			}
+		}
+		return left;
+	}
+
+	private Expression parseUnary() {
+		switch (this.next()) {
+			case "-": return combine(new Constant(0), this.parseUnary(), (a, b) -> -b);
+			case "+": return this.parseUnary();
+			case "~": return combine(new Constant(0), this.parseUnary(), (a, b) -> ~b);
+			case "!": return combine(new Constant(0), this.parseUnary(), (a, b) -> b == 0 ? 1 : 0);
+			default:
+				this.position--;
+				return this.parsePrimary();
+		}
+	}
+
+	private Expression parsePrimary() {
+		String token = this.next();
+
+		if (token.equals("(")) {
+			Expression expression = this.parseBinary(0);
+			this.expect(")");
+			return expression;
+		}
+
+		if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '#') {
+			return new Constant(parseNumber(token.replace("#", "")));
+		}
+
+		String name = token.toLowerCase();
+
+		for (int i = 0; i < REGISTERS_NAMES.length; i++) {
+			if (name.equals(REGISTERS_NAMES[i])) {
+				return register(REGISTERS_ALIASES[i]);
+			}
+		}
+
+		if (name.matches("r([0-9]|1[0-5])")) {
+			return register(Integer.parseInt(name.substring(1)));
+		}
+
+		switch (name) {
+			case "n": return cpu -> cpu.getCPSR().n() ? 1 : 0;
+			case "z": return cpu -> cpu.getCPSR().z() ? 1 : 0;
+			case "c": return cpu -> cpu.getCPSR().c() ? 1 : 0;
+			case "v": return cpu -> cpu.getCPSR().v() ? 1 : 0;
+			case "q": return cpu -> cpu.getCPSR().q() ? 1 : 0;
+			case "mem8":
+			case "mem16":
+			case "mem32":
+				this.expect("[");
+				Expression address = this.parseBinary(0);
+				this.expect("]");
+				return memory(name, address);
+			default:
+				throw new InvalidExpressionException("Unknown name \"" + token + "\" in \"" + this.text + "\"");
+		}
+	}
+
+	private int parseNumber(String token) {
+		long value;
+
+		try {
+			if (token.startsWith("0x") || token.startsWith("0X")) {
+				value = Long.parseLong(token.substring(2), 16);
+			} else if (token.startsWith("0b") || token.startsWith("0B")) {
+				value = Long.parseLong(token.substring(2), 2);
+			} else {
+				value = Long.parseLong(token);
+			}
+		} catch (NumberFormatException e) {
+			value = -1;
+		}
+
+		if (value < 0 || value > 0xFFFFFFFFL) {
+			throw new InvalidExpressionException("The number " + token + " doesn't fit in 32 bits");
+		}
+		return (int) value;
+	}
+
+	private static Expression register(int registerNumber) {
+		return cpu -> cpu.getRegister(registerNumber).getValue();
+	}
+
+	private static Expression memory(String name, Expression address) {
+		switch (name) {
+			case "mem8": return cpu -> cpu.getRam().getByte(Integer.toUnsignedLong(address.evaluate(cpu))) & 0xFF;
+			case "mem16": return cpu -> cpu.getRam().getHWord(Integer.toUnsignedLong(address.evaluate(cpu))) & 0xFFFF;
+			default: return cpu -> cpu.getRam().getValue(Integer.toUnsignedLong(address.evaluate(cpu)));
+		}
+	}
+
+	private static Expression combine(Expression left, Expression right, IntBinaryOperator operator) {
+		if (left instanceof Constant && right instanceof Constant) {
+			return new Constant(operator.applyAsInt(((Constant) left).value, ((Constant) right).value));
+		}
+		return cpu -> operator.applyAsInt(left.evaluate(cpu), right.evaluate(cpu));
+	}
+
+	/**
+	 * && and ||, the right side is only evaluated when the left one doesn't decide the result
+	 */
+	private static Expression logical(Expression left, Expression right, boolean and, IntBinaryOperator operator) {
+		if (left instanceof Constant && right instanceof Constant) {
+			return combine(left, right, operator);
+		}
+		if (and) {
+			return cpu -> left.evaluate(cpu) != 0 && right.evaluate(cpu) != 0 ? 1 : 0;
+		}
+		return cpu -> left.evaluate(cpu) != 0 || right.evaluate(cpu) != 0 ? 1 : 0;
+	}
+
+	private static class Constant implements Expression {
+		private final int value;
+
+		private Constant(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int evaluate(Cpu cpu) {
+			return this.value;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+/**
+ * Assembles the successive versions of a program in process, only encoding again the statements which were edited,
+ * moved or which use a label that moved
+ */
+public class IncrementalAssembler {
+	private ArmAssemblerBackend.Program previous;
+	private int reusedCount;
+	private int statementCount;
+
+	/**
+	 * @param assembly The preprocessed assembly, the lines separated by ';'
+	 * @return The listing, or null if the program must be assembled by the Assembler
+	 */
+	public synchronized Listing assemble(String assembly, long startingAddress) {
+		try {
+			ArmAssemblerBackend.Program program = new ArmAssemblerBackend.Program(assembly, startingAddress);
+			Listing listing = program.assembleListing(this.previous);
+
+			this.previous = program;
+			this.reusedCount = program.getReusedCount();
+			this.statementCount = program.getStatementCount();
+			return listing;
+		} catch (ArmAssemblerBackend.UnsupportedException e) {
+			this.previous = null;
+			return null;
+		}
+	}
+
+	/**
+	 * Forget the previous program, the next one is fully encoded
+	 */
+	public synchronized void reset() {
+		this.previous = null;
+	}
+
+	/**
+	 * @return The number of statements of the last program whose encoding was reused
+	 */
+	public synchronized int getReusedCount() {
+		return this.reusedCount;
+	}
+
+	public synchronized int getStatementCount() {
+		return this.statementCount;
+	}
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+public class InvalidExpressionException extends RuntimeException {
+
+	private static final long serialVersionUID = 4127766830263420918L;
+
+	public InvalidExpressionException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+/**
+ * The machine code of a program and the address and length of each of its lines, the literal pool isn't part of any line
+ */
+public class Listing {
+	private final byte[] binary;
+	private final long[] addresses;
+	private final int[] lengths;
+
+	public Listing(byte[] binary, long[] addresses, int[] lengths) {
+		this.binary = binary;
+		this.addresses = addresses;
+		this.lengths = lengths;
+	}
+
+	public byte[] getBinary() {
+		return this.binary;
+	}
+
+	public int getLineCount() {
+		return this.addresses.length;
+	}
+
+	/**
+	 * @param line Starting at 1
+	 */
+	public long getAddress(int line) {
+		return this.addresses[line - 1];
+	}
+
+	/**
+	 * @param line Starting at 1
+	 */
+	public int getLength(int line) {
+		return this.lengths[line - 1];
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+
+/**
+ * A RamChunk whose content is a page of a file mapped with FileChannel.map.
+ * The last page of a file may be shorter than CHUNK_SIZE, the bytes past the
+ * end of the file are then kept on the heap.
+ */
+public class MappedRamChunk extends RamChunk {
+	private final MappedByteBuffer mapping;
+	private final ByteBuffer buffer;
+	private final int length;
+	private final byte[] rest;
+	
+	public MappedRamChunk(long startingAddress, MappedByteBuffer mapping, int position, MemoryPattern pattern) {
+		super(startingAddress);
+		this.mapping = mapping;
+		this.length = Math.min(Ram.CHUNK_SIZE, mapping.capacity() - position);
+		
+		ByteBuffer view = mapping.duplicate();
+		view.position(position);
+		view.limit(position + this.length);
+		this.buffer = view.slice().order(ByteOrder.LITTLE_ENDIAN);
+		
+		if (this.length < Ram.CHUNK_SIZE) {
+			this.rest = new byte[Ram.CHUNK_SIZE];
+			pattern.fill(startingAddress, this.rest, 0, Ram.CHUNK_SIZE);
+		} else {
+			this.rest = null;
+		}
+	}
+	
+	@Override
+	public byte getByte(int offset) {
+		if (offset < this.length) {
+			return this.buffer.get(offset);
+		}
+		return this.rest[offset];
+	}
+	
+	@Override
+	public void setByte(int offset, byte value) {
+		if (offset < this.length) {
+			this.buffer.put(offset, value);
+		} else {
+			this.rest[offset] = value;
+		}
+	}
+	
+	@Override
+	public short getHWord(int offset) {
+		if (offset + 2 <= this.length) {
+			return this.buffer.getShort(offset);
+		}
+		return (short) ((getByte(offset) & 0xFF) | (getByte(offset + 1) & 0xFF) << 8);
+	}
+	
+	@Override
+	public void setHWord(int offset, short value) {
+		if (offset + 2 <= this.length) {
+			this.buffer.putShort(offset, value);
+		} else {
+			setByte(offset, (byte) value);
+			setByte(offset + 1, (byte) (value >> 8));
+		}
+	}
+	
+	@Override
+	public int getValue(int offset) {
+		if (offset + 4 <= this.length) {
+			return this.buffer.getInt(offset);
+		}
+		return (getByte(offset) & 0xFF) | (getByte(offset + 1) & 0xFF) << 8
+				| (getByte(offset + 2) & 0xFF) << 16 | (getByte(offset + 3) & 0xFF) << 24;
+	}
+	
+	@Override
+	public void setValue(int offset, int value) {
+		if (offset + 4 <= this.length) {
+			this.buffer.putInt(offset, value);
+		} else {
+			setByte(offset, (byte) value);
+			setByte(offset + 1, (byte) (value >> 8));
+			setByte(offset + 2, (byte) (value >> 16));
+			setByte(offset + 3, (byte) (value >> 24));
+		}
+	}
+	
+	@Override
+	public void read(int offset, byte[] dest, int off, int len) {
+		int mapped = Math.max(0, Math.min(len, this.length - offset));
+		
+		if (mapped > 0) {
+			ByteBuffer view = this.buffer.duplicate();
+			view.position(offset);
+			view.get(dest, off, mapped);
+		}
+		if (mapped < len) {
+			System.arraycopy(this.rest, offset + mapped, dest, off + mapped, len - mapped);
+		}
+	}
+	
+	@Override
+	public void write(int offset, byte[] src, int off, int len) {
+		int mapped = Math.max(0, Math.min(len, this.length - offset));
+		
+		if (mapped > 0) {
+			ByteBuffer view = this.buffer.duplicate();
+			view.position(offset);
+			view.put(src, off, mapped);
+		}
+		if (mapped < len) {
+			System.arraycopy(src, off + mapped, this.rest, offset + mapped, len - mapped);
+		}
+	}
+	
+	@Override
+	public void fill(int offset, int len, byte value) {
+		for (int i = offset; i < offset + len; i++) {
+			setByte(i, value);
+		}
+	}
+	
+	@Override
+	public byte[] getChunk() {
+		byte[] bytes = new byte[Ram.CHUNK_SIZE];
+		this.read(0, bytes, 0, Ram.CHUNK_SIZE);
+		return bytes;
+	}
+	
+	/**
+	 * @return The mapping of the whole file, force() writes the changes back to the file if it was mapped in read/write mode
+	 */
+	public MappedByteBuffer getMapping() {
+		return this.mapping;
+	}
+	
+	@Override
+	public String toString() {
+		return "MappedRamChunk [startingAddress=0x" + Long.toHexString(startingAddress) + ", length=" + this.length + "]";
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The regions of the address space the guest may access. Nothing is
+ * allocated up front: the Cpu maps a page in Unicorn the first time the guest
+ * touches it, so regions can be as large as the whole 4 GB space.
+ */
+public class MemoryMap {
+	public static final long SYSTEM_START = 0x1F0000L; // Cpu routines, then the I/O ports
+	public static final long SYSTEM_SIZE = 2L * Ram.CHUNK_SIZE;
+	public static final long STACK_SIZE = 64 * 1024L; // Below SYSTEM_START, where the stack pointer starts
+	
+	private final List<MemoryRegion> regions;
+	
+	public MemoryMap() {
+		this.regions = new CopyOnWriteArrayList<>();
+	}
+	
+	/**
+	 * @return The memory map used by default: ramSize bytes of RAM from address 0, the stack and the system page
+	 */
+	public static MemoryMap createDefault(long ramSize) {
+		MemoryMap map = new MemoryMap();
+		
+		map.addRegion(new MemoryRegion("RAM", 0, ramSize));
+		map.addRegion(new MemoryRegion("Stack", SYSTEM_START - STACK_SIZE, STACK_SIZE));
+		map.addRegion(new MemoryRegion("System", SYSTEM_START, SYSTEM_SIZE));
+		
+		return map;
+	}
+	
+	public void addRegion(MemoryRegion region) {
+		this.regions.add(region);
+	}
+	
+	public void removeRegion(MemoryRegion region) {
+		this.regions.remove(region);
+	}
+	
+	public List<MemoryRegion> getRegions() {
+		return Collections.unmodifiableList(this.regions);
+	}
+	
+	/**
+	 * @return The region containing this address, the last added if they overlap, or null if the guest can't access it
+	 */
+	public MemoryRegion getRegion(long address) {
+		address &= 0xFFFFFFFFL;
+		
+		MemoryRegion[] snapshot = this.regions.toArray(new MemoryRegion[0]);
+		
+		for (int i = snapshot.length - 1; i >= 0; i--) {
+			MemoryRegion region = snapshot[i];
+			if (region.contains(address)) {
+				return region;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * @return The kind of the page holding this address, the highest of RAM < ROM < MMIO among the regions overlapping the page
+	 */
+	public MemoryRegion.Kind getPageKind(long address) {
+		long pageStart = address & 0xFFFFFFFFL & ~(long) (Ram.CHUNK_SIZE - 1);
+		long pageEnd = pageStart + Ram.CHUNK_SIZE;
+		MemoryRegion.Kind kind = MemoryRegion.Kind.RAM;
+		
+		for (MemoryRegion region : this.regions) {
+			if (region.getStart() < pageEnd && region.getEnd() > pageStart && region.getKind().compareTo(kind) > 0) {
+				kind = region.getKind();
+			}
+		}
+		
+		return kind;
+	}
+	
+	public boolean contains(long address) {
+		return this.getRegion(address) != null;
+	}
+}
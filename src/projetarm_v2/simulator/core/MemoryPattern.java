@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.Arrays;
+
+/**
+ * The content of the memory which was never written to. It is computed from
+ * the address when needed, so reading uninitialised memory allocates nothing.
+ */
+public interface MemoryPattern {
+	
+	byte getByte(long address);
+	
+	/**
+	 * Write the pattern of the len bytes starting at address into dest
+	 */
+	default void fill(long address, byte[] dest, int off, int len) {
+		for (int i = 0; i < len; i++) {
+			dest[off + i] = this.getByte(address + i);
+		}
+	}
+	
+	/**
+	 * @return true if the len bytes of src are the pattern of the bytes starting at address
+	 */
+	default boolean matches(long address, byte[] src, int off, int len) {
+		for (int i = 0; i < len; i++) {
+			if (src[off + i] != this.getByte(address + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	static MemoryPattern zero() {
+		return ConstantPattern.ZERO;
+	}
+	
+	static MemoryPattern constant(byte value) {
+		return value == 0 ? ConstantPattern.ZERO : new ConstantPattern(value);
+	}
+	
+	/**
+	 * @return A pseudo-random pattern, the same seed always gives the same byte at the same address
+	 */
+	static MemoryPattern random(long seed) {
+		return new RandomPattern(seed);
+	}
+	
+	class ConstantPattern implements MemoryPattern {
+		static final ConstantPattern ZERO = new ConstantPattern((byte) 0);
+		
+		private final byte value;
+		
+		ConstantPattern(byte value) {
+			this.value = value;
+		}
+		
+		@Override
+		public byte getByte(long address) {
+			return this.value;
+		}
+		
+		@Override
+		public void fill(long address, byte[] dest, int off, int len) {
+			Arrays.fill(dest, off, off + len, this.value);
+		}
+		
+		@Override
+		public boolean matches(long address, byte[] src, int off, int len) {
+			for (int i = off; i < off + len; i++) {
+				if (src[i] != this.value) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		@Override
+		public String toString() {
+			return "ConstantPattern [value=" + this.value + "]";
+		}
+	}
+	
+	class RandomPattern implements MemoryPattern {
+		private final long seed;
+		
+		RandomPattern(long seed) {
+			this.seed = seed;
+		}
+		
+		/**
+		 * @return 8 pseudo-random bytes for the 8 bytes aligned block holding this address (SplitMix64)
+		 */
+		private long block(long address) {
+			long z = this.seed + ((address & 0xFFFFFFFFL) >>> 3) * 0x9E3779B97F4A7C15L;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+		
+		@Override
+		public byte getByte(long address) {
+			return (byte) (this.block(address) >>> ((address & 7) * 8));
+		}
+		
+		@Override
+		public void fill(long address, byte[] dest, int off, int len) {
+			long block = this.block(address);
+			
+			for (int i = 0; i < len; i++) {
+				if (i > 0 && ((address + i) & 7) == 0) {
+					block = this.block(address + i);
+				}
+				dest[off + i] = (byte) (block >>> (((address + i) & 7) * 8));
+			}
+		}
+		
+		@Override
+		public String toString() {
+			return "RandomPattern [seed=" + this.seed + "]";
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+/**
+ * A range of the 32 bits address space the guest is allowed to access
+ */
+public class MemoryRegion {
+	
+	/**
+	 * What happens when the guest writes to the region. The engine protects whole
+	 * pages, so the kind applies to every page the region overlaps.
+	 */
+	public enum Kind {
+		/** Plain memory, accessed natively by the engine */
+		RAM,
+		/** Read-only for the guest, a write stops the emulation */
+		ROM,
+		/** Every guest write goes through Java and is visible right away in the Ram */
+		MMIO
+	}
+	
+	private final String name;
+	private final long start;
+	private final long size;
+	private final Kind kind;
+	
+	public MemoryRegion(String name, long start, long size) {
+		this(name, start, size, Kind.RAM);
+	}
+	
+	public MemoryRegion(String name, long start, long size, Kind kind) {
+		if (start < 0 || size <= 0 || start + size > 0x100000000L) {
+			throw new IllegalArgumentException("The region " + name + " doesn't fit in the 32 bits address space");
+		}
+		this.name = name;
+		this.start = start;
+		this.size = size;
+		this.kind = kind;
+	}
+	
+	public String getName() {
+		return this.name;
+	}
+	
+	public long getStart() {
+		return this.start;
+	}
+	
+	public long getSize() {
+		return this.size;
+	}
+	
+	public Kind getKind() {
+		return this.kind;
+	}
+	
+	public long getEnd() {
+		return this.start + this.size;
+	}
+	
+	public boolean contains(long address) {
+		return address >= this.start && address < this.getEnd();
+	}
+	
+	@Override
+	public String toString() {
+		return "MemoryRegion [name=" + name + ", start=0x" + Long.toHexString(start) + ", size=0x" + Long.toHexString(size) + ", kind=" + kind + "]";
+	}
+}
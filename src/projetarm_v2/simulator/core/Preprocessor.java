@@ -13,6 +13,7 @@ import java.util.regex.Pattern;
 
 import projetarm_v2.simulator.core.routines.CpuBreakpoint;
 import projetarm_v2.simulator.core.routines.CpuConsoleClear;
+import projetarm_v2.simulator.core.syscalls.SVCCallExit;
 
 public class Preprocessor {
 
@@ -45,8 +46,8 @@ public class Preprocessor {
 				.replaceAll("@.*", "")
 				.replaceAll(START_OF_LINE + "\\.breakpoint", "blx #" + CpuBreakpoint.ROUTINE_ADDRESS)
 				.replaceAll(START_OF_LINE + "\\.clear", "blx #" + CpuConsoleClear.ROUTINE_ADDRESS)
-				.replaceAll(START_OF_LINE + "\\.stop", ".word 0")
-				.replaceAll(START_OF_LINE + "\\.end", ".word 0")
+				.replaceAll(START_OF_LINE + "\\.stop", "svc #" + SVCCallExit.SVC_NUMBER)
+				.replaceAll(START_OF_LINE + "\\.end", "svc #" + SVCCallExit.SVC_NUMBER)
 				.replaceAll(START_OF_LINE +"\\.equ +.*", "");
 
 
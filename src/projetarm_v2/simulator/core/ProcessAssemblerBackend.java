@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import projetarm_v2.simulator.utils.NativeJarGetter;
+import projetarm_v2.simulator.utils.OSValidator;
+
+/**
+ * Runs Keystone's kstool for each assembly, it handles everything Keystone does and reports its errors.
+ *
+ * kstool assembles its arguments, or its whole standard input, and exits, so it can't be kept running and fed one
+ * assembly at a time: every assembly starts its own process. The submitted assemblies are only spread over a bounded
+ * pool of threads, so that a few kstool processes run at the same time instead of one after the other.
+ */
+class ProcessAssemblerBackend implements AssemblerBackend {
+	public static final int DEFAULT_THREAD_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private static final Pattern pattern = Pattern.compile("\\[ (.*) \\]");
+	private static final Pattern errorPattern = Pattern.compile("'(.*) \\(.*'");
+
+	private File executable; // Extracted the first time it is needed
+	private String version;
+	private final ExecutorService launchers; // The threads which start the kstool processes and wait for them
+
+	ProcessAssemblerBackend() {
+		this(DEFAULT_THREAD_COUNT);
+	}
+
+	/**
+	 * @param threadCount The number of kstool processes running at the same time
+	 */
+	ProcessAssemblerBackend(int threadCount) {
+		this.launchers = Executors.newFixedThreadPool(threadCount, runnable -> {
+			Thread launcher = new Thread(runnable, "kstool launcher");
+			launcher.setDaemon(true);
+			return launcher;
+		});
+	}
+
+	@Override
+	public CompletableFuture<byte[]> submit(String assembly, long startingAddress) {
+		return CompletableFuture.supplyAsync(() -> this.assemble(assembly, startingAddress), this.launchers);
+	}
+
+	@Override
+	public byte[] assemble(String assembly, long startingAddress) {
+		try {
+			if (OSValidator.isWindows()) {
+				assembly = assembly.replaceAll("\"", "\\\\\"");
+			}
+
+			Process p = new ProcessBuilder(this.getExecutable().getAbsolutePath(), "arm", assembly, Long.toHexString(startingAddress))
+					.start();
+
+			String result = new String(p.getInputStream().readAllBytes(), "ASCII");
+
+			Matcher matcher = pattern.matcher(result);
+
+			if (!matcher.find()) {
+				Matcher errorMatcher = errorPattern.matcher(result);
+				if (!errorMatcher.find()) {
+					return new byte[0];
+				}
+				throw new InvalidAssemblyException(errorMatcher.group(1));
+			}
+
+			String[] output = matcher.group(1).split(" ");
+
+			byte[] bytes = new byte[output.length];
+
+			for (int i = 0; i < output.length; i++) {
+				bytes[i] = (byte) Integer.parseInt(output[i], 16);
+			}
+
+			return bytes;
+		} catch (IOException e) {
+			throw new InvalidAssemblyException(e.toString());
+		}
+	}
+
+	/**
+	 * @return "kstool-" and the SHA-256 of the executable, which changes with the version of Keystone
+	 */
+	@Override
+	public synchronized String getVersion() {
+		if (this.version == null) {
+			try {
+				this.version = "kstool-" + AssemblyCache.sha256(Files.readAllBytes(this.getExecutable().toPath()));
+			} catch (IOException e) {
+				System.out.println("[ERROR] Can't read kstool's version: " + e);
+				return "kstool";
+			}
+		}
+		return this.version;
+	}
+
+	private synchronized File getExecutable() throws IOException {
+		if (this.executable == null) {
+			this.executable = NativeJarGetter.getInstance().getNativeExecutable("kstool");
+		}
+		return this.executable;
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.Arrays;
+
+/**
+ * Counts how many times each instruction of the program is executed, without sampling.
+ * The counts are in a primitive array indexed by (address - start) >> 2, the instructions outside of the program,
+ * such as the routines, aren't counted. The counts are written by the thread running the Cpu without synchronisation,
+ * they are exact once the run is over.
+ */
+public class Profiler {
+	private final long start;
+	private final int[] counts;
+
+	/**
+	 * @param start Address of the first instruction of the program
+	 * @param size Size of the program in bytes
+	 */
+	public Profiler(long start, int size) {
+		this.start = start & 0xFFFFFFFFL;
+		this.counts = new int[(size + 3) >> 2];
+	}
+
+	void count(long address) {
+		long index = (address - this.start) >> 2;
+
+		if (index >= 0 && index < this.counts.length) {
+			this.counts[(int) index]++;
+		}
+	}
+
+	/**
+	 * @return How many times the instruction at this address was executed, 0 outside of the program
+	 */
+	public int getCount(long address) {
+		long index = ((address & 0xFFFFFFFFL) - this.start) >> 2;
+		return index >= 0 && index < this.counts.length ? this.counts[(int) index] : 0;
+	}
+
+	/**
+	 * @return Number of instructions of the program executed
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (int count : this.counts) {
+			total += count;
+		}
+		return total;
+	}
+
+	public long getStart() {
+		return this.start;
+	}
+
+	/**
+	 * @return The address following the last instruction profiled
+	 */
+	public long getEnd() {
+		return this.start + ((long) this.counts.length << 2);
+	}
+
+	public void reset() {
+		Arrays.fill(this.counts, 0);
+	}
+}
@@ -8,60 +8,422 @@
 
 package projetarm_v2.simulator.core;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import unicorn.ReadHook;
+import unicorn.EventMemHook;
 import unicorn.Unicorn;
-import unicorn.WriteHook;
 
+/**
+ * The memory of the simulated processor.
+ *
+ * The 32 bits address space is split in pages of CHUNK_SIZE bytes, held in a
+ * table indexed by address >>> PAGE_SHIFT. A page is only allocated the first
+ * time it is written to, reading an unallocated page returns the memory pattern
+ * computed on the fly. Pages which go back to the pattern can be reclaimed.
+ *
+ * While a program runs, the Ram is attached to the Unicorn engine: the guest
+ * reads and writes the engine's memory directly, without any hook. Pages are
+ * mapped read-only, the first guest write to a page is caught by a write
+ * protection hook which gives the page back to the guest and marks it as
+ * written. Java reads of such a page are served from the engine until the Ram
+ * is detached, at which point the written pages are copied back.
+ *
+ * Pages modified from Java while the Ram is detached are marked as dirty, so
+ * that only those are pushed to the engine before the next run. The writes done
+ * from Java while it is attached, by the routines and the system calls, go to the
+ * trace recorder of the Cpu, if any.
+ *
+ * snapshot() shares the pages with the returned RamSnapshot: a page older than
+ * the current epoch is copied the first time it is written to afterwards.
+ *
+ * The Ram is read and written by the emulation thread and by the UI without
+ * locking: pages are published atomically in the page table, and each page is
+ * protected by a seqlock so that a multi-byte read never sees half a write.
+ */
 public class Ram {
 
-	public static final int CHUNK_SIZE = 29;
+	public static final int PAGE_SHIFT = 12;
+	public static final int CHUNK_SIZE = 1 << PAGE_SHIFT; // 4 KiB
 	public static final int DEFAULT_RAM_SIZE = 2 * 1024 * 1024; // 2 MB
-	public final Map<Long, RamChunk> memory;
 
-	private RamChunk randomPattern;
+	private static final int PAGE_MASK = CHUNK_SIZE - 1;
+	private static final int PAGE_COUNT = 1 << (Integer.SIZE - PAGE_SHIFT);
+	private static final long ADDRESS_MASK = 0xFFFFFFFFL;
+
+	private final AtomicReferenceArray<RamChunk> pages;
+	private final AtomicBitSet populatedPages; // Indexes of the non null entries of the page table
+
+	private volatile MemoryPattern pattern;
+	
+	private volatile Unicorn unicorn;
+	private volatile AtomicBitSet mappedPages;
+	private volatile MemoryMap memoryMap;
+	private volatile WatchpointManager watchpoints;
+	private volatile TraceRecorder traceRecorder;
+	private final AtomicBitSet writtenByGuest;
+	private final AtomicBitSet dirtyPages;
+	private volatile int epoch;
 	
 	public Ram() {
-		this.memory = new HashMap<>();
-		this.randomPattern = new RamChunk(0,CHUNK_SIZE);
+		this.pages = new AtomicReferenceArray<>(PAGE_COUNT);
+		this.populatedPages = new AtomicBitSet(PAGE_COUNT);
+		this.pattern = MemoryPattern.zero();
+		this.writtenByGuest = new AtomicBitSet(PAGE_COUNT);
+		this.dirtyPages = new AtomicBitSet(PAGE_COUNT);
+	}
+
+	/**
+	 * Hand the memory over to the engine for a run. The pages the engine has mapped
+	 * must already be synchronised with this Ram, the engine keeps mappedPages up to
+	 * date when it maps new pages during the run. The memory map tells which pages
+	 * are ROM or MMIO, the watchpoints which pages must stay protected.
+	 */
+	public void attach(Unicorn u, AtomicBitSet mappedPages, MemoryMap memoryMap, WatchpointManager watchpoints) {
+		this.mappedPages = mappedPages;
+		this.memoryMap = memoryMap;
+		this.watchpoints = watchpoints;
+		this.writtenByGuest.clear();
+
+		for (int index = mappedPages.nextSetBit(0); index >= 0; index = mappedPages.nextSetBit(index)) {
+			int end = mappedPages.nextClearBit(index);
+			u.mem_protect((long) index << PAGE_SHIFT, (long) (end - index) << PAGE_SHIFT, Unicorn.UC_PROT_READ | Unicorn.UC_PROT_EXEC);
+			index = end;
+		}
+
+		this.unicorn = u;
+	}
+
+	/**
+	 * Take the memory back from the engine, copying the pages written by the guest.
+	 */
+	public void detach() {
+		Unicorn u = this.unicorn;
+
+		if (u == null) {
+			return;
+		}
+
+		Set<MappedByteBuffer> mappings = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		for (int index = this.writtenByGuest.nextSetBit(0); index >= 0; index = this.writtenByGuest.nextSetBit(index + 1)) {
+			long pageAddress = (long) index << PAGE_SHIFT;
+			byte[] bytes = engineRead(u, pageAddress, CHUNK_SIZE);
+			RamChunk page = this.lockPageForWrite(pageAddress);
+
+			try {
+				page.write(0, bytes, 0, CHUNK_SIZE);
+				this.reclaimIfPattern(index, page, bytes);
+			} finally {
+				page.endWrite();
+			}
+
+			if (page instanceof MappedRamChunk) {
+				mappings.add(((MappedRamChunk) page).getMapping());
+			}
+		}
+
+		// Persist the files the guest wrote to
+		for (MappedByteBuffer mapping : mappings) {
+			mapping.force();
+		}
+
+		this.unicorn = null;
+		this.writtenByGuest.clear();
+	}
+
+	public boolean isAttached() {
+		return this.unicorn != null;
+	}
+
+	/**
+	 * @param traceRecorder Records the writes done from Java while the Ram is attached, null to stop
+	 */
+	void setTraceRecorder(TraceRecorder traceRecorder) {
+		this.traceRecorder = traceRecorder;
+	}
+
+	/**
+	 * @return The recorder of the writes done from Java, null if they aren't recorded right now
+	 */
+	private TraceRecorder getAttachedTrace() {
+		return this.unicorn != null ? this.traceRecorder : null;
+	}
+
+	/**
+	 * Record a write done from Java in pieces of at most a word
+	 * @param old The content of the memory before the write
+	 */
+	private static void trace(TraceRecorder trace, long myAddress, byte[] old, byte[] src, int off, int len) {
+		int size;
+
+		for (int i = 0; i < len; i += size) {
+			size = len - i >= 4 ? 4 : len - i >= 2 ? 2 : 1;
+
+			int oldValue = 0;
+			int newValue = 0;
+			for (int j = size - 1; j >= 0; j--) {
+				oldValue = oldValue << 8 | old[i + j] & 0xFF;
+				newValue = newValue << 8 | src[off + i + j] & 0xFF;
+			}
+			trace.memoryWrite(myAddress + i, size, oldValue, newValue);
+		}
 	}
 
 	public void clear() {
-		this.memory.clear();
+		for (int index = this.populatedPages.nextSetBit(0); index >= 0; index = this.populatedPages.nextSetBit(index + 1)) {
+			this.pages.set(index, null);
+			this.populatedPages.clear(index);
+			this.dirtyPages.set(index);
+		}
 	}
 	
-	public void setRandomPattern(RamChunk pattern) {
-		this.randomPattern = pattern;
+	/**
+	 * Change the content of the memory which was never written to
+	 */
+	public void setPattern(MemoryPattern pattern) {
+		this.pattern = pattern;
+
+		// The engine holds the old pattern in the pages it mapped without them being populated
+		AtomicBitSet engine = this.mappedPages;
+		if (engine != null) {
+			for (int index = engine.nextSetBit(0); index >= 0; index = engine.nextSetBit(index + 1)) {
+				if (this.pages.get(index) == null) {
+					this.dirtyPages.set(index);
+				}
+			}
+		}
 	}
 	
-	public RamChunk getRandomPattern() {
-		return this.randomPattern;
+	public MemoryPattern getPattern() {
+		return this.pattern;
 	}
 	
+	private static int pageIndex(long myAddress) {
+		return (int) ((myAddress & ADDRESS_MASK) >>> PAGE_SHIFT);
+	}
+
+	private static int pageOffset(long myAddress) {
+		return (int) myAddress & PAGE_MASK;
+	}
+
+	/**
+	 * The emulation thread may change the engine's memory map (lazy mapping, write
+	 * barrier) while another thread reads memory, so the accesses to the engine
+	 * are serialised on the engine itself
+	 */
+	private static byte[] engineRead(Unicorn u, long myAddress, int len) {
+		synchronized (u) {
+			return u.mem_read(myAddress & ADDRESS_MASK, len);
+		}
+	}
+
+	private static void engineWrite(Unicorn u, long myAddress, byte[] bytes) {
+		synchronized (u) {
+			u.mem_write(myAddress & ADDRESS_MASK, bytes);
+		}
+	}
+
+	private static void engineWrite(Unicorn u, long myAddress, int size, long value) {
+		byte[] bytes = new byte[size];
+
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) (value >> 8 * i);
+		}
+
+		engineWrite(u, myAddress, bytes);
+	}
+
+	/**
+	 * @return The attached engine if it holds the up to date content of this page, null otherwise
+	 */
+	private Unicorn getGuestOwner(int index) {
+		Unicorn u = this.unicorn;
+
+		if (u != null && this.writtenByGuest.get(index)) {
+			return u;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Forward a Java write to the attached engine, or mark the page as dirty if
+	 * the engine can't see it right now
+	 */
+	private void propagate(long myAddress, int size, long value) {
+		Unicorn u = this.unicorn;
+		int index = pageIndex(myAddress);
+
+		if (u == null || !this.mappedPages.get(index)) {
+			this.dirtyPages.set(index);
+			return;
+		}
+
+		engineWrite(u, myAddress, size, value);
+	}
+
+	/**
+	 * Same as propagate for a block of bytes which doesn't cross the end of the page
+	 */
+	private void propagate(long myAddress, byte[] bytes, int off, int len) {
+		Unicorn u = this.unicorn;
+		int index = pageIndex(myAddress);
+
+		if (u == null || !this.mappedPages.get(index)) {
+			this.dirtyPages.set(index);
+			return;
+		}
+
+		engineWrite(u, myAddress, Arrays.copyOfRange(bytes, off, off + len));
+	}
+
+	/**
+	 * @return The page holding this address, or null if the page was never written to
+	 */
+	private RamChunk getPageForRead(long myAddress) {
+		return this.pages.get(pageIndex(myAddress));
+	}
+
+	/**
+	 * @return The page holding this address, allocated from the random pattern if needed
+	 */
+	private RamChunk getPageForWrite(long myAddress) {
+		int index = pageIndex(myAddress);
+
+		while (true) {
+			RamChunk page = this.pages.get(index);
+			int currentEpoch = this.epoch;
+
+			if (page == null) {
+				RamChunk created = new RamChunk((long) index << PAGE_SHIFT, this.pattern);
+				created.epoch = currentEpoch;
+
+				if (this.pages.compareAndSet(index, null, created)) {
+					this.populatedPages.set(index);
+					return created;
+				}
+			} else if (page.epoch != currentEpoch && !(page instanceof MappedRamChunk)) {
+				// The page is shared with a snapshot, a mapped page never is so that its writes still reach the file
+				RamChunk copy = new RamChunk(page.startingAddress, page);
+				copy.epoch = currentEpoch;
+
+				if (this.pages.compareAndSet(index, page, copy)) {
+					return copy;
+				}
+			} else {
+				return page;
+			}
+			// Another thread published the page first, use it
+		}
+	}
+
+	/**
+	 * @return The page holding this address, locked for writing: the caller must call endWrite on it
+	 */
+	private RamChunk lockPageForWrite(long myAddress) {
+		int index = pageIndex(myAddress);
+
+		while (true) {
+			RamChunk page = this.getPageForWrite(myAddress);
+			page.beginWrite();
+
+			// The page may have been replaced (reclaimed, copied...) before we locked it
+			if (this.pages.get(index) == page) {
+				return page;
+			}
+			page.endWrite();
+		}
+	}
+
+	/**
+	 * Remove a page holding nothing but the pattern from the page table, the caller
+	 * must hold the page's write lock
+	 * @param content The content of the page
+	 */
+	private boolean reclaimIfPattern(int index, RamChunk page, byte[] content) {
+		if (page instanceof MappedRamChunk || !this.pattern.matches(page.startingAddress, content, 0, CHUNK_SIZE)
+				|| !this.pages.compareAndSet(index, page, null)) {
+			return false;
+		}
+
+		this.populatedPages.clear(index);
+		// A page created meanwhile by another thread must stay marked as populated
+		if (this.pages.get(index) != null) {
+			this.populatedPages.set(index);
+		}
+		return true;
+	}
+
+	/**
+	 * Release the pages holding nothing but the pattern
+	 * @return The number of pages released
+	 */
+	public int reclaim() {
+		int reclaimed = 0;
+
+		for (int index = this.populatedPages.nextSetBit(0); index >= 0; index = this.populatedPages.nextSetBit(index + 1)) {
+			RamChunk page = this.pages.get(index);
+			if (page == null) {
+				continue;
+			}
+
+			page.beginWrite();
+			try {
+				if (this.reclaimIfPattern(index, page, page.getChunk())) {
+					reclaimed++;
+				}
+			} finally {
+				page.endWrite();
+			}
+		}
+
+		return reclaimed;
+	}
+
 	public byte getByte(long myAddress) {
-		long block = myAddress / CHUNK_SIZE;
-		RamChunk chunk = this.memory.get(block);
+		Unicorn u = this.getGuestOwner(pageIndex(myAddress));
 
-		if (chunk == null || myAddress < 0) {
-			chunk = this.randomPattern;
+		if (u != null) {
+			return engineRead(u, myAddress, 1)[0];
 		}
 
-		return chunk.getByte((int) (myAddress % CHUNK_SIZE));
+		RamChunk page = this.getPageForRead(myAddress);
+
+		if (page == null) {
+			return this.pattern.getByte(myAddress);
+		}
+
+		return page.getByte(pageOffset(myAddress));
 	}
 
 	public void setByte(long myAddress, byte value) {
-		long block = myAddress / CHUNK_SIZE;
-		RamChunk chunk = this.memory.get(block);
-
-		if (chunk == null) {
-			chunk = new RamChunk(myAddress - myAddress % CHUNK_SIZE, randomPattern);
-			this.memory.put(myAddress / CHUNK_SIZE, chunk);
+		TraceRecorder trace = this.getAttachedTrace();
+		if (trace != null) {
+			trace.memoryWrite(myAddress, 1, this.getByte(myAddress) & 0xFF, value & 0xFF);
 		}
 
-		chunk.setByte((int) myAddress % CHUNK_SIZE, value);
+		RamChunk page = this.lockPageForWrite(myAddress);
+
+		try {
+			page.setByte(pageOffset(myAddress), value);
+		} finally {
+			page.endWrite();
+		}
+		this.propagate(myAddress, 1, value);
 	}
 
 	/**
@@ -71,6 +433,31 @@ public class Ram {
 	 * @return The half-word stored at the specified address
 	 */
 	public short getHWord(long myAddress) {
+		int offset = pageOffset(myAddress);
+
+		if (offset <= CHUNK_SIZE - 2) {
+			Unicorn u = this.getGuestOwner(pageIndex(myAddress));
+
+			if (u != null) {
+				byte[] bytes = engineRead(u, myAddress, 2);
+				return (short) ((bytes[0] & 0xFF) | (bytes[1] & 0xFF) << 8);
+			}
+
+			RamChunk page = this.getPageForRead(myAddress);
+
+			if (page == null) {
+				return (short) ((this.pattern.getByte(myAddress) & 0xFF) | (this.pattern.getByte(myAddress + 1) & 0xFF) << 8);
+			}
+
+			int seq;
+			short value;
+			do {
+				seq = page.beginRead();
+				value = page.getHWord(offset);
+			} while (!page.endRead(seq));
+
+			return value;
+		}
 
 		return (short) ((getByte(myAddress) & 0xFF) | (getByte(myAddress + 1) & 0xFF) << 8);
 	}
@@ -82,90 +469,528 @@ public class Ram {
 	 * @param myHWord   The half-word to set in the memory
 	 */
 	public void setHWord(long myAddress, short myHWord) {
+		int offset = pageOffset(myAddress);
 
-		byte[] bytes = new byte[2];
+		if (offset <= CHUNK_SIZE - 2) {
+			TraceRecorder trace = this.getAttachedTrace();
+			if (trace != null) {
+				trace.memoryWrite(myAddress, 2, this.getHWord(myAddress) & 0xFFFF, myHWord & 0xFFFF);
+			}
 
-		bytes[0] = (byte) (myHWord & 0xff);
-		bytes[1] = (byte) ((myHWord >> 8) & 0xff);
+			RamChunk page = this.lockPageForWrite(myAddress);
 
-		this.setByte(myAddress + 1, bytes[1]);
-		this.setByte(myAddress, bytes[0]);
+			try {
+				page.setHWord(offset, myHWord);
+			} finally {
+				page.endWrite();
+			}
+			this.propagate(myAddress, 2, myHWord);
+			return;
+		}
 
+		this.setByte(myAddress + 1, (byte) ((myHWord >> 8) & 0xff));
+		this.setByte(myAddress, (byte) (myHWord & 0xff));
 	}
 
 	public int getValue(long myAddress) {
+		int offset = pageOffset(myAddress);
+
+		if (offset <= CHUNK_SIZE - 4) {
+			Unicorn u = this.getGuestOwner(pageIndex(myAddress));
+
+			if (u != null) {
+				byte[] bytes = engineRead(u, myAddress, 4);
+				return (bytes[0] & 0xFF) | (bytes[1] & 0xFF) << 8 | (bytes[2] & 0xFF) << 16 | (bytes[3] & 0xFF) << 24;
+			}
+
+			RamChunk page = this.getPageForRead(myAddress);
+
+			if (page == null) {
+				return (this.pattern.getByte(myAddress) & 0xFF) | (this.pattern.getByte(myAddress + 1) & 0xFF) << 8
+						| (this.pattern.getByte(myAddress + 2) & 0xFF) << 16 | (this.pattern.getByte(myAddress + 3) & 0xFF) << 24;
+			}
+
+			int seq;
+			int value;
+			do {
+				seq = page.beginRead();
+				value = page.getValue(offset);
+			} while (!page.endRead(seq));
+
+			return value;
+		}
 
 		return ((getByte(myAddress) & 0xFF) | (getByte(myAddress + 1) & 0xFF) << 8
 				| (getByte(myAddress + 2) & 0xFF) << 16 | (getByte(myAddress + 3) & 0xFF) << 24);
-
 	}
 
 	public void setValue(long myAddress, int myWord) {
+		int offset = pageOffset(myAddress);
 
-		byte[] bytes = new byte[4];
-
-		// TODO We could loop the whole method
 		// TODO If we implement the usage of Big Endian on the processor, we need to
 		// check this here
 
-		bytes[0] = (byte) (myWord);
-		bytes[1] = (byte) (myWord >> 8);
-		bytes[2] = (byte) (myWord >> 16);
-		bytes[3] = (byte) (myWord >> 24);
+		if (offset <= CHUNK_SIZE - 4) {
+			TraceRecorder trace = this.getAttachedTrace();
+			if (trace != null) {
+				trace.memoryWrite(myAddress, 4, this.getValue(myAddress), myWord);
+			}
+
+			RamChunk page = this.lockPageForWrite(myAddress);
+
+			try {
+				page.setValue(offset, myWord);
+			} finally {
+				page.endWrite();
+			}
+			this.propagate(myAddress, 4, myWord);
+			return;
+		}
+
+		// The word crosses a page boundary
+		this.setByte(myAddress + 3, (byte) (myWord >> 24));
+		this.setByte(myAddress + 2, (byte) (myWord >> 16));
+		this.setByte(myAddress + 1, (byte) (myWord >> 8));
+		this.setByte(myAddress, (byte) (myWord));
+	}
+
+	/**
+	 * Copy len bytes of the memory starting at myAddress into dest, page by page
+	 */
+	public void read(long myAddress, byte[] dest, int off, int len) {
+		while (len > 0) {
+			int offset = pageOffset(myAddress);
+			int count = Math.min(len, CHUNK_SIZE - offset);
+			Unicorn u = this.getGuestOwner(pageIndex(myAddress));
+
+			if (u != null) {
+				System.arraycopy(engineRead(u, myAddress, count), 0, dest, off, count);
+			} else {
+				RamChunk page = this.getPageForRead(myAddress);
+
+				if (page == null) {
+					this.pattern.fill(myAddress, dest, off, count);
+				} else {
+					int seq;
+					do {
+						seq = page.beginRead();
+						page.read(offset, dest, off, count);
+					} while (!page.endRead(seq));
+				}
+			}
+
+			myAddress += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	public byte[] read(long myAddress, int len) {
+		byte[] bytes = new byte[len];
+		this.read(myAddress, bytes, 0, len);
+		return bytes;
+	}
+
+	/**
+	 * Copy len bytes of src into the memory starting at myAddress, page by page
+	 */
+	public void write(long myAddress, byte[] src, int off, int len) {
+		while (len > 0) {
+			int offset = pageOffset(myAddress);
+			int count = Math.min(len, CHUNK_SIZE - offset);
+
+			TraceRecorder trace = this.getAttachedTrace();
+			if (trace != null) {
+				trace(trace, myAddress, this.read(myAddress, count), src, off, count);
+			}
+
+			RamChunk page = this.lockPageForWrite(myAddress);
+
+			try {
+				page.write(offset, src, off, count);
+			} finally {
+				page.endWrite();
+			}
+			this.propagate(myAddress, src, off, count);
+
+			myAddress += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	public void write(long myAddress, byte[] src) {
+		this.write(myAddress, src, 0, src.length);
+	}
+
+	/**
+	 * Copy the remaining bytes of src into the memory starting at myAddress
+	 */
+	public void write(long myAddress, ByteBuffer src) {
+		while (src.hasRemaining()) {
+			int offset = pageOffset(myAddress);
+			int count = Math.min(src.remaining(), CHUNK_SIZE - offset);
+			byte[] bytes = new byte[count];
+
+			src.get(bytes);
+			this.write(myAddress, bytes, 0, count);
+
+			myAddress += count;
+		}
+	}
+
+	/**
+	 * Set len bytes of the memory starting at myAddress to value
+	 */
+	public void fill(long myAddress, long len, byte value) {
+		while (len > 0) {
+			int offset = pageOffset(myAddress);
+			int count = (int) Math.min(len, CHUNK_SIZE - offset);
+			TraceRecorder trace = this.getAttachedTrace();
+			byte[] old = trace != null ? this.read(myAddress, count) : null;
+			RamChunk page = this.lockPageForWrite(myAddress);
+			byte[] bytes = new byte[count];
+
+			try {
+				page.fill(offset, count, value);
+				page.read(offset, bytes, 0, count);
+			} finally {
+				page.endWrite();
+			}
+			if (trace != null) {
+				trace(trace, myAddress, old, bytes, 0, count);
+			}
+			this.propagate(myAddress, bytes, 0, count);
+
+			myAddress += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Copy len bytes from srcAddress to destAddress, the two blocks may overlap
+	 */
+	public void copy(long srcAddress, long destAddress, int len) {
+		this.write(destAddress, this.read(srcAddress, len));
+	}
+
+	/**
+	 * @return The bytes starting at myAddress up to the first NUL byte, which is not included
+	 */
+	public byte[] readString(long myAddress) {
+		ByteArrayOutputStream string = new ByteArrayOutputStream();
+
+		for (int pages = 0; pages < PAGE_COUNT; pages++) {
+			int offset = pageOffset(myAddress);
+			int count = CHUNK_SIZE - offset;
+			byte[] bytes = this.read(myAddress, count);
+
+			for (int i = 0; i < count; i++) {
+				if (bytes[i] == 0) {
+					string.write(bytes, 0, i);
+					return string.toByteArray();
+				}
+			}
+
+			string.write(bytes, 0, count);
+			myAddress += count;
+		}
+
+		return string.toByteArray();
+	}
+
+	/**
+	 * Map a file into the memory starting at myAddress, which must be the beginning of a page.
+	 * The file's content isn't copied to the heap: the guest works on the file's pages.
+	 * 
+	 * @param persistent If true the changes are written back to the file, otherwise they are lost
+	 * @return The size of the file in bytes
+	 */
+	public long mapFile(long myAddress, Path path, boolean persistent) throws IOException {
+		if (pageOffset(myAddress) != 0) {
+			throw new IllegalArgumentException("A file must be mapped at the beginning of a page");
+		}
+
+		MappedByteBuffer mapping;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = channel.size();
 
-		this.setByte(myAddress + 3, bytes[3]);
-		this.setByte(myAddress + 2, bytes[2]);
-		this.setByte(myAddress + 1, bytes[1]);
-		this.setByte(myAddress, bytes[0]);
+			if (size > Integer.MAX_VALUE || (myAddress & ADDRESS_MASK) + size > ADDRESS_MASK + 1) {
+				throw new IllegalArgumentException("The file doesn't fit in the memory");
+			}
+
+			mapping = channel.map(persistent ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.PRIVATE, 0, size);
+		}
+
+		for (int position = 0; position < mapping.capacity(); position += CHUNK_SIZE) {
+			long pageAddress = (myAddress & ADDRESS_MASK) + position;
+			int index = pageIndex(pageAddress);
+			RamChunk page = new MappedRamChunk(pageAddress, mapping, position, this.pattern);
+			page.epoch = this.epoch;
+
+			this.pages.set(index, page);
+			this.populatedPages.set(index);
+
+			this.propagate(pageAddress, page.getChunk(), 0, CHUNK_SIZE);
+		}
+
+		return mapping.capacity();
+	}
+
+	/**
+	 * Capture the content of the Ram, in a time proportional to the number of populated pages.
+	 * The pages are shared until they are written to, except the pages of a mapped file which
+	 * are copied so that the live ones stay backed by the file.
+	 */
+	public RamSnapshot snapshot() {
+		if (this.isAttached()) {
+			throw new IllegalStateException("The Ram can't be captured while the Cpu is running");
+		}
+
+		// In the order of the addresses
+		List<RamChunk> populated = this.getPopulatedPages();
+		RamChunk[] snapshotPages = populated.toArray(new RamChunk[0]);
+
+		int[] indexes = new int[snapshotPages.length];
+		for (int i = 0; i < snapshotPages.length; i++) {
+			indexes[i] = pageIndex(snapshotPages[i].startingAddress);
+
+			if (snapshotPages[i] instanceof MappedRamChunk) {
+				snapshotPages[i] = new MappedPageCopy((MappedRamChunk) snapshotPages[i]);
+			}
+		}
+
+		this.epoch++;
+
+		return new RamSnapshot(indexes, snapshotPages, this.pattern);
+	}
+
+	/**
+	 * Roll the Ram back to a snapshot, the pages which differ are marked as dirty. The pages
+	 * of a file mapped before the snapshot are rolled back in place, in the file.
+	 */
+	public void restore(RamSnapshot snapshot) {
+		if (this.isAttached()) {
+			throw new IllegalStateException("The Ram can't be restored while the Cpu is running");
+		}
+
+		// Pages of the snapshot which were cleared since
+		for (int i = 0; i < snapshot.size(); i++) {
+			if (this.pages.get(snapshot.getIndex(i)) == null) {
+				this.dirtyPages.set(snapshot.getIndex(i));
+			}
+		}
+
+		// Pages written to or populated since the snapshot
+		for (RamChunk page : this.getPopulatedPages()) {
+			int index = pageIndex(page.startingAddress);
+			RamChunk captured = snapshot.findPage(index);
+
+			if (captured instanceof MappedPageCopy && ((MappedPageCopy) captured).source == page) {
+				continue; // Rolled back in place below
+			}
+			if (captured != page) {
+				this.dirtyPages.set(index);
+			}
+			this.pages.set(index, null);
+			this.populatedPages.clear(index);
+		}
+
+		for (int i = 0; i < snapshot.size(); i++) {
+			int index = snapshot.getIndex(i);
+			RamChunk page = snapshot.getPage(i);
+
+			if (page instanceof MappedPageCopy) {
+				MappedRamChunk source = ((MappedPageCopy) page).source;
+
+				source.beginWrite();
+				try {
+					source.write(0, page.getChunk(), 0, CHUNK_SIZE);
+				} finally {
+					source.endWrite();
+				}
+				this.dirtyPages.set(index);
+				page = source;
+			}
+			this.pages.set(index, page);
+			this.populatedPages.set(index);
+		}
 
+		this.setPattern(snapshot.getPattern());
+
+		// The restored pages are still shared with the snapshot
+		this.epoch++;
 	}
 
 	public Collection<RamChunk> getRamChunks() {
-		return this.memory.values();
+		return Collections.unmodifiableList(this.getPopulatedPages());
 	}
 
-	public ReadHook getNewReadHook() {
-		return new ReadHookRam(this);
+	/**
+	 * @return The pages of the page table, in the order of their addresses
+	 */
+	private List<RamChunk> getPopulatedPages() {
+		List<RamChunk> populated = new ArrayList<>();
+
+		for (int index = this.populatedPages.nextSetBit(0); index >= 0; index = this.populatedPages.nextSetBit(index + 1)) {
+			RamChunk page = this.pages.get(index);
+			if (page != null) {
+				populated.add(page);
+			}
+		}
+		return populated;
+	}
+
+	/**
+	 * Take the pages modified from Java since the last call, their dirty mark is
+	 * cleared before they are returned so that a concurrent write marks them again
+	 * 
+	 * @return The addresses of the dirty pages
+	 */
+	public List<Long> takeDirtyPages() {
+		List<Long> dirty = new ArrayList<>();
+
+		for (int index = this.dirtyPages.nextSetBit(0); index >= 0; index = this.dirtyPages.nextSetBit(index + 1)) {
+			if (this.dirtyPages.getAndClear(index)) {
+				dirty.add((long) index << PAGE_SHIFT);
+			}
+		}
+
+		return dirty;
 	}
 
-	public WriteHook getNewWriteHook() {
-		return new WriteHookRam(this);
+	public EventMemHook getNewWriteProtectHook() {
+		return new WriteProtectHookRam(this);
 	}
 
 	public String toString() {
-		return this.memory.toString();
+		return this.getPopulatedPages().toString();
 	}
 
-	private class ReadHookRam implements ReadHook {
+	/**
+	 * Copy a guest write to a MMIO page into the Ram
+	 */
+	private void mirror(long myAddress, int size, long value) {
+		for (int i = 0; i < size; i++) {
+			RamChunk page = this.lockPageForWrite(myAddress + i);
+
+			try {
+				page.setByte(pageOffset(myAddress + i), (byte) (value >> 8 * i));
+			} finally {
+				page.endWrite();
+			}
+		}
+	}
 
-		private final Ram ram;
+	/**
+	 * Copy a guest write seen by a memory hook into the Ram, nothing is forwarded to the engine. As long as every
+	 * guest write goes through here, the Ram holds the engine's content even for the pages the guest owns.
+	 * @return The previous content of the Ram at this address, only the first word of a wider write
+	 */
+	int mirrorGuestWrite(long myAddress, int size, long value) {
+		int offset = pageOffset(myAddress);
+		int oldValue = 0;
+
+		if (size > Integer.BYTES || offset > CHUNK_SIZE - size) {
+			for (int i = Math.min(size, Integer.BYTES) - 1; i >= 0; i--) {
+				RamChunk page = this.getPageForRead(myAddress + i);
+				byte oldByte = page == null ? this.pattern.getByte(myAddress + i) : page.getByte(pageOffset(myAddress + i));
+				oldValue = oldValue << 8 | oldByte & 0xFF;
+			}
+			this.mirror(myAddress, size, value);
+			return oldValue;
+		}
 
-		public ReadHookRam(Ram ram) {
-			this.ram = ram;
+		RamChunk page = this.lockPageForWrite(myAddress);
+
+		try {
+			switch (size) {
+				case 1:
+					oldValue = page.getByte(offset) & 0xFF;
+					page.setByte(offset, (byte) value);
+					break;
+				case 2:
+					oldValue = page.getHWord(offset) & 0xFFFF;
+					page.setHWord(offset, (short) value);
+					break;
+				default:
+					oldValue = page.getValue(offset);
+					page.setValue(offset, (int) value);
+					break;
+			}
+		} finally {
+			page.endWrite();
 		}
 
-		public void hook(Unicorn u, long address, int size, Object user_data) {
-			byte[] value = new byte[size];
+		return oldValue;
+	}
 
-			for (int i = 0; i < size; i++) {
-				value[i] = this.ram.getByte(address + i);
-			}
+	/**
+	 * The content of a page of a mapped file when a snapshot was taken, restoring the snapshot
+	 * writes it back into the mapped page
+	 */
+	private static class MappedPageCopy extends RamChunk {
+		private final MappedRamChunk source;
 
-			u.mem_write(address, value);
+		public MappedPageCopy(MappedRamChunk source) {
+			super(source.startingAddress, source);
+			this.source = source;
 		}
 	}
 
-	private class WriteHookRam implements WriteHook {
+	/**
+	 * Called when the guest writes to a read-only page. A RAM page is made
+	 * writable, a MMIO page stays read-only and the write is mirrored in the Ram,
+	 * a write to a ROM page stops the emulation.
+	 *
+	 * The engine drops the faulting write even when the hook handles it, and a
+	 * TLB entry filled by an earlier read keeps the page read-only for it, so the
+	 * value is always written into the engine here.
+	 */
+	private class WriteProtectHookRam implements EventMemHook {
 
 		private final Ram ram;
 
-		public WriteHookRam(Ram ram) {
+		public WriteProtectHookRam(Ram ram) {
 			this.ram = ram;
 		}
 
-		public void hook(Unicorn u, long address, int size, long value, Object user_data) {
-			for (int i = 0; i < size; i++) {
-				this.ram.setByte(address+i, (byte)((value >> 8*i) & 0xFF));
+		public boolean hook(Unicorn u, long address, int size, long value, Object user_data) {
+			int index = pageIndex(address);
+
+			if (!this.ram.mappedPages.get(index)) {
+				return false;
+			}
+
+			switch (this.ram.memoryMap.getPageKind(address)) {
+				case ROM:
+					System.out.format("[ERROR] The program tried to write to the read-only address 0x%x%n", address);
+					return false;
+				case MMIO:
+					this.ram.mirror(address, size, value);
+					engineWrite(u, address, size, value);
+					return true;
+				default:
+					WatchpointManager watchpoints = this.ram.watchpoints;
+					
+					if (watchpoints != null && watchpoints.isWriteWatched(index)) {
+						// Every write to a watched page must go through the hooks, the page stays protected
+						this.ram.writtenByGuest.set(index);
+						engineWrite(u, address, size, value);
+						return true;
+					}
+					
+					int protection = Unicorn.UC_PROT_ALL;
+					if (watchpoints != null && watchpoints.isReadWatched(index)) {
+						protection &= ~Unicorn.UC_PROT_READ;
+					}
+					
+					synchronized (u) {
+						u.mem_protect((long) index << PAGE_SHIFT, CHUNK_SIZE, protection);
+					}
+					this.ram.writtenByGuest.set(index);
+					engineWrite(u, address, size, value);
+					return true;
 			}
 		}
 	}
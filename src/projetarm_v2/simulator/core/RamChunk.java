@@ -8,17 +8,34 @@
 
 package projetarm_v2.simulator.core;
 
+import java.lang.invoke.VarHandle;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RamChunk {
 	public final long startingAddress;
 	private byte[] bytes;
+	int epoch; // The Ram's snapshot epoch this chunk was created in, older chunks are shared and must be copied before being written to
+	private final AtomicInteger sequence = new AtomicInteger(); // Seqlock, odd while the chunk is being written to
 	
 	public RamChunk(long startingAddress, RamChunk ramChunk) {
 		this.startingAddress = startingAddress;
 		byte[] pattern = ramChunk.getChunk(); 
 		this.bytes = new byte[pattern.length];
-		System.arraycopy(pattern, 0, this.bytes, 0, this.bytes.length);
+		int seq;
+		do {
+			seq = ramChunk.beginRead();
+			ramChunk.read(0, this.bytes, 0, this.bytes.length);
+		} while (!ramChunk.endRead(seq));
+	}
+	
+	/**
+	 * Create a chunk of Ram.CHUNK_SIZE bytes holding the pattern of its addresses
+	 */
+	public RamChunk(long startingAddress, MemoryPattern pattern) {
+		this.startingAddress = startingAddress;
+		this.bytes = new byte[Ram.CHUNK_SIZE];
+		pattern.fill(startingAddress, this.bytes, 0, this.bytes.length);
 	}
 	
 	public RamChunk(long startingAddress, int size) {
@@ -26,6 +43,52 @@ public class RamChunk {
 		this.bytes = new byte[size];
 	}
 	
+	/**
+	 * For chunks which don't keep their content on the heap
+	 */
+	protected RamChunk(long startingAddress) {
+		this.startingAddress = startingAddress;
+	}
+	
+	/**
+	 * Start reading the chunk without locking, the read must be retried if endRead returns false
+	 * @return The sequence number to give to endRead
+	 */
+	int beginRead() {
+		int seq = this.sequence.get();
+		
+		while ((seq & 1) != 0) {
+			Thread.onSpinWait();
+			seq = this.sequence.get();
+		}
+		
+		return seq;
+	}
+	
+	/**
+	 * @return true if the chunk wasn't written to since beginRead returned seq
+	 */
+	boolean endRead(int seq) {
+		VarHandle.acquireFence();
+		return this.sequence.get() == seq;
+	}
+	
+	/**
+	 * Wait for the other writers, then make the readers retry until endWrite is called
+	 */
+	void beginWrite() {
+		int seq = this.sequence.get();
+		
+		while ((seq & 1) != 0 || !this.sequence.compareAndSet(seq, seq + 1)) {
+			Thread.onSpinWait();
+			seq = this.sequence.get();
+		}
+	}
+	
+	void endWrite() {
+		this.sequence.incrementAndGet();
+	}
+	
 	public byte getByte(int offset) {
 		return this.bytes[offset];
 	}
@@ -34,6 +97,60 @@ public class RamChunk {
 		this.bytes[offset] = value;
 	}
 	
+	/**
+	 * Get a 16 bits half-word (Little Endian), the half-word must not cross the end of the chunk
+	 */
+	public short getHWord(int offset) {
+		return (short) ((this.bytes[offset] & 0xFF) | (this.bytes[offset + 1] & 0xFF) << 8);
+	}
+	
+	/**
+	 * Set a 16 bits half-word (Little Endian), the half-word must not cross the end of the chunk
+	 */
+	public void setHWord(int offset, short value) {
+		this.bytes[offset] = (byte) value;
+		this.bytes[offset + 1] = (byte) (value >> 8);
+	}
+	
+	/**
+	 * Get a 32 bits word (Little Endian), the word must not cross the end of the chunk
+	 */
+	public int getValue(int offset) {
+		return (this.bytes[offset] & 0xFF) | (this.bytes[offset + 1] & 0xFF) << 8
+				| (this.bytes[offset + 2] & 0xFF) << 16 | (this.bytes[offset + 3] & 0xFF) << 24;
+	}
+	
+	/**
+	 * Set a 32 bits word (Little Endian), the word must not cross the end of the chunk
+	 */
+	public void setValue(int offset, int value) {
+		this.bytes[offset] = (byte) value;
+		this.bytes[offset + 1] = (byte) (value >> 8);
+		this.bytes[offset + 2] = (byte) (value >> 16);
+		this.bytes[offset + 3] = (byte) (value >> 24);
+	}
+	
+	/**
+	 * Copy len bytes starting at offset into dest
+	 */
+	public void read(int offset, byte[] dest, int off, int len) {
+		System.arraycopy(this.bytes, offset, dest, off, len);
+	}
+	
+	/**
+	 * Copy len bytes of src into the chunk starting at offset
+	 */
+	public void write(int offset, byte[] src, int off, int len) {
+		System.arraycopy(src, off, this.bytes, offset, len);
+	}
+	
+	public void fill(int offset, int len, byte value) {
+		Arrays.fill(this.bytes, offset, offset + len, value);
+	}
+	
+	/**
+	 * @return The content of the chunk, a chunk which doesn't keep its content on the heap returns a copy
+	 */
 	public byte[] getChunk() {
 		return this.bytes;
 	}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.Arrays;
+
+/**
+ * An immutable image of the Ram, created by Ram.snapshot(). The pages are
+ * shared with the Ram, which copies a page before writing to it.
+ */
+public final class RamSnapshot {
+	private final int[] indexes;
+	private final RamChunk[] pages;
+	private final MemoryPattern pattern;
+
+	RamSnapshot(int[] indexes, RamChunk[] pages, MemoryPattern pattern) {
+		this.indexes = indexes;
+		this.pages = pages;
+		this.pattern = pattern;
+	}
+
+	int size() {
+		return this.pages.length;
+	}
+
+	int getIndex(int i) {
+		return this.indexes[i];
+	}
+
+	RamChunk getPage(int i) {
+		return this.pages[i];
+	}
+
+	MemoryPattern getPattern() {
+		return this.pattern;
+	}
+
+	/**
+	 * @return The page with this index in the page table, or null if it wasn't populated
+	 */
+	RamChunk findPage(int index) {
+		int i = Arrays.binarySearch(this.indexes, index);
+
+		if (i < 0) {
+			return null;
+		}
+
+		return this.pages[i];
+	}
+
+	public byte getByte(long myAddress) {
+		RamChunk page = this.findPage((int) ((myAddress & 0xFFFFFFFFL) >>> Ram.PAGE_SHIFT));
+
+		if (page == null) {
+			return this.pattern.getByte(myAddress);
+		}
+
+		return page.getByte((int) myAddress & (Ram.CHUNK_SIZE - 1));
+	}
+
+	public int getValue(long myAddress) {
+		return (getByte(myAddress) & 0xFF) | (getByte(myAddress + 1) & 0xFF) << 8
+				| (getByte(myAddress + 2) & 0xFF) << 16 | (getByte(myAddress + 3) & 0xFF) << 24;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the traces written by a TraceRecorder, see TraceRecorder.streamTo
+ */
+public class TraceReader {
+
+	/**
+	 * Receives the entries of a trace in the order they were recorded, the effects of an instruction follow it
+	 */
+	public interface Visitor {
+		void instruction(long index, long address);
+
+		/**
+		 * @param register 0 to 14, or TraceRecorder.CPSR
+		 */
+		void register(int register, int oldValue, int newValue);
+
+		/**
+		 * @param oldValue 0 if the recorder didn't record the overwritten memory
+		 */
+		void memoryWrite(long address, int size, int oldValue, int newValue);
+	}
+
+	private TraceReader() {}
+
+	/**
+	 * Visit every entry of a trace file
+	 * @throws IOException If the file isn't a trace
+	 */
+	public static void read(Path path, Visitor visitor) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(TraceRecorder.ENTRY_SIZE * 4096).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.limit(TraceRecorder.MAGIC.length + Integer.BYTES);
+			fill(channel, buffer);
+			byte[] magic = new byte[TraceRecorder.MAGIC.length];
+			buffer.get(magic);
+			if (!Arrays.equals(magic, TraceRecorder.MAGIC) || buffer.getInt() != TraceRecorder.VERSION) {
+				throw new IOException(path + " isn't a trace of this version");
+			}
+
+			buffer.clear();
+			while (channel.read(buffer) >= 0 || buffer.position() > 0) {
+				buffer.flip();
+				while (buffer.remaining() >= TraceRecorder.ENTRY_SIZE) {
+					visit(visitor, buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+				}
+				if (buffer.hasRemaining() && channel.position() == channel.size()) {
+					throw new IOException(path + " ends with a truncated entry");
+				}
+				buffer.compact();
+			}
+		}
+	}
+
+	private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("Unexpected end of the trace");
+			}
+		}
+		buffer.flip();
+	}
+
+	static void visit(Visitor visitor, int header, int a, int b, int c) {
+		int argument = header & 0xFFFFFF;
+
+		switch (header >>> 24) {
+			case TraceRecorder.INSTRUCTION:
+				visitor.instruction((a & 0xFFFFFFFFL) | (long) b << 32, c & 0xFFFFFFFFL);
+				break;
+			case TraceRecorder.REGISTER:
+				visitor.register(argument, a, b);
+				break;
+			case TraceRecorder.MEMORY_WRITE:
+				visitor.memoryWrite(a & 0xFFFFFFFFL, argument, b, c);
+				break;
+			default:
+				throw new IllegalStateException("Unknown trace entry 0x" + Integer.toHexString(header));
+		}
+	}
+}
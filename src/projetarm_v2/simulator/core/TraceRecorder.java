@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the execution of the Cpu in a binary ring buffer of fixed size entries, nothing is allocated per instruction.
+ *
+ * Each executed instruction is an INSTRUCTION entry followed by its effects: a MEMORY_WRITE entry per write done by the
+ * program and a REGISTER entry per register it changed, the CPSR being register 16. The PC isn't recorded, it is the
+ * address of the next instruction. Only the registers the previous instruction may have written are read back from
+ * the engine, they are found by decoding it, and the overwritten memory is taken from the Ram, which the write hook
+ * keeps in step with the guest. Once the ring is full the oldest entries are overwritten, unless the trace is
+ * streamed to a file, in which case every entry is written to the file before being overwritten.
+ * The writes done from Java while the program runs, by the routines and the system calls, are recorded as effects of
+ * the instruction being executed.
+ * The ExecutionHistory undoes the last instructions of the ring, the undone instructions stay in the file.
+ */
+public class TraceRecorder implements Closeable {
+	public static final int INSTRUCTION = 1; // index (low, high), address
+	public static final int REGISTER = 2; // register number, old value, new value
+	public static final int MEMORY_WRITE = 3; // size, address, old value (0 if not recorded), new value
+	public static final int CPSR = 16;
+
+	static final int ALL_REGISTERS = 1 << CPSR | 0x7FFF; // r0 to r14 and the CPSR
+
+	static final int ENTRY_SIZE = 16; // A header int (kind << 24 | argument) and three ints
+	static final byte[] MAGIC = {'A', 'R', 'M', 'T', 'R', 'A', 'C', 'E'};
+	static final int VERSION = 1;
+
+	private final ByteBuffer ring;
+	private final ByteBuffer streamView; // Reused to write parts of the ring to the file
+	private final int capacity; // In entries
+	private final boolean recordOverwrittenMemory;
+	private final int[] registers; // r0 to r14 and the CPSR as of the last instruction
+	private final int[] values; // Reused to read the registers from the Cpu
+	private int pendingRegisters; // The registers the last instruction may have written
+	private long written; // Number of entries written since the beginning
+	private long oldest; // The oldest entry still in the ring
+	private long streamed; // Number of entries written to the file
+	private long instructions;
+	private FileChannel channel;
+
+	/**
+	 * @param capacity Number of entries kept in memory, an instruction takes one entry plus one per effect
+	 * @param recordOverwrittenMemory If true, the previous value of the memory is read before each write so that it can be undone
+	 */
+	public TraceRecorder(int capacity, boolean recordOverwrittenMemory) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("The trace must hold at least 2 entries");
+		}
+		this.capacity = capacity;
+		this.ring = ByteBuffer.allocateDirect(capacity * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.streamView = this.ring.duplicate();
+		this.recordOverwrittenMemory = recordOverwrittenMemory;
+		this.registers = new int[CPSR + 1];
+		this.values = new int[CPSR + 1];
+	}
+
+	/**
+	 * Write every entry, starting from now, to a file. The file starts with the magic "ARMTRACE" and the version (int),
+	 * followed by the entries in little endian, see TraceReader
+	 */
+	public synchronized void streamTo(Path path) throws IOException {
+		this.close();
+
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(MAGIC.length + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC).putInt(VERSION).flip();
+		while (header.hasRemaining()) {
+			this.channel.write(header);
+		}
+		this.streamed = this.written;
+	}
+
+	/**
+	 * Stop streaming, writing the pending entries to the file
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.channel != null) {
+			this.flush();
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+
+	/**
+	 * Take the registers as they are before a run
+	 */
+	synchronized void start(Cpu cpu) {
+		cpu.readRegisters(ALL_REGISTERS, this.registers);
+		this.pendingRegisters = 0;
+	}
+
+	/**
+	 * Called before the instruction at this address is executed
+	 * @param instruction The instruction, as found in the Ram
+	 */
+	synchronized void instruction(Cpu cpu, long address, int instruction) {
+		this.recordRegisters(cpu, this.pendingRegisters);
+		this.put(INSTRUCTION << 24, (int) this.instructions, (int) (this.instructions >>> 32), (int) address);
+		this.instructions++;
+
+		// A routine changes the registers from Java before its bx lr is executed
+		boolean routine = address >= MemoryMap.SYSTEM_START && address < MemoryMap.SYSTEM_START + Ram.CHUNK_SIZE;
+		this.pendingRegisters = routine ? ALL_REGISTERS : writtenRegisters(instruction);
+	}
+
+	/**
+	 * Called before the program writes to the memory
+	 */
+	synchronized void memoryWrite(Ram ram, long address, int size, long value) {
+		int oldValue = this.recordOverwrittenMemory ? ram.mirrorGuestWrite(address, size, value) : 0;
+
+		this.put(MEMORY_WRITE << 24 | size, (int) address, oldValue, (int) value);
+	}
+
+	/**
+	 * Called before a write done from Java while the program runs
+	 */
+	synchronized void memoryWrite(long address, int size, int oldValue, int newValue) {
+		this.put(MEMORY_WRITE << 24 | size, (int) address, this.recordOverwrittenMemory ? oldValue : 0, newValue);
+	}
+
+	/**
+	 * Record the effects of the last instruction of a run and write the pending entries to the file
+	 */
+	synchronized void finish(Cpu cpu) {
+		this.recordRegisters(cpu, this.pendingRegisters);
+		this.pendingRegisters = 0;
+
+		if (this.channel != null) {
+			this.flush();
+		}
+	}
+
+	private void recordRegisters(Cpu cpu, int mask) {
+		if (mask == 0) {
+			return;
+		}
+		cpu.readRegisters(mask, this.values);
+
+		for (int bits = mask; bits != 0; bits &= bits - 1) {
+			int i = Integer.numberOfTrailingZeros(bits);
+			if (this.values[i] != this.registers[i]) {
+				this.put(REGISTER << 24 | i, this.registers[i], this.values[i], 0);
+				this.registers[i] = this.values[i];
+			}
+		}
+	}
+
+	/**
+	 * @return The registers an ARM instruction may write, bit i for ri and bit CPSR for the CPSR, the PC excluded.
+	 * The instructions which aren't decoded here, such as SVC or MSR, may write any of them.
+	 */
+	static int writtenRegisters(int instruction) {
+		int rd = 1 << (instruction >>> 12 & 0xF);
+		int rn = 1 << (instruction >>> 16 & 0xF);
+		int flags = (instruction & 0x00100000) != 0 ? 1 << CPSR : 0; // Also the L bit of the transfers
+		boolean writeBack = (instruction & 0x01000000) == 0 || (instruction & 0x00200000) != 0;
+		int mask;
+
+		if (instruction >>> 28 == 0xF) {
+			// BLX with an immediate is the only unconditional instruction decoded
+			mask = (instruction & 0x0E000000) == 0x0A000000 ? 1 << 14 : ALL_REGISTERS;
+		} else if ((instruction & 0x0FFFFFD0) == 0x012FFF10) { // BX and BLX with a register
+			mask = (instruction & 0x20) != 0 ? 1 << 14 : 0;
+		} else {
+			switch (instruction >>> 25 & 0x7) {
+				case 0b000:
+				case 0b001:
+					int opcode = instruction >>> 21 & 0xF;
+
+					if ((instruction & 0x0E000090) == 0x00000090) {
+						if ((instruction & 0x0FC000F0) == 0x00000090) { // MUL and MLA write the register of Rn's field
+							mask = rn | flags;
+						} else if ((instruction & 0x0F8000F0) == 0x00800090) { // Long multiplies
+							mask = rn | rd | flags;
+						} else if ((instruction & 0x0FB00FF0) == 0x01000090) { // SWP
+							mask = rd;
+						} else if ((instruction & 0x60) == 0) {
+							mask = ALL_REGISTERS;
+						} else {
+							// Halfword, signed and doubleword transfers, LDRD loads two registers
+							mask = writeBack ? rn : 0;
+							if (flags != 0) {
+								mask |= rd;
+							} else if ((instruction & 0x60) == 0x40) {
+								mask |= rd | rd << 1;
+							}
+						}
+					} else if (opcode >= 8 && opcode <= 11) {
+						// TST, TEQ, CMP and CMN only set the flags, without S these encodings are MRS, MSR...
+						mask = flags != 0 ? flags : ALL_REGISTERS;
+					} else {
+						mask = rd | flags;
+					}
+					break;
+				case 0b011:
+					if ((instruction & 0x10) != 0) {
+						mask = ALL_REGISTERS;
+						break;
+					}
+					// Falls through
+				case 0b010:
+					mask = (writeBack ? rn : 0) | (flags != 0 ? rd : 0);
+					break;
+				case 0b100:
+					if ((instruction & 0x00400000) != 0) { // The user registers or the SPSR
+						mask = ALL_REGISTERS;
+					} else {
+						mask = ((instruction & 0x00200000) != 0 ? rn : 0) | (flags != 0 ? instruction & 0xFFFF : 0);
+					}
+					break;
+				case 0b101:
+					mask = (instruction & 0x01000000) != 0 ? 1 << 14 : 0;
+					break;
+				default:
+					mask = ALL_REGISTERS;
+					break;
+			}
+		}
+
+		return mask & ALL_REGISTERS;
+	}
+
+	private void put(int header, int a, int b, int c) {
+		if (this.channel != null && this.written - this.streamed == this.capacity) {
+			this.flush();
+		}
+
+		int position = (int) (this.written % this.capacity) * ENTRY_SIZE;
+		this.ring.putInt(position, header);
+		this.ring.putInt(position + 4, a);
+		this.ring.putInt(position + 8, b);
+		this.ring.putInt(position + 12, c);
+		this.written++;
+		this.oldest = Math.max(this.oldest, this.written - this.capacity);
+	}
+
+	private int getHeader(long entry) {
+		return this.ring.getInt((int) (entry % this.capacity) * ENTRY_SIZE);
+	}
+
+	private void visit(TraceReader.Visitor visitor, long entry) {
+		int position = (int) (entry % this.capacity) * ENTRY_SIZE;
+		TraceReader.visit(visitor, this.ring.getInt(position), this.ring.getInt(position + 4), this.ring.getInt(position + 8), this.ring.getInt(position + 12));
+	}
+
+	/**
+	 * Remove the last instruction from the ring, visiting its effects from the newest to the oldest and then the instruction itself
+	 * @return false if the ring doesn't hold the whole instruction anymore
+	 */
+	synchronized boolean undoLast(TraceReader.Visitor visitor) {
+		long entry = this.written - 1;
+		while (entry >= this.oldest && this.getHeader(entry) >>> 24 != INSTRUCTION) {
+			entry--;
+		}
+
+		if (entry < this.oldest) {
+			return false;
+		}
+
+		for (long effect = this.written - 1; effect >= entry; effect--) {
+			this.visit(visitor, effect);
+		}
+
+		int position = (int) (entry % this.capacity) * ENTRY_SIZE;
+		this.instructions = (this.ring.getInt(position + 4) & 0xFFFFFFFFL) | (long) this.ring.getInt(position + 8) << 32;
+		this.written = entry;
+		this.streamed = Math.min(this.streamed, entry);
+		return true;
+	}
+
+	/**
+	 * Empty the ring, the next instruction recorded gets this index
+	 */
+	synchronized void restart(long index) {
+		if (this.channel != null) {
+			this.flush();
+		}
+		this.oldest = this.written;
+		this.instructions = index;
+	}
+
+	/**
+	 * Write the entries which aren't in the file yet
+	 */
+	private void flush() {
+		try {
+			while (this.streamed < this.written) {
+				int start = (int) (this.streamed % this.capacity);
+				int count = (int) Math.min(this.written - this.streamed, this.capacity - start);
+
+				this.streamView.limit((start + count) * ENTRY_SIZE).position(start * ENTRY_SIZE);
+				while (this.streamView.hasRemaining()) {
+					this.channel.write(this.streamView);
+				}
+				this.streamed += count;
+			}
+		} catch (IOException e) {
+			System.out.println("[ERROR] The trace can't be written anymore: " + e.getMessage());
+			this.streamed = this.written;
+			try {
+				this.channel.close();
+			} catch (IOException ignored) {}
+			this.channel = null;
+		}
+	}
+
+	/**
+	 * @return Number of entries written since the beginning
+	 */
+	synchronized long getEntryCount() {
+		return this.written;
+	}
+
+	/**
+	 * Visit the entries written since this one, see getEntryCount
+	 * @return false if some of them aren't in the ring anymore, nothing is visited then
+	 */
+	synchronized boolean readSince(long entry, TraceReader.Visitor visitor) {
+		if (entry < this.oldest) {
+			return false;
+		}
+
+		for (; entry < this.written; entry++) {
+			this.visit(visitor, entry);
+		}
+		return true;
+	}
+
+	/**
+	 * @return Number of instructions recorded since the beginning
+	 */
+	public synchronized long getInstructionCount() {
+		return this.instructions;
+	}
+
+	/**
+	 * Visit the entries still in the ring, from the oldest complete instruction to the newest
+	 */
+	public synchronized void read(TraceReader.Visitor visitor) {
+		boolean started = false;
+
+		for (long entry = this.oldest; entry < this.written; entry++) {
+			// The effects at the beginning of the ring lost their instruction
+			started |= this.getHeader(entry) >>> 24 == INSTRUCTION;
+			if (started) {
+				this.visit(visitor, entry);
+			}
+		}
+	}
+}
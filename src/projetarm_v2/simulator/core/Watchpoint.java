@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A range of memory of the WatchpointManager, the program is paused when it accesses the range
+ */
+public class Watchpoint {
+	
+	public enum Kind {
+		READ,
+		WRITE,
+		/** Both reads and writes */
+		ACCESS;
+		
+		boolean matches(boolean write) {
+			return this == ACCESS || (this == WRITE) == write;
+		}
+	}
+	
+	private final long start;
+	private final long size;
+	private final Kind kind;
+	private final AtomicLong hitCount;
+	
+	public Watchpoint(long start, long size, Kind kind) {
+		if (start < 0 || size <= 0 || start + size > 0x100000000L) {
+			throw new IllegalArgumentException("The watchpoint doesn't fit in the 32 bits address space");
+		}
+		this.start = start;
+		this.size = size;
+		this.kind = kind;
+		this.hitCount = new AtomicLong(0);
+	}
+	
+	public long getStart() {
+		return this.start;
+	}
+	
+	public long getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * @return The first address after the range
+	 */
+	public long getEnd() {
+		return this.start + this.size;
+	}
+	
+	public Kind getKind() {
+		return this.kind;
+	}
+	
+	/**
+	 * @return How many times the program accessed the range
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+	
+	void hit() {
+		this.hitCount.incrementAndGet();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Watchpoint [%s 0x%x-0x%x]", this.kind, this.start, this.getEnd() - 1);
+	}
+}
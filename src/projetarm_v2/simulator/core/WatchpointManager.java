@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import unicorn.EventMemHook;
+import unicorn.Unicorn;
+
+/**
+ * Watchpoints on ranges of memory.
+ * While the Cpu runs, the pages holding a watched range lose the read or write permission in Unicorn, so that only
+ * the accesses to those pages go through the protection hooks, where the WatchpointTree finds the watchpoint hit.
+ * The other pages are accessed natively. The program is paused at the end of the block of instructions which hit the watchpoint.
+ */
+public class WatchpointManager {
+	private final Cpu cpu;
+	private final Unicorn u;
+	private final AtomicBitSet mappedPages;
+	private final List<Watchpoint> watchpoints; // Can be changed from any thread, even while the Cpu is running
+
+	private volatile WatchpointTree tree;
+	private volatile AtomicBitSet readPages; // The pages holding a range watched for reads
+	private volatile AtomicBitSet writePages; // The pages holding a range watched for writes
+	private final AtomicBitSet protectedPages; // The pages protected for the current run, only used by the thread running the Cpu
+	private final AtomicBoolean changed;
+	private volatile boolean active;
+
+	WatchpointManager(Cpu cpu, Unicorn u, AtomicBitSet mappedPages) {
+		this.cpu = cpu;
+		this.u = u;
+		this.mappedPages = mappedPages;
+		this.watchpoints = new CopyOnWriteArrayList<>();
+		this.protectedPages = new AtomicBitSet(mappedPages.size());
+		this.changed = new AtomicBoolean(false);
+		this.active = false;
+		this.rebuild();
+	}
+
+	/**
+	 * Watch a range of memory, a running program picks it up after its current slice
+	 */
+	public synchronized void add(Watchpoint watchpoint) {
+		this.watchpoints.add(watchpoint);
+		this.rebuild();
+	}
+
+	public synchronized void remove(Watchpoint watchpoint) {
+		this.watchpoints.remove(watchpoint);
+		this.rebuild();
+	}
+
+	public synchronized void clear() {
+		this.watchpoints.clear();
+		this.rebuild();
+	}
+
+	public List<Watchpoint> getWatchpoints() {
+		return List.copyOf(this.watchpoints);
+	}
+
+	private void rebuild() {
+		AtomicBitSet newReadPages = new AtomicBitSet(this.mappedPages.size());
+		AtomicBitSet newWritePages = new AtomicBitSet(this.mappedPages.size());
+
+		for (Watchpoint watchpoint : this.watchpoints) {
+			int first = (int) (watchpoint.getStart() >>> Ram.PAGE_SHIFT);
+			int last = (int) ((watchpoint.getEnd() - 1) >>> Ram.PAGE_SHIFT);
+
+			for (int index = first; index <= last; index++) {
+				if (watchpoint.getKind() != Watchpoint.Kind.WRITE) {
+					newReadPages.set(index);
+				}
+				if (watchpoint.getKind() != Watchpoint.Kind.READ) {
+					newWritePages.set(index);
+				}
+			}
+		}
+
+		this.readPages = newReadPages;
+		this.writePages = newWritePages;
+		this.tree = new WatchpointTree(this.watchpoints);
+		this.changed.set(true);
+	}
+
+	boolean isReadWatched(int pageIndex) {
+		return this.readPages.get(pageIndex);
+	}
+
+	/**
+	 * The Ram must not give the write permission back to such a page
+	 */
+	boolean isWriteWatched(int pageIndex) {
+		return this.writePages.get(pageIndex);
+	}
+
+	/**
+	 * Protect the watched pages, called once the Ram is attached
+	 */
+	void install() {
+		this.active = true;
+		this.protectedPages.clear();
+		this.changed.set(true);
+		this.update();
+	}
+
+	/**
+	 * Apply the changes made to the watchpoints since the last slice
+	 */
+	void update() {
+		if (!this.changed.getAndSet(false)) {
+			return;
+		}
+
+		AtomicBitSet reads = this.readPages;
+		AtomicBitSet writes = this.writePages;
+
+		// The pages which aren't watched anymore go back to the Ram's write barrier
+		for (int index = this.protectedPages.nextSetBit(0); index >= 0; index = this.protectedPages.nextSetBit(index + 1)) {
+			if (!reads.get(index) && !writes.get(index)) {
+				this.protect(index, Unicorn.UC_PROT_READ | Unicorn.UC_PROT_EXEC);
+				this.protectedPages.clear(index);
+			}
+		}
+
+		this.protectAll(reads);
+		this.protectAll(writes);
+	}
+
+	private void protectAll(AtomicBitSet pages) {
+		for (int index = pages.nextSetBit(0); index >= 0; index = pages.nextSetBit(index + 1)) {
+			if (this.mappedPages.get(index)) {
+				this.protect(index, this.getProtection(index));
+				this.protectedPages.set(index);
+			}
+		}
+	}
+
+	/**
+	 * Protect the watched pages which just got mapped in Unicorn
+	 */
+	void pageMapped(long pageAddress) {
+		int index = (int) (pageAddress >>> Ram.PAGE_SHIFT);
+
+		if (this.active && (this.isReadWatched(index) || this.isWriteWatched(index))) {
+			this.protect(index, this.getProtection(index));
+			this.protectedPages.set(index);
+		}
+	}
+
+	void uninstall() {
+		this.active = false;
+	}
+
+	/**
+	 * @return The permissions of a watched page, the write permission is given back by the Ram's write barrier
+	 */
+	int getProtection(int pageIndex) {
+		return this.isReadWatched(pageIndex) ? Unicorn.UC_PROT_EXEC : Unicorn.UC_PROT_READ | Unicorn.UC_PROT_EXEC;
+	}
+
+	private void protect(int pageIndex, int protection) {
+		synchronized (this.u) {
+			this.u.mem_protect((long) pageIndex << Ram.PAGE_SHIFT, Ram.CHUNK_SIZE, protection);
+		}
+	}
+
+	private void check(long address, int size, long value, boolean write) {
+		Watchpoint watchpoint = this.tree.find(address, address + size, write);
+
+		if (watchpoint == null) {
+			return;
+		}
+
+		watchpoint.hit();
+
+		if (write) {
+			System.out.format("[INFO] %s: 0x%x written @ 0x%x%n", watchpoint, value, address);
+		} else {
+			System.out.format("[INFO] %s: %d bytes read @ 0x%x%n", watchpoint, size, address);
+		}
+
+		this.cpu.pause();
+	}
+
+	EventMemHook getReadHook() {
+		return new WatchpointHook(this, false);
+	}
+
+	EventMemHook getWriteHook() {
+		return new WatchpointHook(this, true);
+	}
+
+	private class WatchpointHook implements EventMemHook {
+		private final WatchpointManager watchpointManager;
+		private final boolean write;
+
+		public WatchpointHook(WatchpointManager watchpointManager, boolean write) {
+			this.watchpointManager = watchpointManager;
+			this.write = write;
+		}
+
+		public boolean hook(Unicorn u, long address, int size, long value, Object user_data) {
+			this.watchpointManager.check(address, size, value, this.write);
+
+			// The Ram's write barrier decides if the write is allowed, only the watched pages are protected for reads
+			return this.write || this.watchpointManager.isReadWatched((int) ((address & 0xFFFFFFFFL) >>> Ram.PAGE_SHIFT));
+		}
+	}
+}
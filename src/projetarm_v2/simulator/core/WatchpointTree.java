@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Immutable interval tree of watchpoints. The watchpoints sorted by start address form an implicit
+ * balanced binary search tree, in which each node knows the highest end of its subtree.
+ */
+public final class WatchpointTree {
+	private final Watchpoint[] nodes;
+	private final long[] maxEnd;
+	
+	public WatchpointTree(Collection<Watchpoint> watchpoints) {
+		this.nodes = watchpoints.toArray(new Watchpoint[0]);
+		Arrays.sort(this.nodes, Comparator.comparingLong(Watchpoint::getStart));
+		this.maxEnd = new long[this.nodes.length];
+		this.build(0, this.nodes.length - 1);
+	}
+	
+	private long build(int low, int high) {
+		if (low > high) {
+			return Long.MIN_VALUE;
+		}
+		
+		int middle = (low + high) >>> 1;
+		this.maxEnd[middle] = Math.max(this.nodes[middle].getEnd(), Math.max(this.build(low, middle - 1), this.build(middle + 1, high)));
+		return this.maxEnd[middle];
+	}
+	
+	public boolean isEmpty() {
+		return this.nodes.length == 0;
+	}
+	
+	/**
+	 * @return The watchpoint with the lowest start address which overlaps [start, end[ and watches this kind of access, or null
+	 */
+	public Watchpoint find(long start, long end, boolean write) {
+		return this.find(0, this.nodes.length - 1, start, end, write);
+	}
+	
+	private Watchpoint find(int low, int high, long start, long end, boolean write) {
+		if (low > high) {
+			return null;
+		}
+		
+		int middle = (low + high) >>> 1;
+		
+		if (this.maxEnd[middle] <= start) { // Every range of this subtree ends before the access
+			return null;
+		}
+		
+		Watchpoint watchpoint = this.find(low, middle - 1, start, end, write);
+		if (watchpoint != null) {
+			return watchpoint;
+		}
+		
+		Watchpoint node = this.nodes[middle];
+		if (node.getStart() >= end) { // This node and its right subtree start after the access
+			return null;
+		}
+		if (node.getEnd() > start && node.getKind().matches(write)) {
+			return node;
+		}
+		
+		return this.find(middle + 1, high, start, end, write);
+	}
+}
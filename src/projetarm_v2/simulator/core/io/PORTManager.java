@@ -11,6 +11,7 @@ package projetarm_v2.simulator.core.io;
 import java.util.ArrayList;
 import java.util.List;
 
+import projetarm_v2.simulator.core.MemoryRegion;
 import projetarm_v2.simulator.core.Ram;
 
 public class PORTManager {
@@ -22,6 +23,18 @@ public class PORTManager {
 	private long firstPortAddress;
 	private long firstDirAddress;
 	
+	/**
+	 * @return The pages holding the ports and their direction registers, the guest's writes to them must be seen right away by the components
+	 */
+	public static List<MemoryRegion> getMemoryRegions() {
+		List<MemoryRegion> regions = new ArrayList<>();
+		
+		regions.add(new MemoryRegion("Ports", DEFAULT_PORT_ADDRESS, Ram.CHUNK_SIZE, MemoryRegion.Kind.MMIO));
+		regions.add(new MemoryRegion("Ports directions", DEFAULT_DIR_ADDRESS, Ram.CHUNK_SIZE, MemoryRegion.Kind.MMIO));
+		
+		return regions;
+	}
+	
 	public PORTManager(Ram ram) {
 		this.ram = ram;
 		this.clear();
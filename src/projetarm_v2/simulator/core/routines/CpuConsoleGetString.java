@@ -46,13 +46,18 @@ public class CpuConsoleGetString extends CpuRoutine {
 		
 		long address = (long) this.getRegister(0).getValue();
 		
+		StringBuilder input = new StringBuilder();
 		for(Character ch : this.consoleBuffer)
 		{
-			this.getRam().setByte(address,(byte)(char)ch);
-			address++;
+			input.append(ch);
 		}
-		this.getRam().setByte(address,(byte)0);
 		this.consoleBuffer.clear();
+		
+		byte[] bytes = new byte[input.length() + 1]; // The last byte stays at 0 to end the string
+		for (int i = 0; i < input.length(); i++) {
+			bytes[i] = (byte) input.charAt(i);
+		}
+		this.getRam().write(address, bytes);
 	}
 	
 	public boolean isWaitingForInput() {
@@ -9,8 +9,10 @@
 package projetarm_v2.simulator.core.routines;
 
 import projetarm_v2.simulator.core.Cpu;
+import projetarm_v2.simulator.core.Ram;
 
-import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 
 public class CpuGetFile extends CpuRoutine
@@ -35,11 +37,19 @@ public class CpuGetFile extends CpuRoutine
 		try {
 			String path = this.longToString(address);
 			System.out.println("[INFO] Reading " + path + " to 0x" + Long.toHexString(dest));
-			byte[] array = Files.readAllBytes(Path.of(path));
-			for(byte myByte: array)
-			{
-				this.getRam().setByte(dest,myByte);
-				dest++;
+			Path file = Path.of(path);
+			
+			if (dest % Ram.CHUNK_SIZE == 0) {
+				try {
+					this.getRam().mapFile(dest, file, false);
+					return;
+				} catch (IOException e) {
+					// The file can't be mapped privately (read-only file...), copy it instead
+				}
+			}
+			
+			try (FileChannel channel = FileChannel.open(file)) {
+				this.getRam().write(dest, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
 			}
 			
 		} catch(Exception e) {
@@ -15,8 +15,6 @@ import unicorn.CodeHook;
 import unicorn.Unicorn;
 
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
-import java.util.List;
 
 public abstract class CpuRoutine {
 
@@ -52,23 +50,7 @@ public abstract class CpuRoutine {
 	
 	protected String longToString(long address) throws UnsupportedEncodingException
 	{
-		int i= 0;
-		List<Byte> list = new ArrayList<>();
-		byte c = this.getRam().getByte(address++);
-
-		while (c != 0) {
-			list.add(c);
-			c = this.getRam().getByte(address++);
-		}
-		
-		byte[] array = new byte[list.size()];
-		
-		for (Byte current : list) {
-			array[i] = current;
-			i++;
-		}
-
-		return new String(array, "ASCII");
+		return new String(this.getRam().readString(address), "ASCII");
 	}
 	
 	private class RoutineHook implements CodeHook {
@@ -83,10 +65,12 @@ public abstract class CpuRoutine {
 				return;
 			}
 			
-			System.out.println("[INFO] System call " + this.cpuRoutine.getClass().getSimpleName()
-					+ " @ 0x" + Long.toHexString(this.cpuRoutine.getRoutineAddress()));
-			
-			this.cpuRoutine.primitive();
+			this.cpuRoutine.getCpu().runHostCall(() -> {
+				System.out.println("[INFO] System call " + this.cpuRoutine.getClass().getSimpleName()
+						+ " @ 0x" + Long.toHexString(this.cpuRoutine.getRoutineAddress()));
+				
+				this.cpuRoutine.primitive();
+			});
 			
 			this.cpuRoutine.getCpu().setCurrentAddress((long) this.cpuRoutine.getCpu().getRegister(14).getValue()-4);
 		}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2018-2019 Valentin D'Emmanuele, Gilles Mertens, Dylan Fraisse, Hugo Chemarin, Nicolas Gervasi
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package projetarm_v2.simulator.core.syscalls;
+
+import projetarm_v2.simulator.core.Cpu;
+
+/**
+ * End of the program, .stop and .end are turned into this call by the Preprocessor
+ */
+public class SVCCallExit extends SVCCall {
+
+	public static final int SVC_NUMBER = 0x18;
+
+	public SVCCallExit(Cpu cpu) {
+		super(cpu);
+	}
+
+	@Override
+	protected int getSvcNumber() {
+		return SVC_NUMBER;
+	}
+
+	@Override
+	protected void primitive() {
+		this.getCpu().finish();
+	}
+
+}
@@ -15,6 +15,7 @@ import java.util.Set;
 
 import org.reflections.Reflections;
 
+import projetarm_v2.simulator.core.BreakpointManager;
 import projetarm_v2.simulator.core.Cpu;
 import projetarm_v2.simulator.core.syscalls.io.FileDescriptors;
 import projetarm_v2.simulator.core.syscalls.io.OpenedFile;
@@ -81,7 +82,14 @@ public class SVCHandler {
 		
 		 public void hook(Unicorn u, int intno, Object user) {
 			if (intno == 2) {
-				int instruction = this.cpu.getRam().getValue(this.cpu.getCurrentAddress());
+				long address = this.cpu.getCurrentAddress();
+				if (this.cpu.isTurboMode()) {
+					// No instruction hook keeps the current address up to date, the svc is the instruction before the PC
+					address = this.cpu.readProgramCounter() - 4;
+					this.cpu.setCurrentAddress(address);
+				}
+				
+				int instruction = this.cpu.getRam().getValue(address);
 				int svcCallNo = (instruction << 8) >> 8;
 				
 				SVCCall call = interruptVector.get(svcCallNo);
@@ -91,7 +99,9 @@ public class SVCHandler {
 					return;
 				}
 				
-				call.run();
+				this.cpu.runHostCall(call::run);
+			} else if (intno == BreakpointManager.BKPT_INTERRUPT && this.cpu.getBreakpointManager().hit()) {
+				return;
 			} else {
 				System.out.println("[ERROR] Unknown CPU exception no" + intno);
 				System.out.println("[ERROR] EMULATION ABORTED!");
@@ -18,6 +18,7 @@ import com.googlecode.lanterna.terminal.*;
 
 import projetarm_v2.simulator.boilerplate.ArmSimulator;
 import projetarm_v2.simulator.boilerplate.InvalidInstructionException;
+import projetarm_v2.simulator.core.CpuState;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -148,6 +149,29 @@ public class Cli {
 
 			menuPanel.addComponent(new Label("|"));
 
+			menuPanel.addComponent(new Button("Profile", () -> {
+				try {
+					this.simulator.setProfilingEnabled(!this.simulator.isProfilingEnabled());
+					System.out.println("[INFO] Profiling " + (this.simulator.isProfilingEnabled() ? "enabled" : "disabled"));
+				} catch (IllegalStateException e) {
+					System.out.println("[ERROR] " + e.getMessage());
+				}
+			}));
+
+			menuPanel.addComponent(new Button("CSV", () -> {
+				try {
+					String path = new FileDialogBuilder().setTitle("Export Profile").setDescription("Choose a file")
+							.setActionLabel("Close").setActionLabel("Save").build().showDialog(gui).getAbsolutePath();
+					this.simulator.exportProfile(path);
+					System.out.println("[INFO] Profile written to " + path);
+				} catch (IOException | IllegalStateException e) {
+					System.out.println("[ERROR] " + e.getMessage());
+				} catch (Exception e) {
+				}
+			}));
+
+			menuPanel.addComponent(new Label("|"));
+
 			menuPanel.addComponent(new Button("Exit", () -> {
 				System.exit(0);
 			}));
@@ -262,10 +286,11 @@ public class Cli {
 	}
 
 	private void updateRegisters() {
+		CpuState state = this.simulator.getCpuState();
 		for (int i = 0; i < registers.length - 1; i++) {
-			registers[i].setText("0x" + Integer.toHexString(this.simulator.getRegisterValue(i)));
+			registers[i].setText("0x" + Integer.toHexString(state.getRegister(i)));
 		}
-		registers[16].setText(this.simulator.getCpu().getCPSR().toString());
+		registers[16].setText(state.getFlags());
 	}
 
 	private void updateGUI() {
@@ -45,9 +45,15 @@ public class ArmMenuBar {
 
     private MenuItem runMenuItem ;
     private MenuItem runStepMenuItem ;
+    private MenuItem stepBackMenuItem ;
+    private MenuItem reverseContinueMenuItem ;
+    private CheckMenuItem recordHistoryMenuItem ;
+    private CheckMenuItem profileMenuItem ;
+    private CheckMenuItem countCyclesMenuItem ;
     private MenuItem stopMenuItem ;
 
     private MenuItem preferences;
+    private CheckMenuItem diskCacheMenuItem ;
 
     private HashSet<MenuItem> disableInExecution;
     private HashSet<MenuItem> disableInEdition;
@@ -74,8 +80,9 @@ public class ArmMenuBar {
         this.save = new MenuItem("Save");
         this.saveAs = new MenuItem("Save As...");
         this.preferences = new MenuItem("Preferences");
+        this.diskCacheMenuItem = new CheckMenuItem("Keep Assembled Programs on Disk");
         this.exitMenu = new MenuItem("Exit");
-        fileMenu.getItems().addAll(neW, openFile, new SeparatorMenuItem(), save, saveAs,new SeparatorMenuItem(), preferences, new SeparatorMenuItem(), exitMenu);
+        fileMenu.getItems().addAll(neW, openFile, new SeparatorMenuItem(), save, saveAs,new SeparatorMenuItem(), preferences, diskCacheMenuItem, new SeparatorMenuItem(), exitMenu);
 
         //WINDOW
         this.newMemoryWindow = new MenuItem("new Memory");
@@ -88,9 +95,14 @@ public class ArmMenuBar {
         this.switchMode = new MenuItem("Switch Mode");
         this.runMenuItem = new MenuItem("Run");
         this.runStepMenuItem = new MenuItem("Run Step by Step");
+        this.stepBackMenuItem = new MenuItem("Step Back");
+        this.reverseContinueMenuItem = new MenuItem("Reverse Continue");
+        this.recordHistoryMenuItem = new CheckMenuItem("Record History");
+        this.profileMenuItem = new CheckMenuItem("Profile");
+        this.countCyclesMenuItem = new CheckMenuItem("Count Cycles (ARM7TDMI)");
         this.stopMenuItem = new MenuItem("Stop");
         this.reloadMenuItem = new MenuItem("Reload");
-        runMenu.getItems().addAll(this.switchMode, runMenuItem, runStepMenuItem, stopMenuItem, reloadMenuItem);
+        runMenu.getItems().addAll(this.switchMode, runMenuItem, runStepMenuItem, stopMenuItem, reloadMenuItem, new SeparatorMenuItem(), recordHistoryMenuItem, stepBackMenuItem, reverseContinueMenuItem, new SeparatorMenuItem(), profileMenuItem, countCyclesMenuItem);
 
         final MenuItem aboutMenu = new MenuItem("About");
         helpMenu.getItems().add(aboutMenu);
@@ -113,6 +125,8 @@ public class ArmMenuBar {
         disableInEdition.add(runMenuItem);
         disableInEdition.add(runStepMenuItem);
         disableInEdition.add(stopMenuItem);
+        disableInEdition.add(stepBackMenuItem);
+        disableInEdition.add(reverseContinueMenuItem);
         disableInEdition.add(reloadMenuItem);
 
         exitMenu.setOnAction(actionEvent -> Platform.exit());
@@ -192,6 +206,26 @@ public class ArmMenuBar {
         return runStepMenuItem;
     }
 
+    public MenuItem getStepBackMenuItem() {
+        return stepBackMenuItem;
+    }
+
+    public MenuItem getReverseContinueMenuItem() {
+        return reverseContinueMenuItem;
+    }
+
+    public CheckMenuItem getRecordHistoryMenuItem() {
+        return recordHistoryMenuItem;
+    }
+
+    public CheckMenuItem getProfileMenuItem() {
+        return profileMenuItem;
+    }
+
+    public CheckMenuItem getCountCyclesMenuItem() {
+        return countCyclesMenuItem;
+    }
+
     public MenuItem getStopMenuItem() {
         return stopMenuItem;
     }
@@ -200,6 +234,10 @@ public class ArmMenuBar {
         return preferences;
     }
 
+    public CheckMenuItem getDiskCacheMenuItem() {
+        return diskCacheMenuItem;
+    }
+
 	public MenuItem getNewInterpreterWindow() {
 		return newInterpreterWindow;
 	}
@@ -15,9 +15,11 @@ import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.Tooltip;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
 import org.dockfx.DockNode;
@@ -25,6 +27,7 @@ import projetarm_v2.simulator.boilerplate.ArmSimulator;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class CodeEditor {
 
@@ -36,6 +39,7 @@ public class CodeEditor {
     private TextFlow textFlow;
     private ObservableList<Node> visibleNodes;
     private List<Text> instructionsAsText;
+    private List<Rectangle> heatMarks;
 
     private ArmSimulator armSimulator;
 
@@ -105,8 +109,8 @@ public class CodeEditor {
      * @param line the line to highlight
      */
     public void highlightLine(int line) {
-        for (Text anInstructionsAsText : instructionsAsText) {
-            anInstructionsAsText.setFill(Color.BLACK);
+        for (int lineNumber = 1; lineNumber <= instructionsAsText.size(); lineNumber++) {
+            paintLine(lineNumber);
         }
 
         if(line > 0) {
@@ -115,6 +119,53 @@ public class CodeEditor {
     }
 
 
+    /**
+     * show the lines with a breakpoint in red
+     * @param line the line to paint
+     */
+    private void paintLine(int line) {
+        int address = armSimulator.getAddressFromLine(line);
+        boolean breakpoint = address != 0 && armSimulator.hasBreakpoint(address);
+        instructionsAsText.get(line - 1).setFill(breakpoint ? Color.RED : Color.BLACK);
+    }
+
+    /**
+     * color the mark in front of each line from yellow to red according to how many times it was executed
+     * @param lineCounts line => number of executions, see ArmSimulator.getLineCounts
+     */
+    public void showHeatmap(Map<Integer, Integer> lineCounts) {
+        if (heatMarks == null) {
+            return;
+        }
+
+        int max = lineCounts.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+
+        for (int lineNumber = 1; lineNumber <= heatMarks.size(); lineNumber++) {
+            int count = lineCounts.getOrDefault(lineNumber, 0);
+            Rectangle mark = heatMarks.get(lineNumber - 1);
+
+            if (count == 0) {
+                mark.setFill(Color.TRANSPARENT);
+                Tooltip.install(mark, null);
+            } else {
+                mark.setFill(Color.hsb(60 * (1 - (double) count / max), 1, 1));
+                Tooltip.install(mark, new Tooltip(count + " executions"));
+            }
+        }
+    }
+
+    /**
+     * set or remove the breakpoint of a line, the lines without instruction can't have one
+     * @param line the line clicked
+     */
+    private void toggleBreakpoint(int line) {
+        int address = armSimulator.getAddressFromLine(line);
+        if (address != 0) {
+            armSimulator.toggleBreakpoint(address);
+            paintLine(line);
+        }
+    }
+
     /**
      * set the code editor in execution or edition mode
      * @param executionMode
@@ -126,6 +177,7 @@ public class CodeEditor {
         if(executionMode){
             String[] instructionsAsStrings = this.textArea.getText().split("\\r?\\n");
             this.instructionsAsText = new ArrayList<>();
+            this.heatMarks = new ArrayList<>();
             this.textFlow.getChildren().clear();
             for (int lineNumber = 1; lineNumber <= instructionsAsStrings.length; lineNumber++) {
             	String address = "\t";
@@ -134,8 +186,12 @@ public class CodeEditor {
             		address = String.format("%08x:%08x", longAddress, armSimulator.getRamWord(longAddress));
             	}
                 String line = lineNumber + "\t" + address + "\t\t" + instructionsAsStrings[lineNumber-1] + '\n';
-                this.instructionsAsText.add(new Text(line));
-                this.textFlow.getChildren().add(this.instructionsAsText.get(lineNumber-1));
+                Text text = new Text(line);
+                int clickedLine = lineNumber;
+                text.setOnMouseClicked(event -> toggleBreakpoint(clickedLine));
+                this.instructionsAsText.add(text);
+                this.heatMarks.add(new Rectangle(8, 12, Color.TRANSPARENT));
+                this.textFlow.getChildren().addAll(this.heatMarks.get(lineNumber-1), this.instructionsAsText.get(lineNumber-1));
             }
             highlightLine(1);
             this.dockNode.setTitle("Simulator");
@@ -33,6 +33,8 @@ import org.dockfx.DockPane;
 import org.dockfx.DockPos;
 import projetarm_v2.simulator.boilerplate.ArmSimulator;
 import projetarm_v2.simulator.boilerplate.InvalidInstructionException;
+import projetarm_v2.simulator.core.AssemblyCache;
+import projetarm_v2.simulator.core.CycleCostTable;
 import projetarm_v2.simulator.core.routines.CpuConsoleClear;
 import projetarm_v2.simulator.core.routines.CpuConsoleGetString;
 import projetarm_v2.simulator.ui.javafx.ramview.RamView;
@@ -307,8 +309,7 @@ public class Gui extends Application {
 				executionMode = !executionMode;
 				if (executionMode) {
 					try {
-						simulator.resetState();
-						simulator.setProgram(codeEditor.getProgramAsString());
+						simulator.reload(codeEditor.getProgramAsString());
 						this.updateUI();
 					} catch (Exception e) {
 						System.out.println(e.getMessage());
@@ -348,6 +349,68 @@ public class Gui extends Application {
 				}).start();
 			}
 		});
+		this.armMenuBar.getRecordHistoryMenuItem().setOnAction(actionEvent -> {
+			try {
+				this.simulator.setHistoryEnabled(this.armMenuBar.getRecordHistoryMenuItem().isSelected());
+			} catch (IOException | IllegalStateException e) {
+				System.out.println("[ERROR] " + e.getMessage());
+				this.armMenuBar.getRecordHistoryMenuItem().setSelected(false);
+			}
+		});
+		this.armMenuBar.getProfileMenuItem().setOnAction(actionEvent -> {
+			try {
+				this.simulator.setProfilingEnabled(this.armMenuBar.getProfileMenuItem().isSelected());
+			} catch (IllegalStateException e) {
+				System.out.println("[ERROR] " + e.getMessage());
+				this.armMenuBar.getProfileMenuItem().setSelected(false);
+			}
+			updateUI();
+		});
+		this.armMenuBar.getCountCyclesMenuItem().setOnAction(actionEvent -> {
+			try {
+				this.simulator.setCycleCostTable(this.armMenuBar.getCountCyclesMenuItem().isSelected() ? CycleCostTable.arm7tdmi() : null);
+			} catch (IllegalStateException e) {
+				System.out.println("[ERROR] " + e.getMessage());
+				this.armMenuBar.getCountCyclesMenuItem().setSelected(false);
+			}
+			updateUI();
+		});
+		this.armMenuBar.getDiskCacheMenuItem().setOnAction(actionEvent -> {
+			AssemblyCache assemblyCache = this.simulator.getAssemblyCache();
+			if (assemblyCache != null) {
+				assemblyCache.setDirectory(this.armMenuBar.getDiskCacheMenuItem().isSelected() ? AssemblyCache.getDefaultDirectory() : null);
+			}
+		});
+		this.armMenuBar.getStepBackMenuItem().setOnAction(actionEvent -> {
+			if (executionMode && !(running.get())) {
+				new Thread(() -> {
+					this.running.set(true);
+					
+					this.setEditable(false);
+					this.simulator.stepBack();
+					this.setEditable(true);
+					
+					this.running.set(false);
+
+					updateUI();
+				}).start();
+			}
+		});
+		this.armMenuBar.getReverseContinueMenuItem().setOnAction(actionEvent -> {
+			if (executionMode && !(running.get())) {
+				new Thread(() -> {
+					this.running.set(true);
+					
+					this.setEditable(false);
+					this.simulator.reverseContinue();
+					this.setEditable(true);
+					
+					this.running.set(false);
+
+					updateUI();
+				}).start();
+			}
+		});
 		this.armMenuBar.getStopMenuItem().setOnAction(actionEvent -> {
 			simulator.interruptExecutionFlow();
 			updateUI();
@@ -356,8 +419,7 @@ public class Gui extends Application {
 		});
 		this.armMenuBar.getReloadMenuItem().setOnAction(actionEvent -> {
 			if (!running.get()) {
-				this.simulator.resetState();
-				this.simulator.setProgram(codeEditor.getProgramAsString());
+				this.simulator.reload(codeEditor.getProgramAsString());
 				updateUI();
 			}
 		});
@@ -503,8 +565,10 @@ public class Gui extends Application {
 				ledView.refresh();
 			}
 
-			if (this.executionMode && !this.isInterpreterMode)
+			if (this.executionMode && !this.isInterpreterMode) {
 				this.codeEditor.highlightLine(this.simulator.getCurrentLine());
+				this.codeEditor.showHeatmap(this.simulator.getLineCounts());
+			}
 
 			for (EightSegmentDisplay eightSeg : this.eightSegmentDisplays){
 				eightSeg.refresh();
@@ -23,6 +23,7 @@ import javafx.scene.layout.Pane;
 import org.dockfx.DockNode;
 import projetarm_v2.gpl.TextFieldTableCellFixed;
 import projetarm_v2.simulator.boilerplate.ArmSimulator;
+import projetarm_v2.simulator.core.CpuState;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -49,6 +50,10 @@ public class RegistersView {
     private RegisterObjectView flagHex;
     private RegisterObjectView flagSigDec;
     private RegisterObjectView flagDec;
+    
+    private RegisterObjectView cyclesHex;
+    private RegisterObjectView cyclesSigDec;
+    private RegisterObjectView cyclesDec;
 	
 	private TableView<RegisterObjectView> tableHex;
 	private TableView<RegisterObjectView> tableSigDec;
@@ -253,6 +258,8 @@ public class RegistersView {
         this.registersSigDec = FXCollections.observableArrayList();
         this.registersDec = FXCollections.observableArrayList();
         
+        CpuState state = simulator.getCpuState();
+        
         for (int i = 0; i < 16; i++) {
         	String nameRegister = "R" + i;
         	
@@ -267,24 +274,32 @@ public class RegistersView {
         			nameRegister += " (PC)";
         	}
         	
-        	String registerHex = String.format("0x%08x", simulator.getRegisterValue(i));	
+        	String registerHex = String.format("0x%08x", state.getRegister(i));	
   		   	this.registersHex.add(new RegisterObjectView(i, nameRegister, registerHex));
   		   	
-		   	String registerDec = String.format("%s", Integer.toUnsignedString(simulator.getRegisterValue(i)));
+		   	String registerDec = String.format("%s", Integer.toUnsignedString(state.getRegister(i)));
   		   	this.registersDec.add(new RegisterObjectView(i, nameRegister, registerDec));
   		   	
-  		   	String registerSigDec = fmt.format(simulator.getRegisterValue(i));
+  		   	String registerSigDec = fmt.format(state.getRegister(i));
 		  	this.registersSigDec.add(new RegisterObjectView(i, nameRegister, registerSigDec));
   		}
         
-        this.flagHex = new RegisterObjectView(17, "[FLAGS]",simulator.getCpu().getCPSR().toString());
-        this.flagSigDec = new RegisterObjectView(17, "[FLAGS]",simulator.getCpu().getCPSR().toString());
-        this.flagDec = new RegisterObjectView(17, "[FLAGS]",simulator.getCpu().getCPSR().toString());
+        this.flagHex = new RegisterObjectView(17, "[FLAGS]", state.getFlags());
+        this.flagSigDec = new RegisterObjectView(17, "[FLAGS]", state.getFlags());
+        this.flagDec = new RegisterObjectView(17, "[FLAGS]", state.getFlags());
 
         this.registersHex.add(flagHex);
         this.registersSigDec.add(flagSigDec);
         this.registersDec.add(flagDec);       
         
+        this.cyclesHex = new RegisterObjectView(18, "[CYCLES]", String.format("0x%x", simulator.getCycles()));
+        this.cyclesSigDec = new RegisterObjectView(18, "[CYCLES]", Long.toString(simulator.getCycles()));
+        this.cyclesDec = new RegisterObjectView(18, "[CYCLES]", Long.toString(simulator.getCycles()));
+
+        this.registersHex.add(cyclesHex);
+        this.registersSigDec.add(cyclesSigDec);
+        this.registersDec.add(cyclesDec);
+        
     	this.tableHex.setItems(this.registersHex);
         this.tableSigDec.setItems(this.registersSigDec);
         this.tableDec.setItems(this.registersDec);
@@ -345,16 +360,22 @@ public class RegistersView {
 	 * updates the registers in the register view
 	 */
 	public void updateRegisters(){
+		// A single snapshot, so that all the registers come from the same instruction
+		CpuState state = simulator.getCpuState();
 
     	for (int i = 0; i < 16; i++) {
-    		this.registersHex.get(i).setValueRegister(String.format("0x%08x", simulator.getRegisterValue(i)));
-    		this.registersDec.get(i).setValueRegister(String.format("%s", Integer.toUnsignedString(simulator.getRegisterValue(i))));
-    		this.registersSigDec.get(i).setValueRegister(fmt.format(simulator.getRegisterValue(i)));
+    		this.registersHex.get(i).setValueRegister(String.format("0x%08x", state.getRegister(i)));
+    		this.registersDec.get(i).setValueRegister(String.format("%s", Integer.toUnsignedString(state.getRegister(i))));
+    		this.registersSigDec.get(i).setValueRegister(fmt.format(state.getRegister(i)));
     	}
          
-    	this.flagHex.setValueRegister(simulator.getCpu().getCPSR().toString());
-        this.flagSigDec.setValueRegister(simulator.getCpu().getCPSR().toString());
-        this.flagDec.setValueRegister(simulator.getCpu().getCPSR().toString());
+    	this.flagHex.setValueRegister(state.getFlags());
+        this.flagSigDec.setValueRegister(state.getFlags());
+        this.flagDec.setValueRegister(state.getFlags());
+        
+        this.cyclesHex.setValueRegister(String.format("0x%x", simulator.getCycles()));
+        this.cyclesSigDec.setValueRegister(Long.toString(simulator.getCycles()));
+        this.cyclesDec.setValueRegister(Long.toString(simulator.getCycles()));
 
         refreshColumnData();
     }
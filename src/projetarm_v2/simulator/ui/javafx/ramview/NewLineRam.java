@@ -22,6 +22,7 @@ public class NewLineRam {
 	private OutputType type;
 	
 	private String[] cases;
+	private byte[] bytes;
 
 	DecimalFormat format;
 
@@ -42,6 +43,9 @@ public class NewLineRam {
 
 		this.format = new DecimalFormat("+#;-#");
 
+		// The whole line is read at once so that it is consistent while the Cpu is running
+		this.bytes = ram.read(offset, this.cases.length * showType.toOffset());
+
 		for (int i = 0; i < this.cases.length; i++) {
 			cases[i] = this.get2(i);
 		}
@@ -102,17 +106,22 @@ public class NewLineRam {
 	
 	public String get2(int index) {
 		int rs;
+		int i = index*this.showType.toOffset();
 
 		switch(this.showType) {
-			case WORD: rs = ram.getValue(this.firstAddress+index*this.showType.toOffset()); break;
-			case HALFWORD: rs = ((int)ram.getHWord(this.firstAddress+index*this.showType.toOffset())) & 0xFFFF; break;
+			case WORD: rs = (bytes[i] & 0xFF) | (bytes[i+1] & 0xFF) << 8 | (bytes[i+2] & 0xFF) << 16 | (bytes[i+3] & 0xFF) << 24; break;
+			case HALFWORD: rs = (bytes[i] & 0xFF) | (bytes[i+1] & 0xFF) << 8; break;
 			default:
-			case BYTE: rs = (int)ram.getByte(this.firstAddress+index*this.showType.toOffset()) & 0xFF; break;
+			case BYTE: rs = bytes[i] & 0xFF; break;
 		}
 
 		return asString(rs);
 	}
 	
+	public int getFirstAddress() {
+		return this.firstAddress;
+	}
+	
 	public String getLine() {
 		return "[0x"+Integer.toHexString(firstAddress)+"]";
 	}
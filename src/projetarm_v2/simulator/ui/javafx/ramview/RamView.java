@@ -22,6 +22,7 @@ import org.dockfx.DockNode;
 import projetarm_v2.gpl.TextFieldTableCellFixed;
 import projetarm_v2.simulator.boilerplate.ArmSimulator;
 import projetarm_v2.simulator.core.Ram;
+import projetarm_v2.simulator.core.Watchpoint;
 import projetarm_v2.simulator.ui.javafx.FormatException;
 import projetarm_v2.simulator.ui.javafx.Gui;
 
@@ -111,10 +112,44 @@ public class RamView {
         });
         
         loadButonsEvents();
+        loadContextMenu();
         
         this.refresh();
     }
 
+    /**
+     * right-click on a cell to pause the program when it accesses the cell
+     */
+    private void loadContextMenu() {
+        MenuItem breakOnWrite = new MenuItem("Break on write");
+        breakOnWrite.setOnAction(actionEvent -> watchSelectedCell(Watchpoint.Kind.WRITE));
+        MenuItem breakOnRead = new MenuItem("Break on read");
+        breakOnRead.setOnAction(actionEvent -> watchSelectedCell(Watchpoint.Kind.READ));
+        MenuItem breakOnAccess = new MenuItem("Break on access");
+        breakOnAccess.setOnAction(actionEvent -> watchSelectedCell(Watchpoint.Kind.ACCESS));
+        MenuItem removeWatchpoints = new MenuItem("Remove all watchpoints");
+        removeWatchpoints.setOnAction(actionEvent -> this.simulator.clearWatchpoints());
+
+        this.tableView.setContextMenu(new ContextMenu(breakOnWrite, breakOnRead, breakOnAccess, new SeparatorMenuItem(), removeWatchpoints));
+    }
+
+    /**
+     * add a watchpoint on the selected cell, with the size of the cells being displayed
+     * @param kind the accesses watched
+     */
+    private void watchSelectedCell(Watchpoint.Kind kind) {
+        TablePosition<?, ?> position = this.tableView.getFocusModel().getFocusedCell();
+        if (position == null || position.getRow() < 0 || position.getColumn() < 1) { // the first column holds the addresses
+            return;
+        }
+
+        int size = this.UneSuperImplemFournieParValentinLeBg.getShowType().toOffset();
+        int address = this.tableView.getItems().get(position.getRow()).getFirstAddress() + (position.getColumn() - 1) * size;
+
+        Watchpoint watchpoint = this.simulator.addWatchpoint(address, size, kind);
+        System.out.println("[INFO] " + watchpoint + " added");
+    }
+
     /**
      * refresh the ram values displayed
      */
@@ -0,0 +1,209 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.ArmAssemblerBackend;
+
+/**
+ * The encodings are the ones of kstool, a null result leaves the assembly to it
+ */
+class ArmAssemblerBackendTdd {
+	private ArmAssemblerBackend backend;
+
+	@BeforeEach
+	public void Test() {
+		this.backend = new ArmAssemblerBackend();
+	}
+
+	/**
+	 * @return The little endian words of the machine code in hexadecimal, or null
+	 */
+	private String assemble(String assembly, long startingAddress) {
+		byte[] bytes = this.backend.assemble(assembly, startingAddress);
+		if (bytes == null) {
+			return null;
+		}
+
+		StringBuilder words = new StringBuilder();
+		for (int i = 0; i < bytes.length; i += 4) {
+			int word = 0;
+			for (int j = Math.min(3, bytes.length - i - 1); j >= 0; j--) {
+				word = word << 8 | bytes[i + j] & 0xFF;
+			}
+			words.append(String.format(i == 0 ? "%08X" : " %08X", word));
+		}
+		return words.toString();
+	}
+
+	private String assemble(String assembly) {
+		return this.assemble(assembly, 0);
+	}
+
+	@Test
+	public void testModifiedImmediates() {
+		assertEquals("E3A00001", assemble("mov r0, #1"));
+		assertEquals("E3A004FF", assemble("mov r0, #0xFF000000"));
+		assertEquals("E3A00FFF", assemble("mov r0, #0x3FC"));
+		assertEquals("E3A002FF", assemble("mov r0, #0xF000000F"));
+		assertEquals("E2810F41", assemble("add r0, r1, #0x104"));
+		assertEquals("E2032CFF", assemble("and r2, r3, #0xFF00"));
+		assertEquals("E2900001", assemble("adds r0, r0, #1"));
+		assertEquals("E24DD008", assemble("sub sp, sp, #8"));
+		assertEquals("E2800001", assemble("add r0, #1"));
+		assertEquals("E350000A", assemble("cmp r0, #10"));
+		assertEquals("E3300001", assemble("teq r0, #1"));
+		assertEquals("E3010234", assemble("movw r0, #0x1234"));
+		assertEquals("E3410234", assemble("movt r0, #0x1234"));
+	}
+
+	@Test
+	public void testShiftedRegisters() {
+		assertEquals("E0810002", assemble("add r0, r1, r2"));
+		assertEquals("E0810182", assemble("add r0, r1, r2, lsl #3"));
+		assertEquals("E04100A2", assemble("sub r0, r1, r2, lsr #1"));
+		assertEquals("E1810352", assemble("orr r0, r1, r2, asr r3"));
+		assertEquals("E0210262", assemble("eor r0, r1, r2, ror #4"));
+		assertEquals("E1A00101", assemble("mov r0, r1, lsl #2"));
+		assertEquals("E1A00211", assemble("mov r0, r1, lsl r2"));
+		assertEquals("E1A00061", assemble("mov r0, r1, rrx"));
+		assertEquals("E1E00001", assemble("mvn r0, r1"));
+		assertEquals("E1A00101", assemble("lsl r0, r1, #2"));
+		assertEquals("E1A00061", assemble("rrx r0, r1"));
+		assertEquals("E1A00041", assemble("asr r0, r1, #32"));
+		assertEquals("E1A00021", assemble("lsr r0, r1, #32"));
+	}
+
+	@Test
+	public void testConditionsAndFlags() {
+		assertEquals("01B00001", assemble("movseq r0, r1"));
+		assertEquals("1A000000 02800001", assemble("bne l;addeq r0, r0, #1;l:"));
+		assertEquals("9AFFFFFF", assemble("bls x;x:"));
+		assertEquals("E0000291", assemble("mul r0, r1, r2"));
+		assertEquals("E0203291", assemble("mla r0, r1, r2, r3"));
+		assertEquals("E0810392", assemble("umull r0, r1, r2, r3"));
+		assertEquals("EF000018", assemble("svc #0x18"));
+	}
+
+	@Test
+	public void testWordAndByteTransfers() {
+		assertEquals("E5910000", assemble("ldr r0, [r1]"));
+		assertEquals("E5910004", assemble("ldr r0, [r1, #4]"));
+		assertEquals("E5110004", assemble("ldr r0, [r1, #-4]"));
+		assertEquals("E5110000", assemble("ldr r0, [r1, #-0]"));
+		assertEquals("E5A10004", assemble("str r0, [r1, #4]!"));
+		assertEquals("E4910004", assemble("ldr r0, [r1], #4"));
+		assertEquals("E4110004", assemble("ldr r0, [r1], #-4"));
+		assertEquals("E7910002", assemble("ldr r0, [r1, r2]"));
+		assertEquals("E7110002", assemble("ldr r0, [r1, -r2]"));
+		assertEquals("E7910102", assemble("ldr r0, [r1, r2, lsl #2]"));
+		assertEquals("E7A10002", assemble("str r0, [r1, r2]!"));
+		assertEquals("E6910002", assemble("ldr r0, [r1], r2"));
+		assertEquals("E61100C2", assemble("ldr r0, [r1], -r2, asr #1"));
+		assertEquals("E5D10001", assemble("ldrb r0, [r1, #1]"));
+		assertEquals("E5C10000", assemble("strb r0, [r1]"));
+	}
+
+	@Test
+	public void testHalfwordAndSignedTransfers() {
+		assertEquals("E1D100B0", assemble("ldrh r0, [r1]"));
+		assertEquals("E1C100B2", assemble("strh r0, [r1, #2]"));
+		assertEquals("E15101B2", assemble("ldrh r0, [r1, #-0x12]"));
+		assertEquals("E1F100B4", assemble("ldrh r0, [r1, #4]!"));
+		assertEquals("E0D100B4", assemble("ldrh r0, [r1], #4"));
+		assertEquals("E19100B2", assemble("ldrh r0, [r1, r2]"));
+		assertEquals("E11100B2", assemble("ldrh r0, [r1, -r2]"));
+		assertEquals("E09100B2", assemble("ldrh r0, [r1], r2"));
+		assertEquals("E1D100D1", assemble("ldrsb r0, [r1, #1]"));
+		assertEquals("E1B100D2", assemble("ldrsb r0, [r1, r2]!"));
+		assertEquals("E1D100F0", assemble("ldrsh r0, [r1]"));
+		// The halfword transfers can't shift their offset register
+		assertNull(assemble("ldrh r0, [r1, r2, lsl #1]"));
+	}
+
+	@Test
+	public void testMultipleTransfers() {
+		assertEquals("E8900006", assemble("ldm r0, {r1, r2}"));
+		assertEquals("E8B0000E", assemble("ldmia r0!, {r1-r3}"));
+		assertEquals("E9900002", assemble("ldmib r0, {r1}"));
+		assertEquals("E8100002", assemble("ldmda r0, {r1}"));
+		assertEquals("E9300006", assemble("ldmdb r0!, {r1, r2}"));
+		assertEquals("E8800002", assemble("stmia r0, {r1}"));
+		assertEquals("E9A00002", assemble("stmib r0!, {r1}"));
+		assertEquals("E8000002", assemble("stmda r0, {r1}"));
+		assertEquals("E92D5FFF", assemble("stmdb sp!, {r0-r12, lr}"));
+		assertEquals("E8D00002", assemble("ldm r0, {r1}^"));
+	}
+
+	@Test
+	public void testStackAddressingModes() {
+		assertEquals("E92D0010", assemble("stmfd sp!, {r4}"));
+		assertEquals("E8BD0010", assemble("ldmfd sp!, {r4}"));
+		assertEquals("E8800002", assemble("stmea r0, {r1}"));
+		assertEquals("E9100002", assemble("ldmea r0, {r1}"));
+		assertEquals("E9800002", assemble("stmfa r0, {r1}"));
+		assertEquals("E8100002", assemble("ldmfa r0, {r1}"));
+		assertEquals("E8000002", assemble("stmed r0, {r1}"));
+		assertEquals("E9900002", assemble("ldmed r0, {r1}"));
+	}
+
+	@Test
+	public void testPushPop() {
+		assertEquals("E92D4010", assemble("push {r4, lr}"));
+		assertEquals("E8BD8010", assemble("pop {r4, pc}"));
+		// A single register is pushed and popped with STR and LDR
+		assertEquals("E52DE004", assemble("push {lr}"));
+		assertEquals("E49DF004", assemble("pop {pc}"));
+		assertEquals("E52D0004", assemble("push {r0}"));
+		assertEquals("E49D0004", assemble("pop {r0}"));
+	}
+
+	@Test
+	public void testLiteralPool() {
+		assertEquals("E59F0000 E12FFF1E 12345678", assemble("ldr r0, =0x12345678;bx lr", 0x1000));
+		assertEquals("E59F0004 E12FFF1E 00000007 00001008", assemble("ldr r0, =s;bx lr;s: .word 7", 0x1000));
+		assertEquals("E59F0004 E59F1004 E12FFF1E 00000001 00000002", assemble("ldr r0, =1;ldr r1, =2;bx lr", 0x1000));
+	}
+
+	@Test
+	public void testBranches() {
+		assertEquals("EAFFFFFE", assemble("l: b l"));
+		assertEquals("EB000002 E1A00000 E1A00000 E1A00000 E1A00000", assemble("bl f;mov r0,r0;mov r0,r0;mov r0,r0;f:mov r0,r0"));
+		assertEquals("EBFFFFFE", assemble("bl #0x1000", 0x1000));
+		assertEquals("E12FFF1E", assemble("bx lr"));
+		assertEquals("E12FFF33", assemble("blx r3"));
+		assertEquals("FA07BBFE", assemble("blx #0x1F0000", 0x1000));
+		assertEquals("FBFFFFFE", assemble("blx #0x1002", 0x1000));
+	}
+
+	@Test
+	public void testBranchRanges() {
+		assertEquals("EA7FFFFF", assemble("b #0x2000004"));
+		assertNull(assemble("b #0x2000008"));
+		assertEquals("EA800000", assemble("b #8", 0x2000000));
+		assertNull(assemble("b #4", 0x2000000));
+		assertNull(assemble("bl #0x1003", 0x1000));
+		assertNull(assemble("blx #0x1001", 0x1000));
+		assertNull(assemble("blxeq #0x2000", 0x1000));
+	}
+
+	@Test
+	public void testData() {
+		assertEquals("01006261", assemble(".asciz \"ab\";.byte 1"));
+		assertEquals("", assemble(""));
+	}
+
+	@Test
+	public void testLeftToKstool() {
+		// Keystone encodes it with MVN
+		assertNull(assemble("mov r0, #-1"));
+		assertNull(assemble("mov r0, #0x101"));
+		assertNull(assemble("nop"));
+		assertNull(assemble("cmps r0, #1"));
+		assertNull(assemble("foo r0"));
+		assertNull(assemble("b undefined"));
+		assertNull(assemble(".asciz \"a\";.align 2"));
+	}
+}
@@ -0,0 +1,106 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.AssemblyCache;
+import projetarm_v2.simulator.core.Listing;
+
+class AssemblyCacheTdd {
+	private Path directory;
+
+	@BeforeEach
+	public void Test() throws IOException {
+		this.directory = Files.createTempDirectory("assembly-cache");
+	}
+
+	private static Listing listing(int value) {
+		return new Listing(new byte[] {(byte) value, 0, (byte) 0xa0, (byte) 0xe3}, new long[] {0x1000, 0x1004}, new int[] {4, 0});
+	}
+
+	private static long fileCount(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+	@Test
+	public void testLeastRecentlyUsed() {
+		AssemblyCache cache = new AssemblyCache("v1", 2, null);
+
+		cache.put("mov r0,#1", 0x1000, listing(1));
+		cache.put("mov r0,#2", 0x1000, listing(2));
+		assertNotNull(cache.get("mov r0,#1", 0x1000));
+
+		// mov r0,#2 is now the least recently used
+		cache.put("mov r0,#3", 0x1000, listing(3));
+		assertNull(cache.get("mov r0,#2", 0x1000));
+		assertNotNull(cache.get("mov r0,#1", 0x1000));
+		assertNotNull(cache.get("mov r0,#3", 0x1000));
+
+		cache.clear();
+		assertNull(cache.get("mov r0,#1", 0x1000));
+	}
+
+	@Test
+	public void testKeys() {
+		AssemblyCache cache = new AssemblyCache("v1", 4, null);
+		Listing listing = listing(1);
+
+		cache.put("mov r0,#1", 0x1000, listing);
+		assertSame(listing, cache.get("mov r0,#1", 0x1000));
+		assertNull(cache.get("mov r0,#1", 0x2000));
+		assertNull(cache.get("mov r0,#1;", 0x1000));
+	}
+
+	@Test
+	public void testInvalidCapacity() {
+		assertThrows(IllegalArgumentException.class, () -> new AssemblyCache("v1", 0, null));
+	}
+
+	@Test
+	public void testDisk() throws IOException {
+		new AssemblyCache("v1", 4, this.directory).put("mov r0,#1", 0x1000, listing(1));
+		assertEquals(1, fileCount(this.directory));
+
+		Listing listing = new AssemblyCache("v1", 4, this.directory).get("mov r0,#1", 0x1000);
+		assertNotNull(listing);
+		assertArrayEquals(listing(1).getBinary(), listing.getBinary());
+		assertEquals(2, listing.getLineCount());
+		assertEquals(0x1004, listing.getAddress(2));
+		assertEquals(4, listing.getLength(1));
+		assertEquals(0, listing.getLength(2));
+
+		// Another version of the assembler doesn't see the listings of this one
+		assertNull(new AssemblyCache("v2", 4, this.directory).get("mov r0,#1", 0x1000));
+	}
+
+	@Test
+	public void testMemoryOnlyUntilDirectorySet() throws IOException {
+		AssemblyCache cache = new AssemblyCache("v1", 4, null);
+
+		cache.put("mov r0,#1", 0x1000, listing(1));
+		assertEquals(0, fileCount(this.directory));
+
+		cache.setDirectory(this.directory);
+		cache.put("mov r0,#2", 0x1000, listing(2));
+		assertEquals(1, fileCount(this.directory));
+	}
+
+	@Test
+	public void testCorruptedFile() throws IOException {
+		new AssemblyCache("v1", 4, this.directory).put("mov r0,#1", 0x1000, listing(1));
+
+		try (Stream<Path> files = Files.list(this.directory)) {
+			Files.write(files.findFirst().get(), new byte[] {0, 0, 0, 9});
+		}
+		assertNull(new AssemblyCache("v1", 4, this.directory).get("mov r0,#1", 0x1000));
+	}
+}
@@ -0,0 +1,91 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.AtomicBitSet;
+
+class AtomicBitSetTdd {
+
+	@Test
+	public void testSetGetClear() {
+		AtomicBitSet bits = new AtomicBitSet(130);
+
+		assertTrue(bits.isEmpty());
+		bits.set(0);
+		bits.set(63);
+		bits.set(64);
+		bits.set(129);
+		bits.set(64);
+
+		assertTrue(bits.get(63));
+		assertTrue(bits.get(64));
+		assertFalse(bits.get(65));
+		assertEquals(4, bits.cardinality());
+
+		assertTrue(bits.getAndClear(64));
+		assertFalse(bits.getAndClear(64));
+		bits.clear(129);
+		assertEquals(2, bits.cardinality());
+
+		bits.clear();
+		assertTrue(bits.isEmpty());
+		assertEquals(130, bits.size());
+	}
+
+	@Test
+	public void testNextSetBit() {
+		AtomicBitSet bits = new AtomicBitSet(200);
+		bits.set(5);
+		bits.set(64);
+		bits.set(199);
+
+		assertEquals(5, bits.nextSetBit(0));
+		assertEquals(5, bits.nextSetBit(5));
+		assertEquals(64, bits.nextSetBit(6));
+		assertEquals(199, bits.nextSetBit(65));
+		assertEquals(-1, bits.nextSetBit(200));
+		assertEquals(-1, new AtomicBitSet(200).nextSetBit(0));
+	}
+
+	@Test
+	public void testNextClearBit() {
+		AtomicBitSet bits = new AtomicBitSet(130);
+		for (int i = 0; i < 70; i++) {
+			bits.set(i);
+		}
+
+		assertEquals(70, bits.nextClearBit(0));
+		assertEquals(71, bits.nextClearBit(71));
+
+		for (int i = 70; i < 130; i++) {
+			bits.set(i);
+		}
+		// The bits past the size don't count as clear
+		assertEquals(130, bits.nextClearBit(0));
+		assertEquals(130, bits.nextClearBit(130));
+	}
+
+	@Test
+	public void testConcurrentSets() throws InterruptedException {
+		AtomicBitSet bits = new AtomicBitSet(4096);
+		Thread[] threads = new Thread[4];
+
+		for (int t = 0; t < threads.length; t++) {
+			int first = t;
+			threads[t] = new Thread(() -> {
+				for (int i = first; i < 4096; i += threads.length) {
+					bits.set(i);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// The threads set neighbouring bits of the same words, none of them is lost
+		assertEquals(4096, bits.cardinality());
+	}
+}
@@ -0,0 +1,75 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.boilerplate.ArmSimulator;
+import projetarm_v2.simulator.core.Breakpoint;
+import projetarm_v2.simulator.core.InvalidExpressionException;
+
+class BreakpointTdd {
+	private static final String LOOP = "mov r0,#0; loop: add r0,r0,#1; cmp r0,#10; bne loop";
+
+	@Test
+	public void testBreakpoint() {
+		Breakpoint breakpoint = new Breakpoint(0x100001000L, "  r0 == 5 ", 0);
+
+		assertEquals(0x1000, breakpoint.getAddress());
+		assertEquals("r0 == 5", breakpoint.getCondition());
+		assertEquals(1, breakpoint.getHitTarget());
+		assertEquals(0, breakpoint.getHitCount());
+
+		assertNull(new Breakpoint(0x1000, " ", 1).getCondition());
+		assertThrows(InvalidExpressionException.class, () -> new Breakpoint(0x1000, "r0 ==", 1));
+	}
+
+	@Test
+	public void testStopAndResume() {
+		ArmSimulator simulator = new ArmSimulator();
+		long start = simulator.getStartingAddress();
+
+		simulator.setProgram("mov r0,#1; mov r0,#2; mov r0,#3");
+		assertTrue(simulator.toggleBreakpoint(start + 4));
+		simulator.run();
+
+		assertTrue(simulator.isPaused());
+		assertEquals(1, simulator.getRegisterValue(0));
+
+		simulator.resume();
+		assertEquals(3, simulator.getRegisterValue(0));
+		assertFalse(simulator.toggleBreakpoint(start + 4));
+		assertFalse(simulator.hasBreakpoint(start + 4));
+	}
+
+	@Test
+	public void testCondition() {
+		ArmSimulator simulator = new ArmSimulator();
+		long start = simulator.getStartingAddress();
+
+		simulator.setProgram(LOOP);
+		simulator.setBreakpoint(start + 4, "r0 == 5", 1);
+		simulator.run();
+
+		assertTrue(simulator.isPaused());
+		assertEquals(5, simulator.getRegisterValue(0));
+		assertEquals(1, simulator.getBreakpoint(start + 4).getHitCount());
+	}
+
+	@Test
+	public void testHitTarget() {
+		ArmSimulator simulator = new ArmSimulator();
+		long start = simulator.getStartingAddress();
+
+		simulator.setProgram(LOOP);
+		simulator.setBreakpoint(start + 4, null, 3);
+		simulator.run();
+
+		// Stopped before the third add
+		assertTrue(simulator.isPaused());
+		assertEquals(2, simulator.getRegisterValue(0));
+
+		simulator.resume();
+		assertEquals(3, simulator.getRegisterValue(0));
+	}
+}
@@ -0,0 +1,75 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static projetarm_v2.simulator.core.CycleCostTable.InstructionClass.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.CycleCostTable;
+import projetarm_v2.simulator.core.CycleCostTable.InstructionClass;
+
+class CycleCostTableTdd {
+
+	@Test
+	public void testDataProcessing() {
+		assertEquals(ALU, CycleCostTable.classify(0xE3A00001)); // mov r0, #1
+		assertEquals(ALU, CycleCostTable.classify(0xE1A00101)); // mov r0, r1, lsl #2
+		assertEquals(ALU, CycleCostTable.classify(0x01B00001)); // movseq r0, r1
+		assertEquals(ALU, CycleCostTable.classify(0xE350000A)); // cmp r0, #10
+		assertEquals(ALU_REGISTER_SHIFT, CycleCostTable.classify(0xE1A00211)); // mov r0, r1, lsl r2
+		assertEquals(ALU_REGISTER_SHIFT, CycleCostTable.classify(0xE1810352)); // orr r0, r1, r2, asr r3
+	}
+
+	@Test
+	public void testMultiplies() {
+		assertEquals(MULTIPLY, CycleCostTable.classify(0xE0000291)); // mul r0, r1, r2
+		assertEquals(MULTIPLY, CycleCostTable.classify(0xE0203291)); // mla r0, r1, r2, r3
+		assertEquals(MULTIPLY_LONG, CycleCostTable.classify(0xE0810392)); // umull r0, r1, r2, r3
+	}
+
+	@Test
+	public void testTransfers() {
+		assertEquals(LOAD, CycleCostTable.classify(0xE5910000)); // ldr r0, [r1]
+		assertEquals(LOAD, CycleCostTable.classify(0xE7910102)); // ldr r0, [r1, r2, lsl #2]
+		assertEquals(STORE, CycleCostTable.classify(0xE5C10000)); // strb r0, [r1]
+		assertEquals(LOAD, CycleCostTable.classify(0xE1D100B0)); // ldrh r0, [r1]
+		assertEquals(STORE, CycleCostTable.classify(0xE1C100B2)); // strh r0, [r1, #2]
+		assertEquals(LOAD, CycleCostTable.classify(0xE1D100D1)); // ldrsb r0, [r1, #1]
+		assertEquals(LOAD, CycleCostTable.classify(0xE1010092)); // swp r0, r2, [r1]
+		assertEquals(LOAD_MULTIPLE, CycleCostTable.classify(0xE8BD8010)); // pop {r4, pc}
+		assertEquals(STORE_MULTIPLE, CycleCostTable.classify(0xE92D4010)); // push {r4, lr}
+	}
+
+	@Test
+	public void testBranches() {
+		assertEquals(BRANCH, CycleCostTable.classify(0xEAFFFFFE)); // b .
+		assertEquals(BRANCH, CycleCostTable.classify(0x1A000000)); // bne
+		assertEquals(BRANCH, CycleCostTable.classify(0xEB000002)); // bl
+		assertEquals(BRANCH, CycleCostTable.classify(0xE12FFF1E)); // bx lr
+		assertEquals(SOFTWARE_INTERRUPT, CycleCostTable.classify(0xEF000018)); // svc #0x18
+		// The coprocessor instructions are counted as ALU ones
+		assertEquals(ALU, CycleCostTable.classify(0xEE010F10)); // mcr p15, 0, r0, c1, c0, 0
+	}
+
+	@Test
+	public void testCosts() {
+		CycleCostTable table = CycleCostTable.arm7tdmi();
+
+		assertEquals(1, table.getCost(ALU));
+		assertEquals(3, table.getCost(LOAD));
+		assertEquals(3, table.getCost(BRANCH));
+		assertEquals(1, table.getBranchNotTakenCost());
+		assertEquals(1, table.getRegisterCost());
+	}
+
+	@Test
+	public void testMissingCost() {
+		Map<InstructionClass, Integer> costs = new EnumMap<>(InstructionClass.class);
+		costs.put(ALU, 1);
+
+		assertThrows(IllegalArgumentException.class, () -> new CycleCostTable(costs, 1, 1));
+	}
+}
@@ -0,0 +1,164 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.boilerplate.ArmSimulator;
+import projetarm_v2.simulator.core.Cpu;
+import projetarm_v2.simulator.core.ExecutionHistory;
+import projetarm_v2.simulator.core.routines.CpuRoutine;
+
+class ExecutionHistoryTdd {
+	private static final String LOOP = "mov r0,#0; loop: add r0,r0,#1; cmp r0,#10; bne loop";
+	private static final String CALL = "ldr r3,=0x1F0100; blx r3; mov r1,r0; ldr r2,=0x80000; ldr r4,[r2]; mov r5,#1; mov r5,#2; mov r5,#3";
+
+	/**
+	 * Gives a different result to every call, as the console input would
+	 */
+	public static class CountingRoutine extends CpuRoutine {
+		private int calls;
+
+		public CountingRoutine(Cpu cpu) {
+			super(cpu);
+		}
+
+		@Override
+		public long getRoutineAddress() {
+			return 0x1F0100L;
+		}
+
+		@Override
+		protected void primitive() {
+			this.calls++;
+			this.getRegister(0).setValue(100 * this.calls);
+			this.getRam().setValue(0x80000, 7 * this.calls);
+		}
+	}
+
+	private ArmSimulator simulator;
+
+	@BeforeEach
+	public void Test() {
+		this.simulator = new ArmSimulator();
+		this.simulator.removeRandomPattern();
+		this.simulator.resetState();
+	}
+
+	@Test
+	public void testStepBack() throws IOException {
+		this.simulator.setProgram("mov r0,#1; mov r1,#2; add r2,r0,r1");
+		this.simulator.setHistoryEnabled(true);
+
+		this.simulator.runStep();
+		this.simulator.runStep();
+		this.simulator.runStep();
+		assertEquals(3, this.simulator.getRegisterValue(2));
+
+		assertTrue(this.simulator.stepBack());
+		assertEquals(0, this.simulator.getRegisterValue(2));
+		assertEquals(2, this.simulator.getRegisterValue(1));
+
+		assertTrue(this.simulator.stepBack());
+		assertTrue(this.simulator.stepBack());
+		assertEquals(0, this.simulator.getRegisterValue(0));
+		assertFalse(this.simulator.stepBack());
+	}
+
+	@Test
+	public void testMemoryUndone() throws IOException {
+		this.simulator.setProgram("ldr r0,=0x80000; mov r1,#42; str r1,[r0]");
+		this.simulator.setHistoryEnabled(true);
+		this.simulator.run();
+		assertEquals(42, this.simulator.getRamWord(0x80000));
+
+		assertTrue(this.simulator.stepBack());
+		assertEquals(0, this.simulator.getRamWord(0x80000));
+	}
+
+	@Test
+	public void testReplayFromCheckpoint() {
+		this.simulator.setProgram(LOOP);
+		// The ring only holds the last instruction or two, going further back replays from a checkpoint
+		ExecutionHistory history = new ExecutionHistory(this.simulator.getCpu(), 4, 5, 8);
+		this.simulator.run();
+		assertEquals(10, this.simulator.getRegisterValue(0));
+
+		assertTrue(history.goTo(3));
+		assertEquals(3, history.getPosition());
+		assertEquals(1, this.simulator.getRegisterValue(0));
+
+		assertTrue(history.goTo(0));
+		assertEquals(0, this.simulator.getRegisterValue(0));
+		assertFalse(history.goTo(1));
+	}
+
+	@Test
+	public void testOnlyLastCheckpointsKept() {
+		this.simulator.setProgram(LOOP);
+		ExecutionHistory history = new ExecutionHistory(this.simulator.getCpu(), 4, 5, 2);
+		this.simulator.run();
+
+		assertTrue(history.getOldestPosition() > 0);
+		assertFalse(history.goTo(0));
+		assertTrue(history.goTo(history.getOldestPosition()));
+	}
+
+	@Test
+	public void testReverseContinueBeforeTheRing() {
+		long start = this.simulator.getStartingAddress();
+
+		this.simulator.setProgram(LOOP);
+		ExecutionHistory history = new ExecutionHistory(this.simulator.getCpu(), 4, 5, 8);
+		this.simulator.run();
+
+		// The ring only holds the last instructions, the add with r0 == 2 is found by replaying from a checkpoint
+		this.simulator.setBreakpoint(start + 4, "r0 == 2", 1);
+		assertTrue(history.reverseContinue());
+		assertEquals(2, this.simulator.getRegisterValue(0));
+		assertEquals(7, history.getPosition());
+
+		this.simulator.clearBreakpoints();
+		assertFalse(history.reverseContinue());
+		assertEquals(0, history.getPosition());
+	}
+
+	@Test
+	public void testReplayOverARoutine() {
+		this.simulator.setProgram(CALL);
+		CountingRoutine routine = new CountingRoutine(this.simulator.getCpu());
+		this.simulator.getCpu().registerCpuRoutine(routine);
+		ExecutionHistory history = new ExecutionHistory(this.simulator.getCpu(), 4, 5, 8);
+		this.simulator.run();
+		assertEquals(1, routine.calls);
+
+		// Replayed from the checkpoint at 0, the routine at 2 isn't called again, what it did is put back
+		assertTrue(history.goTo(4));
+		assertEquals(1, routine.calls);
+		assertEquals(100, this.simulator.getRegisterValue(0));
+		assertEquals(100, this.simulator.getRegisterValue(1));
+		assertEquals(7, this.simulator.getRamWord(0x80000));
+
+		// Running forward again after going back over it calls it again
+		assertTrue(history.goTo(1));
+		this.simulator.run();
+		assertEquals(2, routine.calls);
+		assertEquals(14, this.simulator.getRegisterValue(4));
+	}
+
+	@Test
+	public void testUndoARoutine() {
+		this.simulator.setProgram(CALL);
+		this.simulator.getCpu().registerCpuRoutine(new CountingRoutine(this.simulator.getCpu()));
+		ExecutionHistory history = new ExecutionHistory(this.simulator.getCpu(), 64, 100, 8);
+		this.simulator.run();
+
+		// The memory written by the routine is undone from the ring
+		assertTrue(history.goTo(2));
+		assertEquals(0, this.simulator.getRamWord(0x80000));
+		assertEquals(0, this.simulator.getRegisterValue(0));
+	}
+}
@@ -0,0 +1,84 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.Expression;
+import projetarm_v2.simulator.core.InvalidExpressionException;
+
+class ExpressionTdd {
+
+	// The constant expressions are folded, they are evaluated without a Cpu
+	private static int evaluate(String text) {
+		return Expression.parse(text).evaluate(null);
+	}
+
+	@Test
+	public void testNumbers() {
+		assertEquals(42, evaluate("42"));
+		assertEquals(42, evaluate("#42"));
+		assertEquals(0x2A, evaluate("0x2A"));
+		assertEquals(0b101010, evaluate("0b101010"));
+		assertEquals(-1, evaluate("0xFFFFFFFF"));
+	}
+
+	@Test
+	public void testPrecedence() {
+		assertEquals(7, evaluate("1 + 2 * 3"));
+		assertEquals(9, evaluate("(1 + 2) * 3"));
+		assertEquals(8, evaluate("1 << 2 + 1"));
+		assertEquals(3, evaluate("1 | 2 ^ 3 & 1"));
+		assertEquals(1, evaluate("1 + 1 == 2"));
+		assertEquals(1, evaluate("1 < 2 == 1"));
+		assertEquals(1, evaluate("1 == 1 && 2 != 3"));
+		assertEquals(1, evaluate("0 && 1 || 1"));
+		assertEquals(1, evaluate("10 - 4 - 3 == 3"));
+	}
+
+	@Test
+	public void testUnary() {
+		assertEquals(-5, evaluate("-5"));
+		assertEquals(5, evaluate("+5"));
+		assertEquals(-1, evaluate("~0"));
+		assertEquals(1, evaluate("!0"));
+		assertEquals(0, evaluate("!7"));
+		assertEquals(-6, evaluate("-2 * 3"));
+	}
+
+	@Test
+	public void testDivisionByZero() {
+		assertEquals(0, evaluate("5 / 0"));
+		assertEquals(0, evaluate("5 % 0"));
+		assertEquals(1, evaluate("7 % 3"));
+	}
+
+	@Test
+	public void testUnsignedComparisons() {
+		assertEquals(1, evaluate("0xFFFFFFFF > 0"));
+		assertEquals(1, evaluate("0x80000000 >= 0x7FFFFFFF"));
+		assertEquals(0, evaluate("-1 < 1"));
+		assertEquals(1, evaluate("2 <= 2"));
+	}
+
+	@Test
+	public void testShortCircuit() {
+		// The right side would need a Cpu, it must not be evaluated
+		assertEquals(0, evaluate("0 && mem32[r0]"));
+		assertEquals(1, evaluate("1 || r1 == 0"));
+		assertFalse(Expression.parse("0 && N").test(null));
+	}
+
+	@Test
+	public void testErrors() {
+		assertThrows(InvalidExpressionException.class, () -> Expression.parse("1 +"));
+		assertThrows(InvalidExpressionException.class, () -> Expression.parse("(1 + 2"));
+		assertThrows(InvalidExpressionException.class, () -> Expression.parse("1 2"));
+		assertThrows(InvalidExpressionException.class, () -> Expression.parse("foo == 1"));
+		assertThrows(InvalidExpressionException.class, () -> Expression.parse("r16"));
+		assertThrows(InvalidExpressionException.class, () -> Expression.parse("1 $ 2"));
+		assertThrows(InvalidExpressionException.class, () -> Expression.parse("0x100000000"));
+		assertThrows(InvalidExpressionException.class, () -> Expression.parse("mem32 r0"));
+		assertThrows(InvalidExpressionException.class, () -> Expression.parse("mem8[r0"));
+	}
+}
@@ -0,0 +1,88 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.IncrementalAssembler;
+import projetarm_v2.simulator.core.Listing;
+
+class IncrementalAssemblerTdd {
+	private static final String PROGRAM = "mov r0,#0;mov r1,#10;loop:;add r0,r0,r1;subs r1,r1,#1;bne loop;ldr r2,=0x12345678;str r0,[r2]";
+
+	private IncrementalAssembler assembler;
+
+	@BeforeEach
+	public void Test() {
+		this.assembler = new IncrementalAssembler();
+	}
+
+	private static void assertSameListing(Listing expected, Listing actual) {
+		assertArrayEquals(expected.getBinary(), actual.getBinary());
+		assertEquals(expected.getLineCount(), actual.getLineCount());
+		for (int line = 1; line <= expected.getLineCount(); line++) {
+			assertEquals(expected.getAddress(line), actual.getAddress(line));
+			assertEquals(expected.getLength(line), actual.getLength(line));
+		}
+	}
+
+	@Test
+	public void testFirstProgram() {
+		assertNotNull(this.assembler.assemble(PROGRAM, 0x1000));
+		assertEquals(0, this.assembler.getReusedCount());
+		assertEquals(7, this.assembler.getStatementCount());
+	}
+
+	@Test
+	public void testEditedStatement() {
+		String edited = PROGRAM.replace("mov r1,#10", "mov r1,#20");
+
+		this.assembler.assemble(PROGRAM, 0x1000);
+		Listing listing = this.assembler.assemble(edited, 0x1000);
+
+		// Only the edited statement is encoded again
+		assertEquals(6, this.assembler.getReusedCount());
+		assertSameListing(new IncrementalAssembler().assemble(edited, 0x1000), listing);
+	}
+
+	@Test
+	public void testMovedLabel() {
+		String inserted = PROGRAM.replace("mov r1,#10;", "mov r1,#10;mov r3,#1;");
+
+		this.assembler.assemble(PROGRAM, 0x1000);
+		Listing listing = this.assembler.assemble(inserted, 0x1000);
+
+		// The statements after the insertion moved, the branch and the literal load must be encoded again
+		assertTrue(this.assembler.getReusedCount() < this.assembler.getStatementCount() - 1);
+		assertSameListing(new IncrementalAssembler().assemble(inserted, 0x1000), listing);
+	}
+
+	@Test
+	public void testOtherStartingAddress() {
+		this.assembler.assemble(PROGRAM, 0x1000);
+		Listing listing = this.assembler.assemble(PROGRAM, 0x2000);
+
+		assertEquals(0x2000, listing.getAddress(1));
+		assertSameListing(new IncrementalAssembler().assemble(PROGRAM, 0x2000), listing);
+	}
+
+	@Test
+	public void testReset() {
+		this.assembler.assemble(PROGRAM, 0x1000);
+		this.assembler.reset();
+		this.assembler.assemble(PROGRAM, 0x1000);
+
+		assertEquals(0, this.assembler.getReusedCount());
+	}
+
+	@Test
+	public void testUnsupported() {
+		this.assembler.assemble(PROGRAM, 0x1000);
+
+		// Left to the Assembler, the previous program is forgotten
+		assertNull(this.assembler.assemble("mov r0,#0;nop", 0x1000));
+		this.assembler.assemble(PROGRAM, 0x1000);
+		assertEquals(0, this.assembler.getReusedCount());
+	}
+}
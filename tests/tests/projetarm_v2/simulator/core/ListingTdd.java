@@ -0,0 +1,84 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.ArmAssemblerBackend;
+import projetarm_v2.simulator.core.Assembler;
+import projetarm_v2.simulator.core.Listing;
+
+class ListingTdd {
+	private ArmAssemblerBackend backend;
+
+	@BeforeEach
+	public void Test() {
+		this.backend = new ArmAssemblerBackend();
+	}
+
+	private static void assertLine(Listing listing, int line, long address, int length) {
+		assertEquals(address, listing.getAddress(line), "address of the line " + line);
+		assertEquals(length, listing.getLength(line), "length of the line " + line);
+	}
+
+	@Test
+	public void testLines() {
+		Listing listing = this.backend.assembleListing("mov r0,#1;loop:;add r0,r0,#1;b loop", 0x1000);
+
+		assertEquals(4, listing.getLineCount());
+		assertLine(listing, 1, 0x1000, 4);
+		// A label alone takes no space, it is at the address of the next statement
+		assertLine(listing, 2, 0x1004, 0);
+		assertLine(listing, 3, 0x1004, 4);
+		assertLine(listing, 4, 0x1008, 4);
+		assertArrayEquals(this.backend.assemble("mov r0,#1;loop:;add r0,r0,#1;b loop", 0x1000), listing.getBinary());
+	}
+
+	@Test
+	public void testLiteralPool() {
+		Listing listing = this.backend.assembleListing("ldr r0,=0x12345678;bx lr", 0x1000);
+
+		assertEquals(2, listing.getLineCount());
+		assertLine(listing, 2, 0x1004, 4);
+		// The literal follows the last line without being part of it
+		assertEquals(12, listing.getBinary().length);
+	}
+
+	@Test
+	public void testEmptyLinesAndComments() {
+		Listing listing = this.backend.assembleListing("mov r0,#1;;@ mov r0,#2;bx lr // return", 0x1000);
+
+		assertEquals(4, listing.getLineCount());
+		assertLine(listing, 2, 0x1004, 0);
+		assertLine(listing, 3, 0x1004, 0);
+		assertLine(listing, 4, 0x1004, 4);
+	}
+
+	@Test
+	public void testSeveralStatementsOnALine() {
+		Listing listing = this.backend.assembleListing("mov r0,#1\nmov r1,#2;bx lr", 0x1000);
+
+		assertEquals(2, listing.getLineCount());
+		assertLine(listing, 1, 0x1000, 8);
+		assertLine(listing, 2, 0x1008, 4);
+	}
+
+	@Test
+	public void testData() {
+		Listing listing = this.backend.assembleListing(".byte 1, 2;.hword 3;.asciz \"ab\"", 0x1000);
+
+		assertLine(listing, 1, 0x1000, 2);
+		assertLine(listing, 2, 0x1002, 2);
+		assertLine(listing, 3, 0x1004, 3);
+	}
+
+	@Test
+	public void testLeftToTheLineByLineAssembly() {
+		assertNull(this.backend.assembleListing("mov r0,#1;nop", 0x1000));
+		assertNull(new Assembler(List.of(this.backend)).assembleListing("mov r0,#1;nop", 0x1000));
+		assertNotNull(new Assembler(List.of(this.backend)).assembleListing("mov r0,#1", 0x1000));
+	}
+}
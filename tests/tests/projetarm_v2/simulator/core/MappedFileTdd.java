@@ -0,0 +1,99 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.MappedRamChunk;
+import projetarm_v2.simulator.core.MemoryPattern;
+import projetarm_v2.simulator.core.Ram;
+import projetarm_v2.simulator.core.RamChunk;
+
+class MappedFileTdd {
+	private static final long ADDRESS = 0x10000;
+	private static final int FILE_SIZE = Ram.CHUNK_SIZE + 100;
+
+	private Ram ram;
+	private Path file;
+
+	@BeforeEach
+	public void Test() throws IOException {
+		this.ram = new Ram();
+		this.file = Files.createTempFile("mapped", ".bin");
+
+		byte[] content = new byte[FILE_SIZE];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		Files.write(this.file, content);
+	}
+
+	private void force() {
+		for (RamChunk page : this.ram.getRamChunks()) {
+			((MappedRamChunk) page).getMapping().force();
+		}
+	}
+
+	@Test
+	public void testContent() throws IOException {
+		assertEquals(FILE_SIZE, this.ram.mapFile(ADDRESS, this.file, false));
+
+		assertEquals(2, this.ram.getRamChunks().size());
+		assertEquals(0x03020100, this.ram.getValue(ADDRESS));
+		assertEquals((byte) (FILE_SIZE - 1), this.ram.getByte(ADDRESS + FILE_SIZE - 1));
+	}
+
+	@Test
+	public void testPersistent() throws IOException {
+		this.ram.mapFile(ADDRESS, this.file, true);
+		this.ram.setValue(ADDRESS + Ram.CHUNK_SIZE, 0x12345678);
+		this.force();
+
+		byte[] content = Files.readAllBytes(this.file);
+		assertEquals(0x78, content[Ram.CHUNK_SIZE]);
+		assertEquals(0x12, content[Ram.CHUNK_SIZE + 3]);
+	}
+
+	@Test
+	public void testPrivate() throws IOException {
+		this.ram.mapFile(ADDRESS, this.file, false);
+		this.ram.setValue(ADDRESS, 0x12345678);
+
+		assertEquals(0x12345678, this.ram.getValue(ADDRESS));
+		assertEquals(0, Files.readAllBytes(this.file)[0]);
+	}
+
+	@Test
+	public void testEndOfLastPage() throws IOException {
+		this.ram.setPattern(MemoryPattern.constant((byte) 0x55));
+		this.ram.mapFile(ADDRESS, this.file, true);
+
+		// The rest of the last page holds the pattern, what is written there isn't part of the file
+		assertEquals(0x55, this.ram.getByte(ADDRESS + FILE_SIZE));
+		this.ram.setByte(ADDRESS + FILE_SIZE, (byte) 1);
+		this.force();
+
+		assertEquals(1, this.ram.getByte(ADDRESS + FILE_SIZE));
+		assertEquals(FILE_SIZE, Files.size(this.file));
+	}
+
+	@Test
+	public void testNotReclaimed() throws IOException {
+		Files.write(this.file, new byte[Ram.CHUNK_SIZE]);
+		this.ram.mapFile(ADDRESS, this.file, true);
+
+		// The page only holds the pattern but it must stay mapped
+		assertEquals(0, this.ram.reclaim());
+		assertEquals(1, this.ram.getRamChunks().size());
+	}
+
+	@Test
+	public void testUnaligned() {
+		assertThrows(IllegalArgumentException.class, () -> this.ram.mapFile(ADDRESS + 4, this.file, false));
+	}
+}
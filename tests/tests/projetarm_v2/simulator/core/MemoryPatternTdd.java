@@ -0,0 +1,85 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.MemoryPattern;
+import projetarm_v2.simulator.core.Ram;
+
+class MemoryPatternTdd {
+
+	@Test
+	public void testConstant() {
+		MemoryPattern pattern = MemoryPattern.constant((byte) 0x55);
+
+		assertEquals(0x55, pattern.getByte(0x1234));
+		assertSame(MemoryPattern.zero(), MemoryPattern.constant((byte) 0));
+	}
+
+	@Test
+	public void testRandomIsStable() {
+		MemoryPattern pattern = MemoryPattern.random(42);
+		MemoryPattern same = MemoryPattern.random(42);
+		MemoryPattern other = MemoryPattern.random(43);
+
+		byte[] bytes = new byte[64];
+		byte[] otherBytes = new byte[64];
+		pattern.fill(0x1003, bytes, 0, bytes.length);
+		other.fill(0x1003, otherBytes, 0, otherBytes.length);
+
+		for (int i = 0; i < bytes.length; i++) {
+			assertEquals(same.getByte(0x1003 + i), bytes[i]);
+		}
+		assertFalse(Arrays.equals(bytes, otherBytes));
+	}
+
+	@Test
+	public void testFillMatchesGetByte() {
+		MemoryPattern pattern = MemoryPattern.random(7);
+		byte[] bytes = new byte[21];
+
+		// Unaligned, across several 8 bytes blocks
+		pattern.fill(0xFFFFFFF5L, bytes, 1, 20);
+		for (int i = 0; i < 20; i++) {
+			assertEquals(pattern.getByte(0xFFFFFFF5L + i), bytes[i + 1]);
+		}
+		assertTrue(pattern.matches(0xFFFFFFF5L, bytes, 1, 20));
+
+		bytes[5]++;
+		assertFalse(pattern.matches(0xFFFFFFF5L, bytes, 1, 20));
+	}
+
+	@Test
+	public void testReadDoesNotPopulate() {
+		Ram ram = new Ram();
+		ram.setPattern(MemoryPattern.random(1));
+
+		byte value = ram.getByte(0x8000);
+		ram.read(0x8000, 3 * Ram.CHUNK_SIZE);
+
+		assertEquals(MemoryPattern.random(1).getByte(0x8000), value);
+		assertTrue(ram.getRamChunks().isEmpty());
+	}
+
+	@Test
+	public void testReclaim() {
+		MemoryPattern pattern = MemoryPattern.random(1);
+		Ram ram = new Ram();
+		ram.setPattern(pattern);
+
+		byte[] original = new byte[4];
+		pattern.fill(0x9000, original, 0, original.length);
+
+		ram.setValue(0x8000, 0x12345678);
+		ram.setValue(0x9000, 0x12345678);
+		ram.write(0x9000, original);
+
+		// The page written back to its pattern is released, the other one is kept
+		assertEquals(1, ram.reclaim());
+		assertEquals(1, ram.getRamChunks().size());
+		assertEquals(0x12345678, ram.getValue(0x8000));
+	}
+}
@@ -0,0 +1,52 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.boilerplate.ArmSimulator;
+import projetarm_v2.simulator.core.Profiler;
+
+class ProfilerTdd {
+
+	@Test
+	public void testBounds() {
+		// A program whose size isn't a multiple of 4 still has its last instruction profiled
+		Profiler profiler = new Profiler(0x1000, 10);
+
+		assertEquals(0x1000, profiler.getStart());
+		assertEquals(0x100C, profiler.getEnd());
+		assertEquals(0, profiler.getCount(0xFFC));
+		assertEquals(0, profiler.getCount(0x100C));
+		assertEquals(0, profiler.getTotal());
+	}
+
+	@Test
+	public void testHighAddresses() {
+		Profiler profiler = new Profiler(0xFFFFFFF0, 16);
+
+		assertEquals(0xFFFFFFF0L, profiler.getStart());
+		assertEquals(0x100000000L, profiler.getEnd());
+		assertEquals(0, profiler.getCount(-4));
+	}
+
+	@Test
+	public void testCounts() {
+		ArmSimulator simulator = new ArmSimulator();
+		long start = simulator.getStartingAddress();
+
+		simulator.setProgram("mov r0,#0; loop: add r0,r0,#1; cmp r0,#10; bne loop; mov r1,#1");
+		simulator.setProfilingEnabled(true);
+		simulator.run();
+
+		Profiler profiler = simulator.getCpu().getProfiler();
+		assertEquals(1, profiler.getCount(start));
+		assertEquals(10, profiler.getCount(start + 4));
+		assertEquals(10, profiler.getCount(start + 12));
+		assertEquals(1, profiler.getCount(start + 16));
+		assertEquals(32, profiler.getTotal());
+
+		profiler.reset();
+		assertEquals(0, profiler.getCount(start + 4));
+	}
+}
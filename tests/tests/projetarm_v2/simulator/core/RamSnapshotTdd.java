@@ -0,0 +1,118 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.MappedRamChunk;
+import projetarm_v2.simulator.core.MemoryPattern;
+import projetarm_v2.simulator.core.Ram;
+import projetarm_v2.simulator.core.RamChunk;
+import projetarm_v2.simulator.core.RamSnapshot;
+
+class RamSnapshotTdd {
+	private Ram ram;
+
+	@BeforeEach
+	public void Test() {
+		this.ram = new Ram();
+	}
+
+	@Test
+	public void testSnapshotIsolated() {
+		this.ram.setValue(0x1000, 1);
+		RamSnapshot snapshot = this.ram.snapshot();
+
+		this.ram.setValue(0x1000, 2);
+		this.ram.setValue(0x5000, 3);
+
+		assertEquals(1, snapshot.getValue(0x1000));
+		assertEquals(0, snapshot.getValue(0x5000));
+		assertEquals(2, this.ram.getValue(0x1000));
+	}
+
+	@Test
+	public void testRestore() {
+		this.ram.setValue(0x1000, 1);
+		this.ram.setValue(0x2000, 2);
+		RamSnapshot snapshot = this.ram.snapshot();
+
+		this.ram.setValue(0x1000, 10);
+		this.ram.setValue(0x5000, 50);
+		this.ram.takeDirtyPages();
+		this.ram.restore(snapshot);
+
+		assertEquals(1, this.ram.getValue(0x1000));
+		assertEquals(2, this.ram.getValue(0x2000));
+		assertEquals(0, this.ram.getValue(0x5000));
+		assertEquals(2, this.ram.getRamChunks().size());
+		// Only the pages which differ from the snapshot must be synchronised again
+		assertEquals(2, this.ram.takeDirtyPages().size());
+	}
+
+	@Test
+	public void testRestoreTwice() {
+		this.ram.setValue(0x1000, 1);
+		RamSnapshot snapshot = this.ram.snapshot();
+
+		this.ram.setValue(0x1000, 2);
+		this.ram.restore(snapshot);
+		this.ram.setValue(0x1000, 3);
+		this.ram.restore(snapshot);
+
+		assertEquals(1, this.ram.getValue(0x1000));
+		assertEquals(1, snapshot.getValue(0x1000));
+	}
+
+	@Test
+	public void testRestoreClearedRam() {
+		this.ram.setValue(0x1000, 1);
+		RamSnapshot snapshot = this.ram.snapshot();
+
+		this.ram.clear();
+		assertEquals(0, this.ram.getValue(0x1000));
+
+		this.ram.restore(snapshot);
+		assertEquals(1, this.ram.getValue(0x1000));
+	}
+
+	@Test
+	public void testRestorePattern() {
+		RamSnapshot snapshot = this.ram.snapshot();
+
+		this.ram.setPattern(MemoryPattern.constant((byte) 0x55));
+		this.ram.restore(snapshot);
+
+		assertEquals(0, this.ram.getByte(0x1000));
+	}
+
+	@Test
+	public void testMappedFileStaysBacked() throws IOException {
+		Path file = Files.createTempFile("snapshot", ".bin");
+		Files.write(file, new byte[Ram.CHUNK_SIZE]);
+
+		this.ram.mapFile(0x10000, file, true);
+		this.ram.setByte(0x10000, (byte) 1);
+		RamSnapshot snapshot = this.ram.snapshot();
+
+		// The write after the snapshot must still reach the file
+		this.ram.setByte(0x10001, (byte) 2);
+		RamChunk page = this.ram.getRamChunks().iterator().next();
+		assertTrue(page instanceof MappedRamChunk);
+		((MappedRamChunk) page).getMapping().force();
+		assertEquals(2, Files.readAllBytes(file)[1]);
+		assertEquals(0, snapshot.getByte(0x10001));
+
+		// Restoring rolls the file back
+		this.ram.restore(snapshot);
+		((MappedRamChunk) page).getMapping().force();
+		assertSame(page, this.ram.getRamChunks().iterator().next());
+		assertEquals(1, Files.readAllBytes(file)[0]);
+		assertEquals(0, Files.readAllBytes(file)[1]);
+	}
+}
@@ -0,0 +1,114 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.Ram;
+
+class RamTdd {
+	// The last bytes of a page, so that the blocks cross into the next one
+	private static final long PAGE_END = 2 * Ram.CHUNK_SIZE - 3;
+
+	private Ram ram;
+
+	@BeforeEach
+	public void Test() {
+		this.ram = new Ram();
+	}
+
+	private static byte[] sequence(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (i + 1);
+		}
+		return bytes;
+	}
+
+	@Test
+	public void testReadWrite() {
+		this.ram.write(PAGE_END, sequence(8));
+
+		assertArrayEquals(sequence(8), this.ram.read(PAGE_END, 8));
+		assertEquals(0, this.ram.getByte(PAGE_END - 1));
+		assertEquals(0, this.ram.getByte(PAGE_END + 8));
+
+		byte[] dest = new byte[12];
+		this.ram.read(PAGE_END, dest, 2, 8);
+		assertEquals(0, dest[1]);
+		assertEquals(1, dest[2]);
+		assertEquals(8, dest[9]);
+		assertEquals(0, dest[10]);
+	}
+
+	@Test
+	public void testWriteOffset() {
+		this.ram.write(PAGE_END, sequence(8), 2, 4);
+
+		assertArrayEquals(new byte[] {3, 4, 5, 6, 0}, this.ram.read(PAGE_END, 5));
+	}
+
+	@Test
+	public void testWriteByteBuffer() {
+		ByteBuffer buffer = ByteBuffer.wrap(sequence(8));
+		buffer.position(1);
+
+		this.ram.write(PAGE_END, buffer);
+
+		assertFalse(buffer.hasRemaining());
+		assertArrayEquals(new byte[] {2, 3, 4, 5, 6, 7, 8}, this.ram.read(PAGE_END, 7));
+	}
+
+	@Test
+	public void testWordsMatchBlocks() {
+		this.ram.write(PAGE_END, new byte[] {0x78, 0x56, 0x34, 0x12});
+		assertEquals(0x12345678, this.ram.getValue(PAGE_END));
+
+		this.ram.setValue(PAGE_END, 0xCAFEBABE);
+		assertArrayEquals(new byte[] {(byte) 0xBE, (byte) 0xBA, (byte) 0xFE, (byte) 0xCA}, this.ram.read(PAGE_END, 4));
+	}
+
+	@Test
+	public void testFill() {
+		this.ram.fill(PAGE_END, Ram.CHUNK_SIZE + 6, (byte) 0x5A);
+
+		assertEquals(0, this.ram.getByte(PAGE_END - 1));
+		assertEquals(0x5A, this.ram.getByte(PAGE_END));
+		assertEquals(0x5A, this.ram.getByte(PAGE_END + Ram.CHUNK_SIZE + 5));
+		assertEquals(0, this.ram.getByte(PAGE_END + Ram.CHUNK_SIZE + 6));
+	}
+
+	@Test
+	public void testCopyOverlapping() {
+		this.ram.write(PAGE_END, sequence(8));
+
+		this.ram.copy(PAGE_END, PAGE_END + 2, 8);
+		assertArrayEquals(new byte[] {1, 2, 1, 2, 3, 4, 5, 6, 7, 8}, this.ram.read(PAGE_END, 10));
+
+		this.ram.copy(PAGE_END + 2, PAGE_END, 8);
+		assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, this.ram.read(PAGE_END, 8));
+	}
+
+	@Test
+	public void testReadString() {
+		this.ram.write(PAGE_END, "hello\0world".getBytes(StandardCharsets.US_ASCII));
+
+		assertEquals("hello", new String(this.ram.readString(PAGE_END), StandardCharsets.US_ASCII));
+		assertEquals("world", new String(this.ram.readString(PAGE_END + 6), StandardCharsets.US_ASCII));
+		assertEquals(0, this.ram.readString(PAGE_END + 5).length);
+	}
+
+	@Test
+	public void testDirtyPages() {
+		this.ram.write(PAGE_END, sequence(8));
+
+		// Without an engine attached, the written pages are dirty until they are taken
+		assertEquals(List.of((long) Ram.CHUNK_SIZE, 2L * Ram.CHUNK_SIZE), this.ram.takeDirtyPages());
+		assertTrue(this.ram.takeDirtyPages().isEmpty());
+	}
+}
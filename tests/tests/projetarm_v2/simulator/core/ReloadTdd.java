@@ -0,0 +1,54 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.boilerplate.ArmSimulator;
+
+class ReloadTdd {
+	private ArmSimulator simulator;
+
+	@BeforeEach
+	public void Test() {
+		this.simulator = new ArmSimulator();
+		this.simulator.removeRandomPattern();
+		this.simulator.resetState();
+	}
+
+	@Test
+	public void testRunAgain() {
+		this.simulator.setProgram("mov r0,#20; mov r1,#15; add r2,r0,r1");
+		this.simulator.run();
+		assertEquals(35, this.simulator.getRegisterValue(2));
+
+		this.simulator.reload("mov r0,#20; mov r1,#16; add r2,r0,r1");
+		assertEquals(0, this.simulator.getRegisterValue(2));
+		this.simulator.run();
+		assertEquals(36, this.simulator.getRegisterValue(2));
+	}
+
+	@Test
+	public void testGuestWritesRolledBack() {
+		this.simulator.setProgram("ldr r0,=0x80000; mov r1,#42; str r1,[r0]");
+		this.simulator.run();
+		assertEquals(42, this.simulator.getRamWord(0x80000));
+
+		this.simulator.reload("ldr r0,=0x80000; mov r1,#42; str r1,[r0]");
+		assertEquals(0, this.simulator.getRamWord(0x80000));
+	}
+
+	@Test
+	public void testShorterProgram() {
+		int start = this.simulator.getStartingAddress();
+
+		this.simulator.setProgram("mov r0,#1; mov r1,#2; mov r2,#3");
+		this.simulator.reload("mov r0,#1");
+
+		// The rest of the previous program is gone, as if the Ram had been cleared
+		assertNotEquals(0, this.simulator.getRamWord(start));
+		assertEquals(0, this.simulator.getRamWord(start + 4));
+		assertEquals(0, this.simulator.getRamWord(start + 8));
+	}
+}
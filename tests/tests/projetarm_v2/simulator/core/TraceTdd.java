@@ -0,0 +1,152 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.boilerplate.ArmSimulator;
+import projetarm_v2.simulator.core.TraceReader;
+import projetarm_v2.simulator.core.TraceRecorder;
+
+class TraceTdd {
+	private static final String LOOP = "mov r0,#0; loop: add r0,r0,#1; cmp r0,#10; bne loop";
+
+	private Path file;
+
+	@BeforeEach
+	public void Test() throws IOException {
+		this.file = Files.createTempFile("trace", ".bin");
+	}
+
+	/**
+	 * Writes the entries down as text, in the order they are visited
+	 */
+	private static class Collector implements TraceReader.Visitor {
+		private final List<String> entries = new ArrayList<>();
+		private final List<Long> indexes = new ArrayList<>();
+
+		@Override
+		public void instruction(long index, long address) {
+			this.entries.add(String.format("I %d %x", index, address));
+			this.indexes.add(index);
+		}
+
+		@Override
+		public void register(int register, int oldValue, int newValue) {
+			this.entries.add(String.format("R %d %d %d", register, oldValue, newValue));
+		}
+
+		@Override
+		public void memoryWrite(long address, int size, int oldValue, int newValue) {
+			this.entries.add(String.format("M %x %d %d %d", address, size, oldValue, newValue));
+		}
+	}
+
+	private static ByteBuffer header(int entries) {
+		ByteBuffer buffer = ByteBuffer.allocate(12 + entries * 16).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(new byte[] {'A', 'R', 'M', 'T', 'R', 'A', 'C', 'E'}).putInt(1);
+		return buffer;
+	}
+
+	@Test
+	public void testReadFile() throws IOException {
+		ByteBuffer buffer = header(4);
+		buffer.putInt(TraceRecorder.INSTRUCTION << 24).putInt(5).putInt(1).putInt(0xF0001000);
+		buffer.putInt(TraceRecorder.MEMORY_WRITE << 24 | 4).putInt(0x80000).putInt(0).putInt(-1);
+		buffer.putInt(TraceRecorder.REGISTER << 24 | 3).putInt(1).putInt(2).putInt(0);
+		buffer.putInt(TraceRecorder.REGISTER << 24 | TraceRecorder.CPSR).putInt(0).putInt(0x60000000).putInt(0);
+		Files.write(this.file, buffer.array());
+
+		Collector collector = new Collector();
+		TraceReader.read(this.file, collector);
+
+		assertEquals(List.of("I 4294967301 f0001000", "M 80000 4 0 -1", "R 3 1 2", "R 16 0 1610612736"), collector.entries);
+	}
+
+	@Test
+	public void testNotATrace() throws IOException {
+		Files.write(this.file, "NOTATRACE000".getBytes());
+		assertThrows(IOException.class, () -> TraceReader.read(this.file, new Collector()));
+
+		ByteBuffer buffer = header(1);
+		buffer.putInt(TraceRecorder.INSTRUCTION << 24).putInt(0).putInt(0);
+		// The last int of the entry is missing
+		Files.write(this.file, Arrays.copyOf(buffer.array(), buffer.position()));
+		assertThrows(IOException.class, () -> TraceReader.read(this.file, new Collector()));
+	}
+
+	@Test
+	public void testInvalidCapacity() {
+		assertThrows(IllegalArgumentException.class, () -> new TraceRecorder(1, false));
+	}
+
+	@Test
+	public void testRingWrap() throws IOException {
+		ArmSimulator simulator = new ArmSimulator();
+		simulator.setProgram(LOOP);
+		TraceRecorder recorder = simulator.startTrace(8, null);
+		simulator.run();
+
+		Collector collector = new Collector();
+		recorder.read(collector);
+
+		// Only the last instructions are left, starting with a complete one
+		assertTrue(collector.entries.get(0).startsWith("I "));
+		assertTrue(collector.indexes.get(0) > 0);
+		assertTrue(collector.entries.size() <= 8);
+		for (int i = 1; i < collector.indexes.size(); i++) {
+			assertEquals(collector.indexes.get(i - 1) + 1, (long) collector.indexes.get(i));
+		}
+		assertEquals(recorder.getInstructionCount() - 1, (long) collector.indexes.get(collector.indexes.size() - 1));
+	}
+
+	@Test
+	public void testStreamedFile() throws IOException {
+		ArmSimulator simulator = new ArmSimulator();
+		simulator.setProgram(LOOP);
+		TraceRecorder recorder = simulator.startTrace(4, this.file.toString());
+		simulator.run();
+		simulator.stopTrace();
+
+		Collector collector = new Collector();
+		TraceReader.read(this.file, collector);
+
+		// The file holds every entry the ring overwrote
+		assertEquals(recorder.getInstructionCount(), collector.indexes.size());
+		for (int i = 0; i < collector.indexes.size(); i++) {
+			assertEquals(i, (long) collector.indexes.get(i));
+		}
+		assertTrue(collector.entries.contains("R 0 9 10"));
+	}
+
+	@Test
+	public void testDecodedRegisters() throws IOException {
+		ArmSimulator simulator = new ArmSimulator();
+		long start = simulator.getStartingAddress();
+
+		simulator.setProgram("mov r0,#1; mov r1,#2; umull r2,r3,r0,r1; push {r0,r1}; pop {r4,r5}; bl f; f: cmp r0,#1");
+		TraceRecorder recorder = simulator.startTrace(64, null);
+		simulator.run();
+
+		Collector collector = new Collector();
+		recorder.read(collector);
+
+		// Only the registers each instruction may write are read back, none of the changes is missed
+		assertTrue(collector.entries.contains("R 2 0 2"));
+		assertTrue(collector.entries.contains("R 4 0 1"));
+		assertTrue(collector.entries.contains("R 5 0 2"));
+		assertTrue(collector.entries.contains("R 14 0 " + (start + 24)));
+		assertEquals(2, collector.entries.stream().filter(entry -> entry.startsWith("R 13 ")).count());
+		assertEquals(1, collector.entries.stream().filter(entry -> entry.startsWith("R 16 ")).count());
+	}
+}
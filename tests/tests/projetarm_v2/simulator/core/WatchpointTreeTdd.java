@@ -0,0 +1,103 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.core.Watchpoint;
+import projetarm_v2.simulator.core.Watchpoint.Kind;
+import projetarm_v2.simulator.core.WatchpointTree;
+
+class WatchpointTreeTdd {
+
+	@Test
+	public void testEmpty() {
+		WatchpointTree tree = new WatchpointTree(List.of());
+
+		assertTrue(tree.isEmpty());
+		assertNull(tree.find(0, 0x100000000L, true));
+	}
+
+	@Test
+	public void testBounds() {
+		Watchpoint watchpoint = new Watchpoint(0x1000, 4, Kind.ACCESS);
+		WatchpointTree tree = new WatchpointTree(List.of(watchpoint));
+
+		// The ranges are half open
+		assertNull(tree.find(0xFFC, 0x1000, false));
+		assertNull(tree.find(0x1004, 0x1008, false));
+		assertSame(watchpoint, tree.find(0xFFE, 0x1002, false));
+		assertSame(watchpoint, tree.find(0x1003, 0x1004, true));
+	}
+
+	@Test
+	public void testKinds() {
+		Watchpoint read = new Watchpoint(0x1000, 4, Kind.READ);
+		Watchpoint write = new Watchpoint(0x1002, 4, Kind.WRITE);
+		WatchpointTree tree = new WatchpointTree(List.of(write, read));
+
+		assertSame(read, tree.find(0x1000, 0x1008, false));
+		assertSame(write, tree.find(0x1000, 0x1008, true));
+		assertNull(tree.find(0x1000, 0x1002, true));
+	}
+
+	@Test
+	public void testNested() {
+		Watchpoint outer = new Watchpoint(0x1000, 0x1000, Kind.WRITE);
+		Watchpoint inner = new Watchpoint(0x1800, 4, Kind.READ);
+		Watchpoint after = new Watchpoint(0x1900, 4, Kind.WRITE);
+		WatchpointTree tree = new WatchpointTree(List.of(inner, after, outer));
+
+		// The lowest start wins
+		assertSame(outer, tree.find(0x1900, 0x1904, true));
+		assertSame(inner, tree.find(0x1800, 0x1804, false));
+		assertNull(tree.find(0x1900, 0x1904, false));
+	}
+
+	@Test
+	public void testAgainstLinearScan() {
+		Random random = new Random(1);
+		Kind[] kinds = Kind.values();
+
+		for (int round = 0; round < 50; round++) {
+			List<Watchpoint> watchpoints = new ArrayList<>();
+			for (int i = 0; i < random.nextInt(40); i++) {
+				watchpoints.add(new Watchpoint(random.nextInt(0x1000), 1 + random.nextInt(0x80), kinds[random.nextInt(kinds.length)]));
+			}
+			WatchpointTree tree = new WatchpointTree(watchpoints);
+
+			for (int query = 0; query < 200; query++) {
+				long start = random.nextInt(0x1100);
+				long end = start + 1 + random.nextInt(8);
+				boolean write = random.nextBoolean();
+
+				Watchpoint expected = null;
+				for (Watchpoint watchpoint : watchpoints) {
+					boolean matches = watchpoint.getKind() == Kind.ACCESS || (watchpoint.getKind() == Kind.WRITE) == write;
+					if (matches && watchpoint.getStart() < end && watchpoint.getEnd() > start
+							&& (expected == null || watchpoint.getStart() < expected.getStart())) {
+						expected = watchpoint;
+					}
+				}
+
+				Watchpoint found = tree.find(start, end, write);
+				if (expected == null) {
+					assertNull(found);
+				} else {
+					assertNotNull(found);
+					assertEquals(expected.getStart(), found.getStart());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidWatchpoint() {
+		assertThrows(IllegalArgumentException.class, () -> new Watchpoint(0xFFFFFFFEL, 4, Kind.READ));
+		assertThrows(IllegalArgumentException.class, () -> new Watchpoint(0x1000, 0, Kind.READ));
+	}
+}
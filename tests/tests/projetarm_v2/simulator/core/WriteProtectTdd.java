@@ -0,0 +1,47 @@
+package tests.projetarm_v2.simulator.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projetarm_v2.simulator.boilerplate.ArmSimulator;
+import projetarm_v2.simulator.core.MemoryRegion;
+import projetarm_v2.simulator.core.Ram;
+
+class WriteProtectTdd {
+	private static final long MMIO_ADDRESS = 0x100000;
+	private static final long RAM_ADDRESS = 0x80000;
+
+	private ArmSimulator simulator;
+
+	@BeforeEach
+	public void Test() {
+		this.simulator = new ArmSimulator();
+		this.simulator.getMemoryMap().addRegion(new MemoryRegion("Test", MMIO_ADDRESS, Ram.CHUNK_SIZE, MemoryRegion.Kind.MMIO));
+	}
+
+	@Test
+	public void testMmioWrite() {
+		this.simulator.getRam().setValue(MMIO_ADDRESS, 7);
+
+		this.simulator.setProgram("ldr r0,=0x100000; mov r1,#42; str r1,[r0]; ldr r2,[r0]");
+		this.simulator.run();
+
+		assertEquals(42, this.simulator.getRegisterValue(2));
+		assertEquals(42, this.simulator.getRam().getValue(MMIO_ADDRESS));
+	}
+
+	@Test
+	public void testUnprotectedWrite() {
+		this.simulator.getRam().setValue(RAM_ADDRESS, 7);
+
+		// The first load fills the TLB entry of the page while it is still read-only
+		this.simulator.setProgram("ldr r0,=0x80000; ldr r3,[r0]; mov r1,#42; str r1,[r0]; ldr r2,[r0]");
+		this.simulator.run();
+
+		assertEquals(7, this.simulator.getRegisterValue(3));
+		assertEquals(42, this.simulator.getRegisterValue(2));
+		assertEquals(42, this.simulator.getRam().getValue(RAM_ADDRESS));
+	}
+}